@@ -42,5 +42,19 @@ public enum ExecutionModel {
 	 * threads leaks.
 	 * </p>
 	 */
-	THREAD_PER_INSTANCE
+	THREAD_PER_INSTANCE,
+	/**
+	 * <p>
+	 * One virtual thread per instance of class.
+	 * </p>
+	 * <p>
+	 * Virtual threads are cheap to create and block, so a lot of streams can
+	 * work concurrently without exhausting a pool. They are available on
+	 * Java 21 and later. On older virtual machines an unbounded pool of
+	 * daemon threads is used instead.
+	 * </p>
+	 *
+	 * @since 1.2.15
+	 */
+	VIRTUAL_THREAD
 }
@@ -12,9 +12,13 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 /**
  * This class is responsible of instantiating the right executor given an
  * ExecutionModel.
@@ -82,9 +86,42 @@ public final class ExecutorServiceFactory {
 	private static ExecutorService executor = new ThreadPoolExecutor(0, 20,
 			5, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(500));
 
+	private static final Logger LOG = LoggerFactory
+			.getLogger(ExecutorServiceFactory.class);
+
 	private static final ExecutorService SINGLE_EXECUTOR = Executors
 			.newSingleThreadExecutor();
 
+	private static final boolean VIRTUAL_THREAD_AVAILABLE;
+
+	private static final ExecutorService VIRTUAL_EXECUTOR;
+
+	static {
+		ExecutorService virtualExecutor = null;
+		try {
+			// Java 21+. Accessed by reflection to run on older machines.
+			virtualExecutor = (ExecutorService) Executors.class.getMethod(
+					"newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (final Exception e) {
+			LOG.debug("Virtual threads not available, VIRTUAL_THREAD "
+					+ "model falls back to a pool of daemon threads.");
+		}
+		VIRTUAL_THREAD_AVAILABLE = (virtualExecutor != null);
+		if (virtualExecutor == null) {
+			// unbounded: blocked pipes never prevent other pipes to start.
+			virtualExecutor = Executors
+					.newCachedThreadPool(new ThreadFactory() {
+						@Override
+						public Thread newThread(final Runnable r) {
+							final Thread thread = new Thread(r);
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+		}
+		VIRTUAL_EXECUTOR = virtualExecutor;
+	}
+
 	/**
 	 * <p>Getter for the field <code>executor</code>.</p>
 	 *
@@ -103,6 +140,9 @@ public final class ExecutorServiceFactory {
 		case SINGLE_THREAD:
 			result = ExecutorServiceFactory.SINGLE_EXECUTOR;
 			break;
+		case VIRTUAL_THREAD:
+			result = ExecutorServiceFactory.VIRTUAL_EXECUTOR;
+			break;
 
 		default:
 			throw new UnsupportedOperationException("ExecutionModel ["
@@ -125,6 +165,20 @@ public final class ExecutorServiceFactory {
 				TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(500)));
 	}
 
+	/**
+	 * <p>
+	 * Tells if {@link ExecutionModel#VIRTUAL_THREAD} is backed by real
+	 * virtual threads or by the fallback pool.
+	 * </p>
+	 *
+	 * @since 1.2.15
+	 * @return <code>true</code> if the virtual machine supports virtual
+	 *         threads.
+	 */
+	public static boolean isVirtualThreadAvailable() {
+		return ExecutorServiceFactory.VIRTUAL_THREAD_AVAILABLE;
+	}
+
 	/**
 	 * <p>
 	 * Sets the default ExecutorService returned when this class is invoked
@@ -0,0 +1,471 @@
+package com.gc.iotools.stream.base;
+
+/*
+ * Copyright (c) 2008, 2014 Gabriele Contini. This source code is released
+ * under the BSD License.
+ */
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>
+ * A pipe between exactly one writing thread and one reading thread, built on
+ * a circular buffer of fixed capacity.
+ * </p>
+ * <p>
+ * Differently from <code>java.io.PipedInputStream</code> no monitor is
+ * involved: the writer publishes the data with a volatile write of its
+ * position and the reader consumes it with a volatile write of its own
+ * position. Data is moved with (at most two) bulk array copies. When a side
+ * has to wait it first spins, then yields and finally parks, and it is
+ * woken up by the other side as soon as there is data (or space) available.
+ * </p>
+ * <p>
+ * As <code>PipedInputStream</code> does, it reports an
+ * <code>IOException</code> when the thread on the other side dies without
+ * closing its end of the pipe.
+ * </p>
+ * <p>
+ * The streams returned by {@link #getInputStream()} and
+ * {@link #getOutputStream()} are not thread safe: each one must be used by a
+ * single thread at a time.
+ * </p>
+ *
+ * @author dvd.smnt
+ * @since 1.2.15
+ * @version $Id$
+ */
+public final class RingBufferPipe {
+
+	private final class PipeInputStream extends InputStream {
+		@Override
+		public int available() {
+			return RingBufferPipe.this.available();
+		}
+
+		@Override
+		public void close() {
+			RingBufferPipe.this.closeRead();
+		}
+
+		@Override
+		public int read() throws IOException {
+			return RingBufferPipe.this.read();
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len)
+				throws IOException {
+			return RingBufferPipe.this.read(b, off, len);
+		}
+	}
+
+	private final class PipeOutputStream extends OutputStream {
+		@Override
+		public void close() {
+			RingBufferPipe.this.closeWrite();
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len)
+				throws IOException {
+			RingBufferPipe.this.write(b, off, len);
+		}
+
+		@Override
+		public void write(final int b) throws IOException {
+			RingBufferPipe.this.write(b);
+		}
+	}
+
+	/**
+	 * Maximum time a side stays parked before checking again the state of
+	 * the other side.
+	 */
+	private static final long PARK_NANOS = TimeUnit.MILLISECONDS
+			.toNanos(100);
+
+	/**
+	 * Busy spins before yielding. No point in spinning on a single
+	 * processor.
+	 */
+	private static final int SPINS = Runtime.getRuntime()
+			.availableProcessors() > 1 ? 1024 : 0;
+
+	/**
+	 * Number of <code>Thread.yield()</code> before parking.
+	 */
+	private static final int YIELDS = 64;
+
+	private final byte[] buffer;
+
+	private final int capacity;
+
+	/**
+	 * Last value of <code>head</code> seen by the writer. Accessed only by
+	 * the writer, avoids reading the volatile field at every write.
+	 */
+	private long cachedHead = 0;
+
+	/**
+	 * Last value of <code>tail</code> seen by the reader. Accessed only by
+	 * the reader.
+	 */
+	private long cachedTail = 0;
+
+	/**
+	 * Total number of bytes read. Written only by the reader.
+	 */
+	private volatile long head = 0;
+
+	private final InputStream inputStream = new PipeInputStream();
+
+	private final OutputStream outputStream = new PipeOutputStream();
+
+	private volatile boolean readClosed = false;
+
+	private volatile Thread readSide;
+
+	/**
+	 * Total number of bytes written. Written only by the writer.
+	 */
+	private volatile long tail = 0;
+
+	private volatile Thread waitingReader;
+
+	private volatile Thread waitingWriter;
+
+	private volatile boolean writeClosed = false;
+
+	private volatile Thread writeSide;
+
+	/**
+	 * <p>
+	 * Creates a pipe with a buffer of <code>capacity</code> bytes.
+	 * </p>
+	 *
+	 * @param capacity
+	 *            size in bytes of the circular buffer. Must be greater than
+	 *            0.
+	 */
+	public RingBufferPipe(final int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity [" + capacity
+					+ "] must be greater than 0");
+		}
+		this.capacity = capacity;
+		this.buffer = new byte[capacity];
+	}
+
+	/**
+	 * <p>
+	 * Number of bytes that can be read without blocking.
+	 * </p>
+	 *
+	 * @return bytes currently in the pipe.
+	 */
+	public int available() {
+		return (int) (this.tail - this.head);
+	}
+
+	/**
+	 * Spins, yields and finally parks the current thread until the other
+	 * side signals or a timeout expires. The caller must check again its
+	 * condition.
+	 */
+	private void await(final boolean forRead, final int spin)
+			throws IOException {
+		if (spin < SPINS) {
+			return;
+		}
+		if (spin < SPINS + YIELDS) {
+			Thread.yield();
+			return;
+		}
+		final Thread other = forRead ? this.writeSide : this.readSide;
+		if ((other != null) && !other.isAlive()) {
+			throw new IOException(forRead ? "Write end dead"
+					: "Read end dead");
+		}
+		final Thread current = Thread.currentThread();
+		// the waiting thread is published before checking the condition, the
+		// other side changes the condition before reading the waiting thread.
+		if (forRead) {
+			this.waitingReader = current;
+			if ((this.tail == this.head) && !this.writeClosed) {
+				LockSupport.parkNanos(this, PARK_NANOS);
+			}
+			this.waitingReader = null;
+		} else {
+			this.waitingWriter = current;
+			if ((this.tail - this.head == this.capacity)
+					&& !this.readClosed) {
+				LockSupport.parkNanos(this, PARK_NANOS);
+			}
+			this.waitingWriter = null;
+		}
+		if (Thread.interrupted()) {
+			throw new InterruptedIOException();
+		}
+	}
+
+	/**
+	 * Waits until there is some data after <code>h</code> or the write end
+	 * is closed. Returns the position of the writer: if it is equal to
+	 * <code>h</code> the pipe reached EOF.
+	 */
+	private long awaitData(final long h) throws IOException {
+		if (this.readClosed) {
+			throw new IOException("Pipe closed");
+		}
+		final Thread current = Thread.currentThread();
+		if (this.readSide != current) {
+			this.readSide = current;
+		}
+		if (this.cachedTail > h) {
+			return this.cachedTail;
+		}
+		int spin = 0;
+		while ((this.tail == h) && !this.writeClosed) {
+			await(true, spin++);
+			if (this.readClosed) {
+				throw new IOException("Pipe closed");
+			}
+		}
+		// tail is written before writeClosed: read it again.
+		this.cachedTail = this.tail;
+		return this.cachedTail;
+	}
+
+	/**
+	 * Waits until there is some free space in the buffer. Returns the
+	 * position of the writer.
+	 */
+	private long awaitSpace() throws IOException {
+		final Thread current = Thread.currentThread();
+		if (this.writeSide != current) {
+			this.writeSide = current;
+		}
+		int spin = 0;
+		while (true) {
+			if (this.writeClosed || this.readClosed) {
+				throw new IOException("Pipe closed");
+			}
+			final long t = this.tail;
+			if (t - this.cachedHead < this.capacity) {
+				return t;
+			}
+			this.cachedHead = this.head;
+			if (t - this.cachedHead < this.capacity) {
+				return t;
+			}
+			await(false, spin++);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Closes the reading end of the pipe. Following writes will fail.
+	 * </p>
+	 */
+	public void closeRead() {
+		this.readClosed = true;
+		unpark(this.waitingWriter);
+	}
+
+	/**
+	 * <p>
+	 * Closes the writing end of the pipe. The reader will get EOF after the
+	 * data still in the buffer.
+	 * </p>
+	 */
+	public void closeWrite() {
+		this.writeClosed = true;
+		unpark(this.waitingReader);
+	}
+
+	/**
+	 * <p>
+	 * Getter for the field <code>capacity</code>.
+	 * </p>
+	 *
+	 * @return the size in bytes of the circular buffer.
+	 */
+	public int getCapacity() {
+		return this.capacity;
+	}
+
+	/**
+	 * <p>
+	 * Returns the reading end of the pipe. Closing it is the same as calling
+	 * {@link #closeRead()}.
+	 * </p>
+	 *
+	 * @return the <code>InputStream</code> to read from the pipe.
+	 */
+	public InputStream getInputStream() {
+		return this.inputStream;
+	}
+
+	/**
+	 * <p>
+	 * Returns the writing end of the pipe. Closing it is the same as calling
+	 * {@link #closeWrite()}.
+	 * </p>
+	 *
+	 * @return the <code>OutputStream</code> to write into the pipe.
+	 */
+	public OutputStream getOutputStream() {
+		return this.outputStream;
+	}
+
+	/**
+	 * <p>
+	 * Reads a single byte from the pipe, blocking until it is available.
+	 * </p>
+	 *
+	 * @return the byte read or -1 if the write end was closed.
+	 * @throws IOException
+	 *             if the read end was closed, the writing thread died or
+	 *             the thread was interrupted.
+	 */
+	public int read() throws IOException {
+		final long h = this.head;
+		final long t = awaitData(h);
+		int result = -1;
+		if (t > h) {
+			result = this.buffer[(int) (h % this.capacity)] & 0xFF;
+			this.head = h + 1;
+			unpark(this.waitingWriter);
+		}
+		return result;
+	}
+
+	/**
+	 * <p>
+	 * Reads up to <code>len</code> bytes, blocking until at least one byte
+	 * is available.
+	 * </p>
+	 *
+	 * @param b
+	 *            destination buffer.
+	 * @param off
+	 *            offset in the destination buffer.
+	 * @param len
+	 *            maximum number of bytes to read.
+	 * @return the number of bytes read or -1 if the write end was closed.
+	 * @throws IOException
+	 *             if the read end was closed, the writing thread died or
+	 *             the thread was interrupted.
+	 */
+	public int read(final byte[] b, final int off, final int len)
+			throws IOException {
+		if ((off < 0) || (len < 0) || (len > b.length - off)) {
+			throw new IndexOutOfBoundsException("off [" + off + "] len ["
+					+ len + "] length [" + b.length + "]");
+		}
+		if (len == 0) {
+			if (this.readClosed) {
+				throw new IOException("Pipe closed");
+			}
+			return 0;
+		}
+		final long h = this.head;
+		final long t = awaitData(h);
+		if (t == h) {
+			return -1;
+		}
+		final int n = (int) Math.min(len, t - h);
+		final int idx = (int) (h % this.capacity);
+		final int first = Math.min(n, this.capacity - idx);
+		System.arraycopy(this.buffer, idx, b, off, first);
+		if (n > first) {
+			System.arraycopy(this.buffer, 0, b, off + first, n - first);
+		}
+		this.head = h + n;
+		unpark(this.waitingWriter);
+		return n;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Provides a String representation of the state of the pipe for
+	 * debugging purposes.
+	 */
+	@Override
+	public String toString() {
+		return this.getClass().getSimpleName() + "[capacity="
+				+ this.capacity + ",read=" + this.head + ",written="
+				+ this.tail + ",readClosed=" + this.readClosed
+				+ ",writeClosed=" + this.writeClosed + "]";
+	}
+
+	private void unpark(final Thread waiting) {
+		if (waiting != null) {
+			LockSupport.unpark(waiting);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Writes <code>len</code> bytes to the pipe, blocking while the buffer is
+	 * full.
+	 * </p>
+	 *
+	 * @param b
+	 *            the data.
+	 * @param off
+	 *            the start offset in the data.
+	 * @param len
+	 *            the number of bytes to write.
+	 * @throws IOException
+	 *             if one of the ends was closed, the reading thread died or
+	 *             the thread was interrupted.
+	 */
+	public void write(final byte[] b, final int off, final int len)
+			throws IOException {
+		if ((off < 0) || (len < 0) || (len > b.length - off)) {
+			throw new IndexOutOfBoundsException("off [" + off + "] len ["
+					+ len + "] length [" + b.length + "]");
+		}
+		int written = 0;
+		while (written < len) {
+			final long t = awaitSpace();
+			final int n = Math.min(len - written, this.capacity
+					- (int) (t - this.cachedHead));
+			final int idx = (int) (t % this.capacity);
+			final int first = Math.min(n, this.capacity - idx);
+			System.arraycopy(b, off + written, this.buffer, idx, first);
+			if (n > first) {
+				System.arraycopy(b, off + written + first, this.buffer, 0, n
+						- first);
+			}
+			this.tail = t + n;
+			unpark(this.waitingReader);
+			written += n;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Writes a single byte to the pipe, blocking while the buffer is full.
+	 * </p>
+	 *
+	 * @param b
+	 *            the byte to write.
+	 * @throws IOException
+	 *             if one of the ends was closed, the reading thread died or
+	 *             the thread was interrupted.
+	 */
+	public void write(final int b) throws IOException {
+		final long t = awaitSpace();
+		this.buffer[(int) (t % this.capacity)] = (byte) b;
+		this.tail = t + 1;
+		unpark(this.waitingReader);
+	}
+}
@@ -4,13 +4,10 @@ package com.gc.iotools.stream.is;
  * Copyright (c) 2008, 2014 Gabriele Contini. This source code is released
  * under the BSD License.
  */
-import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
 import com.gc.iotools.stream.base.EasyStreamConstants;
-import com.gc.iotools.stream.utils.ArrayTools;
-import com.gc.iotools.stream.utils.StreamUtils;
 
 /**
  * <p>
@@ -72,6 +69,12 @@ import com.gc.iotools.stream.utils.StreamUtils;
  * 	//here bytes contains &quot; bbb &quot;
  * }
  * </pre>
+ * <p>
+ * The source is read through an internal buffer that is reused for the whole
+ * life of the stream: markers are matched incrementally, also when they span
+ * two reads of the source, and reading doesn't allocate memory. For this
+ * reason <code>mark</code> and <code>reset</code> are not supported.
+ * </p>
  *
  * @author dvd.smnt
  * @since 1.0.8
@@ -79,17 +82,72 @@ import com.gc.iotools.stream.utils.StreamUtils;
  */
 public final class ChunkInputStream extends InputStream {
 
+	/**
+	 * Computes the failure function of Knuth-Morris-Pratt:
+	 * <code>result[i]</code> is the length of the longest proper prefix of
+	 * <code>marker[0..i]</code> that is also its suffix.
+	 */
+	private static int[] getFailure(final byte[] marker) {
+		final int[] result = new int[marker.length];
+		int k = 0;
+		for (int i = 1; i < marker.length; i++) {
+			while ((k > 0) && (marker[i] != marker[k])) {
+				k = result[k - 1];
+			}
+			if (marker[i] == marker[k]) {
+				k++;
+			}
+			result[i] = k;
+		}
+		return result;
+	}
+
 	private final boolean automaticFetch;
 
+	/**
+	 * Bytes read from the source and not yet processed are between
+	 * <code>position</code> and <code>limit</code>.
+	 */
+	private final byte[] buffer = new byte[EasyStreamConstants.SKIP_BUFFER_SIZE];
+
 	private boolean copyToOuter = false;
 
+	private boolean eof = false;
+
+	private int limit = 0;
+
+	private final byte[] oneByte = new byte[1];
+
+	/**
+	 * Bytes that belong to the outer stream but didn't fit in the array
+	 * passed to read: a start marker to be shown, or bytes partially
+	 * matching the stop marker that turned out to be content.
+	 */
+	private final byte[] pending;
+
+	private int pendingLimit = 0;
+
+	private int pendingPosition = 0;
+
+	private int position = 0;
+
 	private final boolean showMarkers;
 
+	private final InputStream source;
+
 	private final byte[] start;
 
+	private final int[] startFailure;
+
 	private final byte[] stop;
 
-	private final InputStream wrappedIs;
+	private final int[] stopFailure;
+
+	/**
+	 * Number of bytes of the stop marker matched by the last bytes read. They
+	 * are not shown until the match fails.
+	 */
+	private int stopMatched = 0;
 
 	/**
 	 * Constructs a <code>ChunkInputStream</code>.
@@ -150,9 +208,9 @@ public final class ChunkInputStream extends InputStream {
 			throw new IllegalArgumentException(
 					"Wrapped InputStrem can't be null");
 		}
-		this.start = (startMarker == null ? new byte[0] : startMarker);
-		this.stop = (stopMarker == null ? new byte[0] : stopMarker);
-		this.wrappedIs = new BufferedInputStream(src);
+		this.start = (startMarker == null ? new byte[0] : startMarker.clone());
+		this.stop = (stopMarker == null ? new byte[0] : stopMarker.clone());
+		this.source = src;
 		this.automaticFetch = automaticFetch;
 		if ((this.start.length == 0) && automaticFetch) {
 			throw new IllegalArgumentException(
@@ -162,6 +220,10 @@ public final class ChunkInputStream extends InputStream {
 							+ "]");
 		}
 		this.showMarkers = showMarkers;
+		this.startFailure = getFailure(this.start);
+		this.stopFailure = getFailure(this.stop);
+		this.pending = new byte[Math.max(this.start.length,
+				this.stop.length)];
 	}
 
 	/**
@@ -170,7 +232,8 @@ public final class ChunkInputStream extends InputStream {
 	@Override
 	public int available() throws IOException {
 		findStartMarker();
-		return this.wrappedIs.available();
+		return (this.pendingLimit - this.pendingPosition)
+				+ (this.limit - this.position) + this.source.available();
 	}
 
 	/**
@@ -178,7 +241,116 @@ public final class ChunkInputStream extends InputStream {
 	 */
 	@Override
 	public void close() throws IOException {
-		this.wrappedIs.close();
+		this.source.close();
+	}
+
+	/**
+	 * Copies the bytes of the current chunk to <code>b</code>, until the stop
+	 * marker, the end of the source or the end of <code>b</code> are
+	 * reached.
+	 *
+	 * @return the bytes copied.
+	 */
+	private int copyChunk(final byte[] b, final int off, final int len)
+			throws IOException {
+		final int end = off + len;
+		int written = off + drainPending(b, off, len);
+		while ((written < end) && this.copyToOuter
+				&& (this.pendingLimit == 0)) {
+			if ((this.position == this.limit) && (this.stop.length == 0)
+					&& (end - written >= this.buffer.length)) {
+				// big reads without stop marker go directly to the source.
+				final int n = this.source.read(b, written, end - written);
+				if (n < 0) {
+					this.eof = true;
+					break;
+				}
+				written += n;
+			} else if ((this.position == this.limit) && !fill()) {
+				// the end of the source is not a stop marker.
+				written = emit(this.stop, 0, this.stopMatched, b, written,
+						end);
+				this.stopMatched = 0;
+				break;
+			} else if (this.stop.length == 0) {
+				final int n = Math.min(end - written, this.limit
+						- this.position);
+				System.arraycopy(this.buffer, this.position, b, written, n);
+				this.position += n;
+				written += n;
+			} else {
+				if (this.stopMatched == 0) {
+					// copies up to the first byte of the stop marker.
+					final byte first = this.stop[0];
+					final int max = Math.min(this.limit, this.position + end
+							- written);
+					int i = this.position;
+					while ((i < max) && (this.buffer[i] != first)) {
+						i++;
+					}
+					System.arraycopy(this.buffer, this.position, b, written,
+							i - this.position);
+					written += i - this.position;
+					this.position = i;
+					if (i == max) {
+						continue;
+					}
+				}
+				final byte c = this.buffer[this.position++];
+				while ((this.stopMatched > 0)
+						&& (this.stop[this.stopMatched] != c)) {
+					// the bytes that don't match anymore are content.
+					final int fallback = this.stopFailure[this.stopMatched - 1];
+					written = emit(this.stop, 0, this.stopMatched - fallback,
+							b, written, end);
+					this.stopMatched = fallback;
+				}
+				if (this.stop[this.stopMatched] == c) {
+					this.stopMatched++;
+					if (this.stopMatched == this.stop.length) {
+						this.stopMatched = 0;
+						this.copyToOuter = false;
+					}
+				} else if (written < end) {
+					b[written++] = c;
+				} else {
+					this.pending[this.pendingLimit++] = c;
+				}
+			}
+		}
+		return written - off;
+	}
+
+	/**
+	 * Copies the pending bytes to <code>b</code>.
+	 *
+	 * @return the bytes copied.
+	 */
+	private int drainPending(final byte[] b, final int off, final int len) {
+		final int n = Math.min(len, this.pendingLimit - this.pendingPosition);
+		System.arraycopy(this.pending, this.pendingPosition, b, off, n);
+		this.pendingPosition += n;
+		if (this.pendingPosition == this.pendingLimit) {
+			this.pendingPosition = 0;
+			this.pendingLimit = 0;
+		}
+		return n;
+	}
+
+	/**
+	 * Writes <code>count</code> bytes of <code>src</code> in <code>b</code>,
+	 * the ones that don't fit are kept pending.
+	 *
+	 * @return the new write position in <code>b</code>.
+	 */
+	private int emit(final byte[] src, final int srcOff, final int count,
+			final byte[] b, final int written, final int end) {
+		final int n = Math.min(count, end - written);
+		System.arraycopy(src, srcOff, b, written, n);
+		System.arraycopy(src, srcOff + n, this.pending, this.pendingLimit,
+				count - n);
+		this.pendingLimit += count - n;
+		return written + n;
 	}
 
 	/**
@@ -198,70 +370,90 @@ public final class ChunkInputStream extends InputStream {
 					"this method shouldn't be called when automaticFetch ["
 							+ this.automaticFetch + "]");
 		}
+		// the rest of the current chunk is skipped.
+		this.pendingPosition = 0;
+		this.pendingLimit = 0;
 		this.copyToOuter = moveToNextStartMarker();
 		return this.copyToOuter;
 	}
 
+	/**
+	 * Reads the next block of the source in the buffer.
+	 *
+	 * @return <code>false</code> at the end of the source.
+	 */
+	private boolean fill() throws IOException {
+		int n = 0;
+		while (!this.eof && (n == 0)) {
+			n = this.source.read(this.buffer, 0, this.buffer.length);
+			this.eof = (n < 0);
+		}
+		this.position = 0;
+		this.limit = Math.max(n, 0);
+		return n > 0;
+	}
+
 	private void findStartMarker() throws IOException {
-		if (!this.copyToOuter && this.automaticFetch) {
+		if (!this.copyToOuter && this.automaticFetch
+				&& (this.pendingLimit == 0)) {
 			// if no start marker set copy
 			this.copyToOuter = moveToNextStartMarker();
 		}
 	}
 
 	/**
-	 * {@inheritDoc}.
+	 * Not supported: the bytes read from the source are kept in an internal
+	 * buffer.
 	 */
 	@Override
 	public synchronized void mark(final int readlimit) {
-		this.wrappedIs.mark(readlimit);
+		// not supported
 	}
 
 	/**
 	 * {@inheritDoc}.
+	 *
+	 * @return <code>false</code>
 	 */
 	@Override
 	public boolean markSupported() {
-		return this.wrappedIs.markSupported();
+		return false;
 	}
 
 	private boolean moveToNextStartMarker() throws IOException {
-		boolean found;
+		boolean found = false;
+		this.stopMatched = 0;
 		if (this.start.length == 0) {
-			this.wrappedIs.mark(2);
 			// if EOF stop.
-			found = (this.wrappedIs.read() >= 0);
-			this.wrappedIs.reset();
+			found = (this.position < this.limit) || fill();
 		} else {
-			int n;
-			found = false;
-			final byte[] buffer = new byte[EasyStreamConstants.SKIP_BUFFER_SIZE
-					+ this.start.length];
-			do {
-				this.wrappedIs.mark(EasyStreamConstants.SKIP_BUFFER_SIZE
-						+ this.start.length);
-				n = StreamUtils.tryReadFully(this.wrappedIs, buffer, 0,
-						EasyStreamConstants.SKIP_BUFFER_SIZE
-								+ this.start.length);
-				if (n > 0) {
-					final int pos = ArrayTools.indexOf(
-							ArrayTools.subarray(buffer, 0, n), this.start);
-					if (pos >= 0) {
-						// found
-						found = true;
-						this.wrappedIs.reset();
-						final int skip = pos
-								+ (this.showMarkers ? 0 : this.start.length);
-						this.wrappedIs.skip(skip);
-					} else {
-						// not found
-						if (n - this.start.length > 0) {
-							this.wrappedIs.reset();
-							this.wrappedIs.skip(n - this.start.length);
-						}
+			int matched = 0;
+			while (!found && ((this.position < this.limit) || fill())) {
+				if (matched == 0) {
+					final byte first = this.start[0];
+					int i = this.position;
+					while ((i < this.limit) && (this.buffer[i] != first)) {
+						i++;
+					}
+					this.position = i;
+					if (i == this.limit) {
+						continue;
 					}
 				}
-			} while (!found && (n >= 0));
+				final byte c = this.buffer[this.position++];
+				while ((matched > 0) && (this.start[matched] != c)) {
+					matched = this.startFailure[matched - 1];
+				}
+				if (this.start[matched] == c) {
+					matched++;
+					found = (matched == this.start.length);
+				}
+			}
+			if (found && this.showMarkers) {
+				System.arraycopy(this.start, 0, this.pending, 0,
+						this.start.length);
+				this.pendingLimit = this.start.length;
+			}
 		}
 		return found;
 	}
@@ -271,13 +463,8 @@ public final class ChunkInputStream extends InputStream {
 	 */
 	@Override
 	public int read() throws IOException {
-		final byte[] buf = new byte[1];
-		final int rd = read(buf);
-		int result = buf[0];
-		if (rd < 0) {
-			result = rd;
-		}
-		return result;
+		final int rd = read(this.oneByte, 0, 1);
+		return (rd < 0 ? rd : this.oneByte[0] & 0xff);
 	}
 
 	/**
@@ -300,53 +487,32 @@ public final class ChunkInputStream extends InputStream {
 		} else if (len == 0) {
 			return 0;
 		}
-
-		findStartMarker();
-		int ret;
-		if (this.copyToOuter) {
-			if (this.stop.length > 0) {
-				final int readSize = len - off + this.stop.length;
-				final byte[] tmpBuffer = new byte[readSize];
-				this.wrappedIs.mark(readSize);
-				ret = StreamUtils.tryReadFully(this.wrappedIs, tmpBuffer, 0,
-						readSize);
-				this.wrappedIs.reset();
-				if (ret != -1) {
-					final int position = ArrayTools.indexOf(tmpBuffer,
-							this.stop);
-					if (position == -1) {
-						// stop marker not found
-						ret = Math.min(ret, len - off);
-						this.wrappedIs.skip(ret);
-						System.arraycopy(tmpBuffer, 0, b, off, ret);
-					} else if (position == 0) {
-						this.wrappedIs.skip(this.stop.length);
-						this.copyToOuter = false;
-						ret = this.read(b, off, len);
-					} else {
-						// position >0
-						ret = position;
-						final int bytesToSkip = position + this.stop.length;
-						this.wrappedIs.skip(bytesToSkip);
-						System.arraycopy(tmpBuffer, 0, b, off, position);
-						this.copyToOuter = false;
-					}
-				}
-			} else {
-				ret = this.wrappedIs.read(b, off, len);
+		int ret = drainPending(b, off, len);
+		while (ret == 0) {
+			findStartMarker();
+			if (!this.copyToOuter) {
+				// no more chunks, or waiting for fetchNextChunk()
+				break;
+			}
+			ret = copyChunk(b, off, len);
+			if ((ret == 0) && this.copyToOuter) {
+				// end of the source.
+				break;
 			}
-		} else {
-			ret = -1;
 		}
-		return ret;
+		return (ret == 0 ? -1 : ret);
 	}
 
 	/**
-	 * {@inheritDoc}.
+	 * Not supported: the bytes read from the source are kept in an internal
+	 * buffer.
+	 *
+	 * @throws IOException
+	 *             always.
 	 */
 	@Override
 	public synchronized void reset() throws IOException {
-		this.wrappedIs.reset();
+		throw new IOException("mark/reset not supported");
 	}
 
 	/**
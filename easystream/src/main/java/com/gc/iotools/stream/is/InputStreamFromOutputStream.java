@@ -24,6 +24,7 @@ import org.slf4j.LoggerFactory;
 import com.gc.iotools.stream.base.EasyStreamConstants;
 import com.gc.iotools.stream.base.ExecutionModel;
 import com.gc.iotools.stream.base.ExecutorServiceFactory;
+import com.gc.iotools.stream.base.RingBufferPipe;
 import com.gc.iotools.stream.utils.LogUtils;
 
 /**
@@ -71,6 +72,13 @@ import com.gc.iotools.stream.utils.LogUtils;
  * allocating the internal thread or even specify the
  * {@linkplain ExecutorService} for thread execution.
  * </p>
+ * <p>
+ * Since 1.2.15 the data passes through a {@link RingBufferPipe} instead of
+ * the buffer of the <code>PipedInputStream</code>. The class still extends
+ * <code>PipedInputStream</code> for compatibility, but it is connected
+ * internally: <code>connect()</code> fails as before and
+ * <code>receive()</code> must not be used.
+ * </p>
  * 
  * @param <T>
  *            Optional result returned by the function
@@ -97,9 +105,10 @@ public abstract class InputStreamFromOutputStream<T> extends PipedInputStream {
 			InputStreamFromOutputStream.LOG.debug("thread [" + threadName
 					+ "] started.");
 			try {
-				result = produce(InputStreamFromOutputStream.this.pipedOs);
+				result = produce(InputStreamFromOutputStream.this.pipe
+						.getOutputStream());
 			} finally {
-				closeStream();
+				InputStreamFromOutputStream.this.pipe.closeWrite();
 				InputStreamFromOutputStream.ACTIVE_THREAD_NAMES
 						.remove(threadName);
 				InputStreamFromOutputStream.LOG.debug("thread [" + threadName
@@ -108,26 +117,6 @@ public abstract class InputStreamFromOutputStream<T> extends PipedInputStream {
 			return result;
 		}
 
-		private void closeStream() {
-			try {
-				InputStreamFromOutputStream.this.pipedOs.close();
-			} catch (final IOException e) {
-				if ((e.getMessage() != null)
-						&& (e.getMessage().indexOf("closed") > 0)) {
-					InputStreamFromOutputStream.LOG
-							.debug("Stream already closed");
-				} else {
-					InputStreamFromOutputStream.LOG.error(
-							"IOException closing OutputStream"
-									+ " Thread might be locked", e);
-				}
-			} catch (final Throwable t) {
-				InputStreamFromOutputStream.LOG
-						.error("Error closing InputStream"
-								+ " Thread might be locked", t);
-			}
-		}
-
 	}
 
 	/**
@@ -176,24 +165,9 @@ public abstract class InputStreamFromOutputStream<T> extends PipedInputStream {
 	private final ExecutorService executorService;
 	private Future<T> futureResult;
 	private final boolean joinOnClose;
+	private final RingBufferPipe pipe;
 	private boolean started = false;
 
-	private final PipedOutputStream pipedOs = new PipedOutputStream() {
-		private boolean outputStreamCloseCalled = false;
-		//duplicate close hangs the pipeStream see issue #36
-		@Override
-		public void close() throws IOException {
-			synchronized (this) {
-				if (outputStreamCloseCalled) {
-					return;
-				}
-				outputStreamCloseCalled = true;
-			}
-			super.close();
-		}
-
-	};
-
 	/**
 	 * <p>
 	 * It creates a <code>InputStreamFromOutputStream</code> with a
@@ -209,12 +183,15 @@ public abstract class InputStreamFromOutputStream<T> extends PipedInputStream {
 	public InputStreamFromOutputStream(final boolean startImmediately,
 			final boolean joinOnClose, final ExecutorService executor,
 			final int pipeBufferSize) {
-		super(pipeBufferSize);
+		// the inherited buffer is not used.
+		super(1);
 		this.callerId = LogUtils.getCaller(this.getClass());
 		this.joinOnClose = joinOnClose;
 		this.executorService = executor;
+		this.pipe = new RingBufferPipe(pipeBufferSize);
 		try {
-			connect(this.pipedOs);
+			// as before, the stream can't be connected to other pipes.
+			connect(new PipedOutputStream());
 		} catch (final IOException e) {
 			throw new RuntimeException("Error during pipe creaton", e);
 		}
@@ -379,6 +356,7 @@ public abstract class InputStreamFromOutputStream<T> extends PipedInputStream {
 		checkInitialized();
 		if (!this.closeCalled) {
 			this.closeCalled = true;
+			this.pipe.closeRead();
 			super.close();
 			if (this.joinOnClose) {
 				try {
@@ -462,11 +440,17 @@ public abstract class InputStreamFromOutputStream<T> extends PipedInputStream {
 	 */
 	protected abstract T produce(final OutputStream sink) throws Exception;
 
+	/** {@inheritDoc} */
+	@Override
+	public int available() throws IOException {
+		return this.pipe.available();
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public final int read() throws IOException {
 		checkInitialized();
-		final int result = super.read();
+		final int result = this.pipe.read();
 		if (result < 0) {
 			checkException();
 		}
@@ -478,7 +462,7 @@ public abstract class InputStreamFromOutputStream<T> extends PipedInputStream {
 	public final int read(final byte[] b, final int off, final int len)
 			throws IOException {
 		checkInitialized();
-		final int result = super.read(b, off, len);
+		final int result = this.pipe.read(b, off, len);
 		if (result < 0) {
 			checkException();
 		}
@@ -22,6 +22,7 @@ import org.slf4j.LoggerFactory;
 import com.gc.iotools.stream.base.EasyStreamConstants;
 import com.gc.iotools.stream.base.ExecutionModel;
 import com.gc.iotools.stream.base.ExecutorServiceFactory;
+import com.gc.iotools.stream.base.RingBufferPipe;
 import com.gc.iotools.stream.utils.LogUtils;
 
 /**
@@ -91,6 +92,12 @@ import com.gc.iotools.stream.utils.LogUtils;
  * String result = oStream2IStream.getResult();
  * //result now contains the string &quot;test was processed.&quot;
  * </pre></code>
+ * <p>
+ * Since 1.2.15 the data is passed to the internal thread through a
+ * {@link RingBufferPipe} instead of a <code>PipedInputStream</code>. The
+ * class still extends <code>PipedOutputStream</code> for compatibility, but
+ * it is connected internally: <code>connect()</code> fails as before.
+ * </p>
  * 
  * @param <T>
  *            Type returned by the method {@link #getResults()} after the
@@ -152,16 +159,6 @@ public abstract class OutputStreamToInputStream<T> extends PipedOutputStream {
 		}
 	}
 
-	/**
-	 * Extends PipedInputStream to allow set the default buffer size.
-	 */
-	private final class MyPipedInputStream extends PipedInputStream {
-
-		MyPipedInputStream(final int bufferSize) {
-			super.buffer = new byte[bufferSize];
-		}
-	}
-
 	// Default timeout in milliseconds.
 	private static final int DEFAULT_TIMEOUT = 15 * 60 * 1000;
 
@@ -191,6 +188,7 @@ public abstract class OutputStreamToInputStream<T> extends PipedOutputStream {
 	private final ExecutorService executorService;
 	private final InputStream inputstream;
 	private final boolean joinOnClose;
+	private final RingBufferPipe pipe;
 	private Future<T> writingResult = null;
 
 	/**
@@ -285,15 +283,15 @@ public abstract class OutputStreamToInputStream<T> extends PipedOutputStream {
 					"executor service can't be null");
 		}
 		final String callerId = LogUtils.getCaller(getClass());
-		final PipedInputStream pipedIS = new MyPipedInputStream(
-				pipeBufferSize);
+		this.pipe = new RingBufferPipe(pipeBufferSize);
 		try {
-			pipedIS.connect(this);
+			// as before, the stream can't be connected to other pipes.
+			connect(new PipedInputStream(1));
 		} catch (final IOException e) {
 			throw new IllegalStateException("Error during pipe creaton", e);
 		}
 		this.joinOnClose = joinOnClose;
-		this.inputstream = pipedIS;
+		this.inputstream = this.pipe.getInputStream();
 		this.executorService = executorService;
 		LOG.debug("invoked by[{}] queued for start.", callerId);
 		if (startImmediately) {
@@ -461,8 +459,6 @@ public abstract class OutputStreamToInputStream<T> extends PipedOutputStream {
 		if (this.abort) {
 			// internal thread is already aborting. wait for short time.
 			internalClose(true, TimeUnit.SECONDS, 1);
-		} else {
-			super.flush();
 		}
 	}
 
@@ -533,6 +529,7 @@ public abstract class OutputStreamToInputStream<T> extends PipedOutputStream {
 		if (!this.closeCalled) {
 			initializeIfNecessary();
 			this.closeCalled = true;
+			this.pipe.closeWrite();
 			super.close();
 			if (join) {
 				// waiting for thread to finish..
@@ -573,7 +570,7 @@ public abstract class OutputStreamToInputStream<T> extends PipedOutputStream {
 			// internal thread is already aborting. wait for short time.
 			internalClose(true, TimeUnit.SECONDS, 1);
 		} else {
-			super.write(bytes);
+			this.pipe.write(bytes, 0, bytes.length);
 		}
 	}
 
@@ -586,7 +583,7 @@ public abstract class OutputStreamToInputStream<T> extends PipedOutputStream {
 			// internal thread is already aborting. wait for short time.
 			internalClose(true, TimeUnit.SECONDS, 1);
 		} else {
-			super.write(bytes, offset, length);
+			this.pipe.write(bytes, offset, length);
 		}
 	}
 
@@ -598,7 +595,7 @@ public abstract class OutputStreamToInputStream<T> extends PipedOutputStream {
 			// internal thread is already aborting. wait for short time.
 			internalClose(true, TimeUnit.SECONDS, 1);
 		} else {
-			super.write(bytetowr);
+			this.pipe.write(bytetowr);
 		}
 	}
 }
@@ -0,0 +1,288 @@
+package com.gc.iotools.stream.store;
+
+/*
+ * Copyright (c) 2008, 2014 Gabriele Contini. This source code is released
+ * under the BSD License.
+ */
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * A bounded pool of direct {@link ByteBuffer} slabs of the same size, shared
+ * between {@link DirectBufferStore} instances.
+ * </p>
+ * <p>
+ * Slabs are taken with {@link #acquire()} and given back with
+ * {@link #release(ByteBuffer)}. At most <code>maxPooledSlabs</code> idle
+ * slabs are kept: slabs released when the pool is full are left to the
+ * garbage collector. The pool is thread safe and keeps counters of the
+ * requests served by a pooled slab (hits) and by a new allocation (misses).
+ * </p>
+ * <p>
+ * At most <code>maxOutstandingSlabs</code> slabs are handed out at the same
+ * time, so the direct memory used by all the stores sharing the pool is
+ * bounded. Once the bound is reached {@link #acquire()} returns
+ * <code>null</code> and the {@link DirectBufferStore} spills its data to a
+ * temporary file.
+ * </p>
+ *
+ * @author dvd.smnt
+ * @since 1.2.15
+ * @see DirectBufferStore
+ * @version $Id$
+ */
+public final class DirectBufferPool {
+	/**
+	 * Default maximum number of idle slabs kept by the default pool.
+	 */
+	public static final int DEFAULT_MAX_POOLED_SLABS = 512;
+
+	/**
+	 * Default maximum number of slabs in use at the same time from the
+	 * default pool (128MB of direct memory).
+	 */
+	public static final int DEFAULT_MAX_OUTSTANDING_SLABS = 4096;
+
+	/**
+	 * Default size in bytes of a slab of the default pool.
+	 */
+	public static final int DEFAULT_SLAB_SIZE = 32768;
+
+	/**
+	 * Replaced by {@link #setDefault(DirectBufferPool)} and read by the
+	 * stores from any thread.
+	 */
+	private static volatile DirectBufferPool defaultPool = new DirectBufferPool(
+			DEFAULT_SLAB_SIZE, DEFAULT_MAX_POOLED_SLABS,
+			DEFAULT_MAX_OUTSTANDING_SLABS);
+
+	/**
+	 * <p>
+	 * Returns the pool used by the {@link DirectBufferStore} when no pool is
+	 * specified.
+	 * </p>
+	 *
+	 * @return the default pool.
+	 */
+	public static DirectBufferPool getDefault() {
+		return DirectBufferPool.defaultPool;
+	}
+
+	/**
+	 * <p>
+	 * Sets the pool used by the {@link DirectBufferStore} when no pool is
+	 * specified. Stores already created keep using the previous pool.
+	 * </p>
+	 *
+	 * @param pool
+	 *            the new default pool.
+	 */
+	public static void setDefault(final DirectBufferPool pool) {
+		if (pool == null) {
+			throw new IllegalArgumentException("pool can't be null.");
+		}
+		DirectBufferPool.defaultPool = pool;
+	}
+
+	private final AtomicLong hits = new AtomicLong();
+	private final int maxOutstandingSlabs;
+	private final int maxPooledSlabs;
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicInteger outstanding = new AtomicInteger();
+	private final AtomicInteger pooled = new AtomicInteger();
+	private final Queue<ByteBuffer> slabs = new ConcurrentLinkedQueue<ByteBuffer>();
+	private final int slabSize;
+
+	/**
+	 * <p>
+	 * Creates a pool that doesn't limit the slabs in use: only the idle ones
+	 * are bounded.
+	 * </p>
+	 *
+	 * @param slabSize
+	 *            size in bytes of each slab. Must be greater than 0.
+	 * @param maxPooledSlabs
+	 *            maximum number of idle slabs kept in the pool.
+	 */
+	public DirectBufferPool(final int slabSize, final int maxPooledSlabs) {
+		this(slabSize, maxPooledSlabs, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * <p>
+	 * Creates a pool.
+	 * </p>
+	 *
+	 * @param slabSize
+	 *            size in bytes of each slab. Must be greater than 0.
+	 * @param maxPooledSlabs
+	 *            maximum number of idle slabs kept in the pool.
+	 * @param maxOutstandingSlabs
+	 *            maximum number of slabs in use at the same time.
+	 */
+	public DirectBufferPool(final int slabSize, final int maxPooledSlabs,
+			final int maxOutstandingSlabs) {
+		if (slabSize <= 0) {
+			throw new IllegalArgumentException("slabSize [" + slabSize
+					+ "] must be greater than 0");
+		}
+		if (maxPooledSlabs < 0) {
+			throw new IllegalArgumentException("maxPooledSlabs ["
+					+ maxPooledSlabs + "] can't be negative");
+		}
+		if (maxOutstandingSlabs <= 0) {
+			throw new IllegalArgumentException("maxOutstandingSlabs ["
+					+ maxOutstandingSlabs + "] must be greater than 0");
+		}
+		this.slabSize = slabSize;
+		this.maxPooledSlabs = maxPooledSlabs;
+		this.maxOutstandingSlabs = maxOutstandingSlabs;
+	}
+
+	/**
+	 * <p>
+	 * Takes a slab from the pool, or allocates a new one if the pool is
+	 * empty.
+	 * </p>
+	 *
+	 * @return a cleared direct buffer of <code>slabSize</code> bytes, or
+	 *         <code>null</code> if <code>maxOutstandingSlabs</code> slabs
+	 *         are already in use.
+	 */
+	public ByteBuffer acquire() {
+		int inUse;
+		do {
+			inUse = this.outstanding.get();
+			if (inUse >= this.maxOutstandingSlabs) {
+				return null;
+			}
+		} while (!this.outstanding.compareAndSet(inUse, inUse + 1));
+		ByteBuffer result = this.slabs.poll();
+		if (result == null) {
+			this.misses.incrementAndGet();
+			result = ByteBuffer.allocateDirect(this.slabSize);
+		} else {
+			this.pooled.decrementAndGet();
+			this.hits.incrementAndGet();
+		}
+		return result;
+	}
+
+	/**
+	 * <p>
+	 * Number of {@link #acquire()} served with a pooled slab.
+	 * </p>
+	 *
+	 * @return number of hits since the pool was created.
+	 */
+	public long getHits() {
+		return this.hits.get();
+	}
+
+	/**
+	 * <p>
+	 * Getter for the field <code>maxOutstandingSlabs</code>.
+	 * </p>
+	 *
+	 * @return maximum number of slabs in use at the same time.
+	 */
+	public int getMaxOutstandingSlabs() {
+		return this.maxOutstandingSlabs;
+	}
+
+	/**
+	 * <p>
+	 * Getter for the field <code>maxPooledSlabs</code>.
+	 * </p>
+	 *
+	 * @return maximum number of idle slabs kept in the pool.
+	 */
+	public int getMaxPooledSlabs() {
+		return this.maxPooledSlabs;
+	}
+
+	/**
+	 * <p>
+	 * Number of {@link #acquire()} that required a new allocation.
+	 * </p>
+	 *
+	 * @return number of misses since the pool was created.
+	 */
+	public long getMisses() {
+		return this.misses.get();
+	}
+
+	/**
+	 * <p>
+	 * Number of slabs acquired and not yet released.
+	 * </p>
+	 *
+	 * @return slabs currently in use.
+	 */
+	public int getOutstanding() {
+		return this.outstanding.get();
+	}
+
+	/**
+	 * <p>
+	 * Number of idle slabs currently kept in the pool.
+	 * </p>
+	 *
+	 * @return the occupancy of the pool.
+	 */
+	public int getPooled() {
+		return this.pooled.get();
+	}
+
+	/**
+	 * <p>
+	 * Getter for the field <code>slabSize</code>.
+	 * </p>
+	 *
+	 * @return size in bytes of each slab.
+	 */
+	public int getSlabSize() {
+		return this.slabSize;
+	}
+
+	/**
+	 * <p>
+	 * Gives back a slab to the pool. If the pool is full the slab is
+	 * discarded.
+	 * </p>
+	 *
+	 * @param slab
+	 *            a slab obtained by {@link #acquire()} on this pool.
+	 */
+	public void release(final ByteBuffer slab) {
+		if (slab.capacity() != this.slabSize || !slab.isDirect()) {
+			throw new IllegalArgumentException("buffer [" + slab
+					+ "] was not acquired from this pool");
+		}
+		this.outstanding.decrementAndGet();
+		if (this.pooled.incrementAndGet() <= this.maxPooledSlabs) {
+			slab.clear();
+			this.slabs.offer(slab);
+		} else {
+			this.pooled.decrementAndGet();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Provides a String representation of the state of the pool for
+	 * debugging purposes.
+	 */
+	@Override
+	public String toString() {
+		return this.getClass().getSimpleName() + "[slabSize="
+				+ this.slabSize + ",pooled=" + this.pooled + "/"
+				+ this.maxPooledSlabs + ",outstanding=" + this.outstanding + "/"
+				+ this.maxOutstandingSlabs + ",hits=" + this.hits + ",misses=" + this.misses + "]";
+	}
+}
@@ -0,0 +1,248 @@
+package com.gc.iotools.stream.store;
+
+/*
+ * Copyright (c) 2008, 2014 Gabriele Contini. This source code is released
+ * under the BSD License.
+ */
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * A <code>SeekableStore</code> that keeps data off-heap, in direct
+ * {@link ByteBuffer} slabs taken from a {@link DirectBufferPool}.
+ * </p>
+ * <p>
+ * Slabs go back to the pool when {@link #cleanup()} is called, so many short
+ * lived stores (for instance one for each
+ * {@link com.gc.iotools.stream.is.RandomAccessInputStream}) reuse the same
+ * memory and don't produce garbage on the heap. A store that is not cleaned
+ * up gives its slabs back when it is garbage collected.
+ * </p>
+ * <p>
+ * When the pool has no more slabs to give (see
+ * {@link DirectBufferPool#getMaxOutstandingSlabs()}) the data is moved to a
+ * temporary file and the slabs go back to the pool.
+ * </p>
+ * <p>
+ * This class is not thread safe, the pool is.
+ * </p>
+ *
+ * @author dvd.smnt
+ * @since 1.2.15
+ * @see DirectBufferPool
+ * @version $Id$
+ */
+public class DirectBufferStore implements SeekableStore {
+
+	/**
+	 * Where the data goes once the pool is exhausted.
+	 */
+	private ThresholdStore overflow;
+
+	private final DirectBufferPool pool;
+
+	private long position = 0;
+
+	private long size = 0;
+
+	private final List<ByteBuffer> slabs = new ArrayList<ByteBuffer>();
+
+	private final int slabSize;
+
+	/**
+	 * <p>
+	 * Creates a <code>DirectBufferStore</code> that uses the default pool.
+	 * </p>
+	 *
+	 * @see DirectBufferPool#getDefault()
+	 */
+	public DirectBufferStore() {
+		this(DirectBufferPool.getDefault());
+	}
+
+	/**
+	 * <p>
+	 * Creates a <code>DirectBufferStore</code> that takes its slabs from the
+	 * given pool.
+	 * </p>
+	 *
+	 * @param pool
+	 *            the pool of slabs.
+	 */
+	public DirectBufferStore(final DirectBufferPool pool) {
+		if (pool == null) {
+			throw new IllegalArgumentException("pool can't be null.");
+		}
+		this.pool = pool;
+		this.slabSize = pool.getSlabSize();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void cleanup() {
+		releaseSlabs();
+		if (this.overflow != null) {
+			this.overflow.cleanup();
+			this.overflow = null;
+		}
+		this.position = 0;
+		this.size = 0;
+	}
+
+	@Override
+	protected void finalize() throws Throwable {
+		cleanup();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int get(final byte[] bytes, final int offset, final int length)
+			throws IOException {
+		if (this.overflow != null) {
+			final int result = this.overflow.get(bytes, offset, length);
+			this.position += Math.max(result, 0);
+			return result;
+		}
+		final int effectiveLength = (int) Math.min(length, this.size
+				- this.position);
+		int result;
+		if (effectiveLength > 0) {
+			int copied = 0;
+			while (copied < effectiveLength) {
+				final ByteBuffer slab = this.slabs
+						.get((int) (this.position / this.slabSize));
+				final int slabPos = (int) (this.position % this.slabSize);
+				final int toCopy = Math.min(effectiveLength - copied,
+						this.slabSize - slabPos);
+				slab.position(slabPos);
+				slab.get(bytes, offset + copied, toCopy);
+				copied += toCopy;
+				this.position += toCopy;
+			}
+			result = effectiveLength;
+		} else {
+			result = -1;
+		}
+		return result;
+	}
+
+	/**
+	 * <p>
+	 * Getter for the field <code>pool</code>.
+	 * </p>
+	 *
+	 * @return the pool where the slabs come from.
+	 */
+	public DirectBufferPool getPool() {
+		return this.pool;
+	}
+
+	/**
+	 * <p>
+	 * Tells if the data was moved to a temporary file because the pool was
+	 * exhausted.
+	 * </p>
+	 *
+	 * @return <code>true</code> if the store uses a temporary file.
+	 */
+	public boolean isSpilled() {
+		return this.overflow != null;
+	}
+
+	/**
+	 * <p>
+	 * Getter for the field <code>size</code>.
+	 * </p>
+	 *
+	 * @return number of bytes currently kept in the store.
+	 */
+	public long getSize() {
+		return this.size;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void put(final byte[] bytes, final int offset, final int length)
+			throws IOException {
+		int written = 0;
+		while (written < length) {
+			if (this.overflow != null) {
+				this.overflow.put(bytes, offset + written, length - written);
+				this.size += length - written;
+				break;
+			}
+			final int slabIdx = (int) (this.size / this.slabSize);
+			final int slabPos = (int) (this.size % this.slabSize);
+			if (slabIdx == this.slabs.size()) {
+				final ByteBuffer slab = this.pool.acquire();
+				if (slab == null) {
+					spill();
+					continue;
+				}
+				this.slabs.add(slab);
+			}
+			final int toCopy = Math.min(length - written, this.slabSize
+					- slabPos);
+			final ByteBuffer slab = this.slabs.get(slabIdx);
+			slab.position(slabPos);
+			slab.put(bytes, offset + written, toCopy);
+			written += toCopy;
+			this.size += toCopy;
+		}
+	}
+
+	private void releaseSlabs() {
+		for (final ByteBuffer slab : this.slabs) {
+			this.pool.release(slab);
+		}
+		this.slabs.clear();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void seek(final long position) throws IOException {
+		if (this.overflow != null) {
+			this.overflow.seek(position);
+		}
+		this.position = position;
+	}
+
+	/**
+	 * Copies the slabs to a temporary file and gives them back to the pool.
+	 */
+	private void spill() throws IOException {
+		// a threshold of 1 byte keeps all the data in the file.
+		final ThresholdStore file = new ThresholdStore(1);
+		for (int i = 0; i < this.slabs.size(); i++) {
+			final ByteBuffer slab = this.slabs.get(i);
+			final int len = (int) Math.min(this.slabSize, this.size - (long) i
+					* this.slabSize);
+			if (len > 0) {
+				final byte[] buffer = new byte[len];
+				slab.position(0);
+				slab.get(buffer);
+				file.put(buffer, 0, len);
+			}
+		}
+		releaseSlabs();
+		this.overflow = file;
+		this.overflow.seek(this.position);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Provides a String representation of the state of the Store for
+	 * debugging purposes.
+	 */
+	@Override
+	public String toString() {
+		return this.getClass().getSimpleName() + "[pos=" + this.position
+				+ ",size=" + this.size + ",slabs=" + this.slabs.size()
+				+ (this.overflow == null ? "" : ",overflow=" + this.overflow)
+				+ "]";
+	}
+}
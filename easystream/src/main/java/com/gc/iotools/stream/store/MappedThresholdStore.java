@@ -0,0 +1,326 @@
+package com.gc.iotools.stream.store;
+
+/*
+ * Copyright (c) 2008, 2014 Gabriele Contini. This source code is released
+ * under the BSD License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.gc.iotools.stream.utils.LogUtils;
+
+/**
+ * <p>
+ * Store that puts data in memory until threshold size is reach. At that point
+ * data is written to a memory mapped temporary file.
+ * </p>
+ * <p>
+ * It has the same threshold semantics of {@link ThresholdStore}, but once the
+ * data is on disk it is accessed through {@link MappedByteBuffer} regions of
+ * <code>regionSize</code> bytes, mapped as the file grows. A
+ * <code>get()</code> after a <code>seek()</code> is a plain memory copy
+ * instead of a <code>seek</code> and a <code>read</code> system call. This
+ * pays off when big streams are read many times in random order (for
+ * instance during format detection).
+ * </p>
+ * <p>
+ * The temporary file is deleted in {@link #cleanup()}. Some platforms
+ * (notably Windows) don't allow to delete a file while it is still mapped:
+ * in this case the file is marked for deletion on exit and a warning is
+ * logged.
+ * </p>
+ *
+ * @author dvd.smnt
+ * @since 1.2.15
+ * @see ThresholdStore
+ * @version $Id$
+ */
+public class MappedThresholdStore implements SeekableStore {
+	/**
+	 * Default size in bytes of each mapped region of the file.
+	 */
+	public static final int DEFAULT_REGION_SIZE = 8 * 1024 * 1024;
+
+	private static final Logger LOG = LoggerFactory
+			.getLogger(MappedThresholdStore.class);
+
+	private RandomAccessFile fileAccess;
+	private FileChannel fileChannel;
+	private File fileStorage;
+	private final String instantiationPath;
+	private final SeekableStore ms = new SegmentedMemoryStore();
+	private long position = 0;
+	private final int regionSize;
+	private final List<MappedByteBuffer> regions = new ArrayList<MappedByteBuffer>();
+	private long size = 0;
+
+	private final int treshold;
+
+	/**
+	 * <p>
+	 * Constructor for MappedThresholdStore. The file is mapped in regions of
+	 * {@value #DEFAULT_REGION_SIZE} bytes.
+	 * </p>
+	 *
+	 * @param treshold
+	 *            Maximum number of bytes to keep into memory.
+	 */
+	public MappedThresholdStore(final int treshold) {
+		this(treshold, DEFAULT_REGION_SIZE, null);
+	}
+
+	/**
+	 * <p>
+	 * Constructor for MappedThresholdStore.
+	 * </p>
+	 *
+	 * @param treshold
+	 *            Maximum number of bytes to keep into memory.
+	 * @param regionSize
+	 *            size in bytes of each mapped region of the file. Must be
+	 *            greater than 0.
+	 */
+	public MappedThresholdStore(final int treshold, final int regionSize) {
+		this(treshold, regionSize, null);
+	}
+
+	/**
+	 * <p>
+	 * Constructor for MappedThresholdStore.
+	 * </p>
+	 *
+	 * @param treshold
+	 *            Maximum number of bytes to keep into memory.
+	 * @param regionSize
+	 *            size in bytes of each mapped region of the file. Must be
+	 *            greater than 0.
+	 * @param file
+	 *            file where data is written when threshold is passed. If
+	 *            <code>null</code> a temporary file is created.
+	 */
+	public MappedThresholdStore(final int treshold, final int regionSize,
+			final File file) {
+		if (regionSize <= 0) {
+			throw new IllegalArgumentException("regionSize [" + regionSize
+					+ "] must be greater than 0");
+		}
+		this.treshold = treshold;
+		this.regionSize = regionSize;
+		this.fileStorage = file;
+		this.instantiationPath = LogUtils.getCaller(
+				MappedThresholdStore.class, 5);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void cleanup() {
+		this.size = 0;
+		this.position = 0;
+		this.ms.cleanup();
+		this.regions.clear();
+		if (this.fileAccess != null) {
+			try {
+				// closes also the channel
+				this.fileAccess.close();
+			} catch (final IOException e) {
+				MappedThresholdStore.LOG.warn(
+						"Exception in closing the temporary "
+								+ "stream associated to file ["
+								+ this.fileStorage.getName() + "] it "
+								+ "is possible to continue but some"
+								+ " resources are not released.", e);
+			}
+			this.fileAccess = null;
+			this.fileChannel = null;
+		}
+		if (this.fileStorage != null) {
+			final boolean deleted = this.fileStorage.delete();
+			if (deleted) {
+				this.fileStorage = null;
+			} else {
+				this.fileStorage.deleteOnExit();
+				MappedThresholdStore.LOG.warn("Temporary file ["
+						+ this.fileStorage.getName()
+						+ "] was not deleted. It "
+						+ "is possible to continue but some"
+						+ " resources are not released. Instantiation path ["
+						+ this.instantiationPath + "]");
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc} Clean up the temporary files eventually open.
+	 */
+	@Override
+	protected void finalize() throws Throwable {
+		cleanup();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int get(final byte[] bytes, final int offset, final int length)
+			throws IOException {
+		int result;
+		if (this.size < this.treshold) {
+			result = this.ms.get(bytes, offset, length);
+		} else {
+			final int effectiveLength = (int) Math.min(length, this.size
+					- this.position);
+			if (effectiveLength > 0) {
+				int copied = 0;
+				while (copied < effectiveLength) {
+					final long pos = this.position + copied;
+					final MappedByteBuffer region = getRegion((int) (pos / this.regionSize));
+					final int regionPos = (int) (pos % this.regionSize);
+					final int toCopy = Math.min(effectiveLength - copied,
+							this.regionSize - regionPos);
+					region.position(regionPos);
+					region.get(bytes, offset + copied, toCopy);
+					copied += toCopy;
+				}
+				result = effectiveLength;
+			} else {
+				result = -1;
+			}
+		}
+		this.position += Math.max(result, 0);
+		return result;
+	}
+
+	private MappedByteBuffer getRegion(final int index) throws IOException {
+		while (this.regions.size() <= index) {
+			final long start = (long) this.regions.size() * this.regionSize;
+			// mapping READ_WRITE past the end of the file makes it grow.
+			this.regions.add(this.fileChannel.map(
+					FileChannel.MapMode.READ_WRITE, start, this.regionSize));
+		}
+		return this.regions.get(index);
+	}
+
+	/**
+	 * <p>
+	 * Getter for the field <code>regionSize</code>.
+	 * </p>
+	 *
+	 * @return the size in bytes of each mapped region.
+	 */
+	public int getRegionSize() {
+		return this.regionSize;
+	}
+
+	/**
+	 * <p>
+	 * Getter for the field <code>size</code>.
+	 * </p>
+	 *
+	 * @return a long.
+	 */
+	public long getSize() {
+		return this.size;
+	}
+
+	/**
+	 * <p>
+	 * Getter for the field <code>treshold</code>.
+	 * </p>
+	 *
+	 * @return a int.
+	 */
+	public int getTreshold() {
+		return this.treshold;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void put(final byte[] bytes, final int offset, final int length)
+			throws IOException {
+		if (length <= 0) {
+			throw new IllegalArgumentException("lenght = [" + length + "]");
+		}
+		if (this.size + length < this.treshold) {
+			this.ms.put(bytes, offset, length);
+		} else {
+			if (this.size < this.treshold) {
+				// empty the memory buffer and init the file buffer
+				if (this.fileStorage == null) {
+					this.fileStorage = File.createTempFile("iotools-mapped",
+							".tmp");
+				}
+				this.fileAccess = new RandomAccessFile(this.fileStorage, "rw");
+				this.fileChannel = this.fileAccess.getChannel();
+				final byte[] buffer = new byte[this.regionSize < 8192 ? this.regionSize
+						: 8192];
+				this.ms.seek(0);
+				long dest = 0;
+				int len;
+				while ((len = this.ms.get(buffer, 0, buffer.length)) > 0) {
+					writeMapped(dest, buffer, 0, len);
+					dest += len;
+				}
+				this.ms.cleanup();
+			}
+			writeMapped(this.size, bytes, offset, length);
+		}
+		this.size += length;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void seek(final long position) throws IOException {
+		// if already in place do nothing.
+		if (this.position != position) {
+			if (position <= this.size) {
+				this.position = position;
+				if (this.size < this.treshold) {
+					this.ms.seek(position);
+				}
+			} else {
+				// seek outside the buffer
+				throw new IOException("Seek at posiotion [" + position
+						+ "]outside buffer size[" + this.size + "]");
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc} Provides a String representation of the state of the
+	 * Store for debugging purposes.
+	 */
+	@Override
+	public String toString() {
+		String str = this.getClass().getSimpleName() + "[pos="
+				+ this.position + ",size=" + this.size;
+		if (this.fileStorage != null) {
+			str += ",file=" + this.fileStorage + ",regions="
+					+ this.regions.size();
+		} else {
+			str += ",ms=" + this.ms;
+		}
+		return str + "]";
+	}
+
+	private void writeMapped(final long dest, final byte[] bytes,
+			final int offset, final int length) throws IOException {
+		int written = 0;
+		while (written < length) {
+			final long pos = dest + written;
+			final MappedByteBuffer region = getRegion((int) (pos / this.regionSize));
+			final int regionPos = (int) (pos % this.regionSize);
+			final int toCopy = Math.min(length - written, this.regionSize
+					- regionPos);
+			region.position(regionPos);
+			region.put(bytes, offset + written, toCopy);
+			written += toCopy;
+		}
+	}
+}
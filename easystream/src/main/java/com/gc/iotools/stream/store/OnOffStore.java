@@ -7,7 +7,18 @@ package com.gc.iotools.stream.store;
 import java.io.IOException;
 
 /**
- * <p>OnOffStore class.</p>
+ * <p>
+ * A <code>SeekableStore</code> whose buffering can be switched off. While
+ * disabled the data passed to {@link #put(byte[], int, int)} is discarded,
+ * but the data already stored can still be read.
+ * </p>
+ * <p>
+ * In <i>evicting</i> mode the underlying store is cleaned up as soon as,
+ * after buffering has been disabled, all the stored data has been read: a
+ * stream that buffers only its first bytes then keeps no data for the rest
+ * of its life. Positions before the end of the evicted data can't be
+ * seeked anymore.
+ * </p>
  *
  * @author gcontini
  * @version $Id$
@@ -15,6 +26,10 @@ import java.io.IOException;
 public class OnOffStore implements SeekableStore {
 	private boolean canEnable = true;
 	private boolean enabled = true;
+	private final boolean evict;
+	private boolean evicted = false;
+	private long position = 0;
+	private long size = 0;
 	private final SeekableStore store;
 
 	/**
@@ -23,7 +38,24 @@ public class OnOffStore implements SeekableStore {
 	 * @param store a {@link com.gc.iotools.stream.store.SeekableStore} object.
 	 */
 	public OnOffStore(final SeekableStore store) {
+		this(store, false);
+	}
+
+	/**
+	 * <p>
+	 * Constructor for OnOffStore.
+	 * </p>
+	 *
+	 * @param store
+	 *            the store where data is kept while enabled.
+	 * @param evict
+	 *            if <code>true</code> the store is cleaned up once disabled
+	 *            and all its data has been read.
+	 * @since 1.2.15
+	 */
+	public OnOffStore(final SeekableStore store, final boolean evict) {
 		this.store = store;
+		this.evict = evict;
 	}
 
 	/** {@inheritDoc} */
@@ -40,7 +72,7 @@ public class OnOffStore implements SeekableStore {
 	public void enable(final boolean enable) {
 		if (enable != this.enabled) {
 			if (enable) {
-				if (!this.canEnable) {
+				if (!this.canEnable || this.evicted) {
 					throw new IllegalStateException(
 							"Enable was called but some "
 									+ "data was already put on the buffer. "
@@ -48,6 +80,21 @@ public class OnOffStore implements SeekableStore {
 				}
 			}
 			this.enabled = enable;
+			if (!enable) {
+				evictIfRead();
+			}
+		}
+	}
+
+	/**
+	 * Cleans up the store in evicting mode if it is disabled and all the
+	 * data was read.
+	 */
+	private void evictIfRead() {
+		if (this.evict && !this.enabled && !this.evicted
+				&& (this.position >= this.size)) {
+			this.evicted = true;
+			this.store.cleanup();
 		}
 	}
 
@@ -55,28 +102,56 @@ public class OnOffStore implements SeekableStore {
 	@Override
 	public int get(final byte[] bytes, final int offset, final int length)
 			throws IOException {
-
+		if (this.evicted) {
+			return -1;
+		}
 		final int num = this.store.get(bytes, offset, length);
+		this.position += Math.max(num, 0);
 		if (!this.enabled && num == 0) {
 			cleanup();
 		}
+		evictIfRead();
 		return num;
 	}
 
+	/**
+	 * Returns <code>true</code> if the store was cleaned up in evicting mode.
+	 *
+	 * @return <code>true</code> if the stored data was released.
+	 * @since 1.2.15
+	 */
+	public boolean isEvicted() {
+		return this.evicted;
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public void put(final byte[] bytes, final int offset, final int length)
 			throws IOException {
 		if (this.enabled) {
 			this.store.put(bytes, offset, length);
+			this.size += length;
+			this.position = this.size;
 		} else {
 			this.canEnable = false;
+			// data is put only when the reader is past the stored data.
+			this.position = this.size;
+			evictIfRead();
 		}
 	}
 
 	/** {@inheritDoc} */
 	@Override
 	public void seek(final long position) throws IOException {
-		this.store.seek(position);
+		if (this.evicted) {
+			if (position < this.size) {
+				throw new IOException("Seek at position [" + position
+						+ "] but the data before [" + this.size
+						+ "] was already released.");
+			}
+		} else {
+			this.store.seek(position);
+			this.position = position;
+		}
 	}
 }
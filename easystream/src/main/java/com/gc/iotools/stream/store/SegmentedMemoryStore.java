@@ -0,0 +1,173 @@
+package com.gc.iotools.stream.store;
+
+/*
+ * Copyright (c) 2008, 2014 Gabriele Contini. This source code is released
+ * under the BSD License.
+ */
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * A <code>SeekableStore</code> that keeps data in memory in a list of fixed
+ * size segments.
+ * </p>
+ * <p>
+ * Differently from {@link MemoryStore} the data already stored is never
+ * copied when new data is added: a new segment is appended when the last one
+ * is full. The cost of a <code>put</code> is therefore proportional to the
+ * number of bytes added and not to the size of the store, and
+ * <code>seek</code> and <code>get</code> locate the segment of a position
+ * with a division.
+ * </p>
+ *
+ * @author dvd.smnt
+ * @since 1.2.15
+ * @see ThresholdStore
+ * @version $Id$
+ */
+public class SegmentedMemoryStore implements SeekableStore {
+	/**
+	 * Default size in bytes of each segment.
+	 */
+	public static final int DEFAULT_SEGMENT_SIZE = 4096;
+
+	private long position = 0;
+
+	private final int segmentSize;
+
+	private final List<byte[]> segments = new ArrayList<byte[]>();
+
+	private long size = 0;
+
+	/**
+	 * <p>
+	 * Creates a <code>SegmentedMemoryStore</code> with segments of
+	 * {@value #DEFAULT_SEGMENT_SIZE} bytes.
+	 * </p>
+	 */
+	public SegmentedMemoryStore() {
+		this(DEFAULT_SEGMENT_SIZE);
+	}
+
+	/**
+	 * <p>
+	 * Creates a <code>SegmentedMemoryStore</code> with the given segment
+	 * size.
+	 * </p>
+	 *
+	 * @param segmentSize
+	 *            size in bytes of each segment. Must be greater than 0.
+	 */
+	public SegmentedMemoryStore(final int segmentSize) {
+		if (segmentSize <= 0) {
+			throw new IllegalArgumentException("segmentSize ["
+					+ segmentSize + "] must be greater than 0");
+		}
+		this.segmentSize = segmentSize;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void cleanup() {
+		this.segments.clear();
+		this.position = 0;
+		this.size = 0;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int get(final byte[] bytes, final int offset, final int length) {
+		final int effectiveLength = (int) Math.min(length, this.size
+				- this.position);
+		int result;
+		if (effectiveLength > 0) {
+			int copied = 0;
+			while (copied < effectiveLength) {
+				final int segmentIdx = (int) (this.position / this.segmentSize);
+				final int segmentPos = (int) (this.position % this.segmentSize);
+				final int toCopy = Math.min(effectiveLength - copied,
+						this.segmentSize - segmentPos);
+				System.arraycopy(this.segments.get(segmentIdx), segmentPos,
+						bytes, offset + copied, toCopy);
+				copied += toCopy;
+				this.position += toCopy;
+			}
+			result = effectiveLength;
+		} else {
+			result = -1;
+		}
+		return result;
+	}
+
+	/**
+	 * <p>
+	 * Getter for the field <code>position</code>.
+	 * </p>
+	 *
+	 * @return a long.
+	 */
+	public long getPosition() {
+		return this.position;
+	}
+
+	/**
+	 * <p>
+	 * Getter for the field <code>segmentSize</code>.
+	 * </p>
+	 *
+	 * @return the size in bytes of each segment.
+	 */
+	public int getSegmentSize() {
+		return this.segmentSize;
+	}
+
+	/**
+	 * <p>
+	 * Getter for the field <code>size</code>.
+	 * </p>
+	 *
+	 * @return number of bytes currently kept in the store.
+	 */
+	public long getSize() {
+		return this.size;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void put(final byte[] bytes, final int offset, final int length) {
+		int written = 0;
+		while (written < length) {
+			final int segmentIdx = (int) (this.size / this.segmentSize);
+			final int segmentPos = (int) (this.size % this.segmentSize);
+			if (segmentIdx == this.segments.size()) {
+				this.segments.add(new byte[this.segmentSize]);
+			}
+			final int toCopy = Math.min(length - written, this.segmentSize
+					- segmentPos);
+			System.arraycopy(bytes, offset + written,
+					this.segments.get(segmentIdx), segmentPos, toCopy);
+			written += toCopy;
+			this.size += toCopy;
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void seek(final long position) {
+		this.position = position;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Provides a String representation of the state of the Store for
+	 * debugging purposes.
+	 */
+	@Override
+	public String toString() {
+		return this.getClass().getSimpleName() + "[pos=" + this.position
+				+ ",size=" + this.size + ",segments=" + this.segments.size()
+				+ "]";
+	}
+}
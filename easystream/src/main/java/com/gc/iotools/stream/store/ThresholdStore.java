@@ -32,7 +32,7 @@ public class ThresholdStore implements SeekableStore {
 	private RandomAccessFile fileAccess;
 	private File fileStorage;
 	private final String instantiationPath;
-	private final MemoryStore ms = new MemoryStore();
+	private final SeekableStore ms = new SegmentedMemoryStore();
 	private long position = 0;
 	private long size = 0;
 
@@ -1,10 +1,10 @@
 package com.gc.iotools.stream.utils;
 
-
 /*
  * Copyright (c) 2008, 2014 Gabriele Contini. This source code is released
  * under the BSD License.
  */
+import java.util.Arrays;
 
 /**
  * Miscellaneous utilities for Arrays, i haven't found anywhere.
@@ -14,6 +14,24 @@ package com.gc.iotools.stream.utils;
  * @version $Id$
  */
 public final class ArrayTools {
+	/**
+	 * Patterns at least this long are searched with Boyer-Moore-Horspool,
+	 * shorter ones scanning for their first byte.
+	 */
+	private static final int HORSPOOL_MIN_LENGTH = 8;
+
+	/**
+	 * Compares <code>length</code> bytes of the two arrays.
+	 */
+	private static boolean equals(final byte[] a, final int aOffset,
+			final byte[] b, final int bOffset, final int length) {
+		int i = 0;
+		while ((i < length) && (a[aOffset + i] == b[bOffset + i])) {
+			i++;
+		}
+		return i == length;
+	}
+
 	/**
 	 * Find the index of the contained array in the src array.
 	 * 
@@ -27,22 +45,85 @@ public final class ArrayTools {
 		if (src == null) {
 			throw new IllegalArgumentException("Source array can not be null");
 		}
-		int result = -1;
-		if (src.length >= contained.length) {
-			boolean found = false;
-			int pos = 0;
-			for (; (pos <= (src.length - contained.length)) && !found; pos++) {
-				boolean equals = true;
-				for (int j = 0; (j < contained.length) && equals; j++) {
-					equals = (src[pos + j] == contained[j]);
-					found = (j == (contained.length - 1)) && equals;
-				}
-			}
-			result = (found ? (pos - 1) : -1);
+		return indexOf(src, 0, src.length, contained);
+	}
+
+	/**
+	 * <p>
+	 * Find the index of the contained array in a portion of the src array,
+	 * without copying it.
+	 * </p>
+	 * <p>
+	 * Short arrays are searched scanning for their first byte, longer ones
+	 * with the Boyer-Moore-Horspool algorithm, that skips up to
+	 * <code>contained.length</code> bytes at each comparison.
+	 * </p>
+	 * 
+	 * @param src
+	 *            Source array.
+	 * @param offset
+	 *            position in <code>src</code> where the search starts.
+	 * @param length
+	 *            number of bytes of <code>src</code> to search.
+	 * @param contained
+	 *            Array to search for.
+	 * @return position in <code>src</code> of the contained array or -1 if
+	 *         not found or empty.
+	 * @since 1.2.15
+	 */
+	public static int indexOf(final byte[] src, final int offset,
+			final int length, final byte[] contained) {
+		if (src == null) {
+			throw new IllegalArgumentException("Source array can not be null");
+		}
+		if ((offset < 0) || (length < 0) || (offset + length > src.length)) {
+			throw new IndexOutOfBoundsException("src.length[" + src.length
+					+ "] offset[" + offset + "] length[" + length + "]");
+		}
+		int result;
+		if ((contained.length == 0) || (contained.length > length)) {
+			result = -1;
+		} else if (contained.length < HORSPOOL_MIN_LENGTH) {
+			result = indexOfFirstByte(src, offset, offset + length, contained);
+		} else {
+			result = indexOfHorspool(src, offset, offset + length, contained);
 		}
 		return result;
 	}
 
+	private static int indexOfFirstByte(final byte[] src, final int from,
+			final int to, final byte[] contained) {
+		final byte first = contained[0];
+		final int last = to - contained.length;
+		for (int pos = from; pos <= last; pos++) {
+			if ((src[pos] == first)
+					&& equals(src, pos + 1, contained, 1,
+							contained.length - 1)) {
+				return pos;
+			}
+		}
+		return -1;
+	}
+
+	private static int indexOfHorspool(final byte[] src, final int from,
+			final int to, final byte[] contained) {
+		final int lastIndex = contained.length - 1;
+		final int[] shift = new int[256];
+		Arrays.fill(shift, contained.length);
+		for (int i = 0; i < lastIndex; i++) {
+			shift[contained[i] & 0xff] = lastIndex - i;
+		}
+		final byte lastByte = contained[lastIndex];
+		for (int pos = from; pos <= to - contained.length;) {
+			final byte b = src[pos + lastIndex];
+			if ((b == lastByte) && equals(src, pos, contained, 0, lastIndex)) {
+				return pos;
+			}
+			pos += shift[b & 0xff];
+		}
+		return -1;
+	}
+
 	public static byte[] subarray(final byte[] array,
 			int startIndexInclusive, int endIndexExclusive) {
 		if (array == null) {
@@ -0,0 +1,122 @@
+package com.gc.iotools.stream.base;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import com.gc.iotools.stream.is.InputStreamFromOutputStream;
+import com.gc.iotools.stream.os.OutputStreamToInputStream;
+import com.gc.iotools.stream.reader.ReaderFromWriter;
+import com.gc.iotools.stream.writer.WriterToReader;
+
+public class ExecutorServiceFactoryTest {
+
+	private static final int DATA_SIZE = 3 * EasyStreamConstants.DEFAULT_PIPE_SIZE;
+
+	/**
+	 * Tens of thousands of pipes are only feasible with real virtual
+	 * threads. With the fallback pool every pipe is a platform thread.
+	 */
+	private static int concurrentPipes() {
+		return ExecutorServiceFactory.isVirtualThreadAvailable() ? 20000
+				: 200;
+	}
+
+	@Test
+	public void testVirtualThreadInputStreams() throws Exception {
+		final int n = concurrentPipes();
+		final List<InputStreamFromOutputStream<Void>> streams = new ArrayList<InputStreamFromOutputStream<Void>>();
+		for (int i = 0; i < n; i++) {
+			final InputStreamFromOutputStream<Void> isos = new InputStreamFromOutputStream<Void>(
+					true, ExecutionModel.VIRTUAL_THREAD) {
+				@Override
+				protected Void produce(final OutputStream sink)
+						throws Exception {
+					sink.write(new byte[DATA_SIZE]);
+					return null;
+				}
+			};
+			// producers start and block on the full pipe.
+			assertEquals("first byte", 0, isos.read());
+			streams.add(isos);
+		}
+		for (final InputStreamFromOutputStream<Void> isos : streams) {
+			assertEquals("bytes read", DATA_SIZE - 1,
+					IOUtils.toByteArray(isos).length);
+			isos.close();
+		}
+	}
+
+	@Test
+	public void testVirtualThreadOutputStreams() throws Exception {
+		final int n = concurrentPipes();
+		final List<OutputStreamToInputStream<Integer>> streams = new ArrayList<OutputStreamToInputStream<Integer>>();
+		for (int i = 0; i < n; i++) {
+			final OutputStreamToInputStream<Integer> osis = new OutputStreamToInputStream<Integer>(
+					true, ExecutionModel.VIRTUAL_THREAD) {
+				@Override
+				protected Integer doRead(final InputStream istream)
+						throws Exception {
+					return IOUtils.toByteArray(istream).length;
+				}
+			};
+			// consumers start and block on the empty pipe.
+			osis.write(1);
+			streams.add(osis);
+		}
+		for (final OutputStreamToInputStream<Integer> osis : streams) {
+			osis.write(new byte[DATA_SIZE - 1]);
+			osis.close();
+			assertEquals("bytes read", Integer.valueOf(DATA_SIZE),
+					osis.getResult());
+		}
+	}
+
+	@Test
+	public void testVirtualThreadReadersWriters() throws Exception {
+		final int n = concurrentPipes();
+		final List<ReaderFromWriter<Void>> readers = new ArrayList<ReaderFromWriter<Void>>();
+		final List<WriterToReader<Integer>> writers = new ArrayList<WriterToReader<Integer>>();
+		for (int i = 0; i < n; i++) {
+			final ReaderFromWriter<Void> rfw = new ReaderFromWriter<Void>(
+					true, ExecutionModel.VIRTUAL_THREAD) {
+				@Override
+				protected Void produce(final Writer sink) throws Exception {
+					sink.write(new char[DATA_SIZE]);
+					return null;
+				}
+			};
+			assertEquals("first char", 0, rfw.read());
+			readers.add(rfw);
+			final WriterToReader<Integer> wtr = new WriterToReader<Integer>(
+					true, ExecutionModel.VIRTUAL_THREAD) {
+				@Override
+				protected Integer doRead(final Reader reader)
+						throws Exception {
+					return IOUtils.toCharArray(reader).length;
+				}
+			};
+			wtr.write(1);
+			writers.add(wtr);
+		}
+		for (final ReaderFromWriter<Void> rfw : readers) {
+			assertEquals("chars read", DATA_SIZE - 1,
+					IOUtils.toCharArray(rfw).length);
+			rfw.close();
+		}
+		for (final WriterToReader<Integer> wtr : writers) {
+			wtr.write(new char[DATA_SIZE - 1]);
+			wtr.close();
+			assertEquals("chars read", Integer.valueOf(DATA_SIZE),
+					wtr.getResults());
+		}
+	}
+}
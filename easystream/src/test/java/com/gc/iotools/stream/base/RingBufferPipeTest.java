@@ -0,0 +1,173 @@
+package com.gc.iotools.stream.base;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.Random;
+
+import org.apache.commons.lang3.ArrayUtils;
+import org.junit.Test;
+
+public class RingBufferPipeTest {
+
+	private static long copy(final InputStream is, final OutputStream os,
+			final long length, final int chunk) throws Exception {
+		final long startTime = System.currentTimeMillis();
+		final Thread writer = new Thread() {
+			@Override
+			public void run() {
+				final byte[] buf = new byte[chunk];
+				try {
+					for (long i = 0; i < length; i += chunk) {
+						os.write(buf, 0, (int) Math.min(chunk, length - i));
+					}
+					os.close();
+				} catch (final IOException e) {
+					e.printStackTrace();
+				}
+			}
+		};
+		writer.start();
+		final byte[] buf = new byte[chunk];
+		long read = 0;
+		int n;
+		while ((n = is.read(buf)) >= 0) {
+			read += n;
+		}
+		writer.join();
+		if (read != length) {
+			throw new IllegalStateException("read [" + read + "] expected ["
+					+ length + "]");
+		}
+		return System.currentTimeMillis() - startTime;
+	}
+
+	/**
+	 * Throughput benchmark against java.io.PipedInputStream
+	 *
+	 * @param args
+	 */
+	public static void main(final String[] args) throws Exception {
+		final long length = 1024L * 1024 * 1024;
+		final int[] pipeSizes = new int[] { 4096, 32768 };
+		final int[] chunks = new int[] { 512, 8192 };
+		for (final int pipeSize : pipeSizes) {
+			for (final int chunk : chunks) {
+				final PipedInputStream pis = new PipedInputStream(pipeSize);
+				final PipedOutputStream pos = new PipedOutputStream(pis);
+				final long piped = copy(pis, pos, length, chunk);
+				final RingBufferPipe pipe = new RingBufferPipe(pipeSize);
+				final long ring = copy(pipe.getInputStream(),
+						pipe.getOutputStream(), length, chunk);
+				System.out.println("pipeSize:" + pipeSize + " chunk:" + chunk
+						+ " bytes:" + length + " Piped:" + piped
+						+ " RingBufferPipe:" + ring);
+			}
+		}
+	}
+
+	@Test
+	public void testReadClosed() throws Exception {
+		final RingBufferPipe pipe = new RingBufferPipe(16);
+		final Thread reader = new Thread() {
+			@Override
+			public void run() {
+				try {
+					pipe.read(new byte[4], 0, 4);
+				} catch (final IOException e) {
+					e.printStackTrace();
+				}
+				pipe.closeRead();
+			}
+		};
+		reader.start();
+		try {
+			pipe.write(new byte[100], 0, 100);
+			fail("Exception must be thrown");
+		} catch (final IOException e) {
+			assertEquals("message", "Pipe closed", e.getMessage());
+		}
+		reader.join();
+	}
+
+	@Test
+	public void testTransfer() throws Exception {
+		final byte[] ref = new byte[100000];
+		new Random().nextBytes(ref);
+		final RingBufferPipe pipe = new RingBufferPipe(37);
+		final Thread writer = new Thread() {
+			@Override
+			public void run() {
+				try {
+					int pos = 0;
+					final Random r = new Random();
+					while (pos < ref.length) {
+						if (r.nextInt(10) == 0) {
+							pipe.write(ref[pos++]);
+						} else {
+							final int len = Math.min(r.nextInt(100),
+									ref.length - pos);
+							pipe.write(ref, pos, len);
+							pos += len;
+						}
+					}
+				} catch (final IOException e) {
+					e.printStackTrace();
+				} finally {
+					pipe.closeWrite();
+				}
+			}
+		};
+		writer.start();
+		final byte[] read = new byte[ref.length + 100];
+		final Random r = new Random();
+		int pos = 0;
+		int n = 0;
+		while (n >= 0) {
+			if (r.nextInt(10) == 0) {
+				n = pipe.read();
+				if (n >= 0) {
+					read[pos++] = (byte) n;
+				}
+			} else {
+				n = pipe.read(read, pos, r.nextInt(80) + 1);
+				pos += Math.max(n, 0);
+			}
+		}
+		writer.join();
+		assertEquals("bytes read", ref.length, pos);
+		assertArrayEquals("read equals written", ref,
+				ArrayUtils.subarray(read, 0, ref.length));
+		assertEquals("available at eof", 0, pipe.available());
+	}
+
+	@Test
+	public void testWriteEndDead() throws Exception {
+		final RingBufferPipe pipe = new RingBufferPipe(16);
+		final Thread writer = new Thread() {
+			@Override
+			public void run() {
+				try {
+					pipe.write(new byte[10], 0, 10);
+				} catch (final IOException e) {
+					e.printStackTrace();
+				}
+			}
+		};
+		writer.start();
+		writer.join();
+		assertEquals("read", 10, pipe.read(new byte[20], 0, 20));
+		try {
+			pipe.read(new byte[20], 0, 20);
+			fail("Exception must be thrown");
+		} catch (final IOException e) {
+			assertEquals("message", "Write end dead", e.getMessage());
+		}
+	}
+}
@@ -9,11 +9,65 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Arrays;
+import java.util.Random;
 
 import org.apache.commons.io.IOUtils;
 import org.junit.Test;
 
 public class ChunkInputStreamTest {
+	/**
+	 * Returns at most <code>max</code> bytes for each read.
+	 */
+	private static final class SlowInputStream extends ByteArrayInputStream {
+		private final int max;
+
+		SlowInputStream(final byte[] buf, final int max) {
+			super(buf);
+			this.max = max;
+		}
+
+		@Override
+		public synchronized int read(final byte[] b, final int off,
+				final int len) {
+			return super.read(b, off, Math.min(len, this.max));
+		}
+	}
+
+	/**
+	 * Expected content of a ChunkInputStream with automatic fetch.
+	 */
+	private static String chunks(final String base, final String start,
+			final String stop, final boolean showMarkers) {
+		final StringBuilder result = new StringBuilder();
+		int pos = 0;
+		int startPos;
+		while ((startPos = base.indexOf(start, pos)) >= 0) {
+			pos = startPos + start.length();
+			if (showMarkers) {
+				result.append(start);
+			}
+			final int stopPos = base.indexOf(stop, pos);
+			if (stopPos < 0) {
+				result.append(base.substring(pos));
+				pos = base.length();
+			} else {
+				result.append(base.substring(pos, stopPos));
+				pos = stopPos + stop.length();
+			}
+		}
+		return result.toString();
+	}
+
+	private static String randomString(final Random random,
+			final int length) {
+		final char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			// small alphabet: markers are often partially matched.
+			chars[i] = (char) ('a' + random.nextInt(3));
+		}
+		return new String(chars);
+	}
+
 	private void doTest(final String base, final String start,
 			final String end, final String expected) throws IOException {
 		ChunkInputStream chIs = getStream(base, start, end, false, true);
@@ -72,6 +126,18 @@ public class ChunkInputStreamTest {
 		assertArrayEquals("read buffer", reference, bytes);
 	}
 
+	@Test
+	public void testHighBytes() throws IOException {
+		final byte[] content = new byte[] { 1, 2, (byte) 0xff, (byte) 0x80,
+				3 };
+		final ChunkInputStream chis = new ChunkInputStream(
+				new ByteArrayInputStream(content), new byte[] { 2 },
+				new byte[] { 3 });
+		assertEquals("0xff", 0xff, chis.read());
+		assertEquals("0x80", 0x80, chis.read());
+		assertEquals("end", -1, chis.read());
+	}
+
 	@Test
 	public void testIncompleteMarkerInEnd() throws IOException {
 		doTest("0123456789", "0", "890", "123456789");
@@ -142,11 +208,46 @@ public class ChunkInputStreamTest {
 		assertEquals("No zero lenght read", 1, ret);
 	}
 
+	@Test
+	public void testRandomChunks() throws IOException {
+		final Random random = new Random();
+		for (int i = 0; i < 2000; i++) {
+			final String base = randomString(random, random.nextInt(200));
+			final String start = randomString(random, 1 + random.nextInt(4));
+			final String stop = randomString(random, 1 + random.nextInt(4));
+			final boolean showMarkers = random.nextBoolean();
+			// markers span the reads of the source.
+			final ChunkInputStream chis = new ChunkInputStream(
+					new SlowInputStream(base.getBytes(),
+							1 + random.nextInt(3)), start.getBytes(),
+					stop.getBytes(), showMarkers, true);
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			final byte[] buffer = new byte[1 + random.nextInt(5)];
+			int n;
+			while ((n = chis.read(buffer, 0, 1 + random
+					.nextInt(buffer.length))) >= 0) {
+				assertTrue("no zero length read", n > 0);
+				out.write(buffer, 0, n);
+			}
+			assertEquals("base[" + base + "] start[" + start + "] stop["
+					+ stop + "] show[" + showMarkers + "]",
+					chunks(base, start, stop, showMarkers), out.toString());
+		}
+	}
+
 	@Test
 	public void testReadMultiple() throws IOException {
 		doTest("01st23en45st67en st89", "st", "en", "236789");
 	}
 
+	@Test
+	public void testShowStartMarker() throws IOException {
+		final ChunkInputStream chis = getStream("01st23en45st67en st89",
+				"st", "en", true, true);
+		assertEquals("content", "st23st67st89", new String(
+				readWithSingleByte(chis)));
+	}
+
 	@Test
 	public void testStandard() throws IOException {
 		final ChunkInputStream chunkIs = new ChunkInputStream(
@@ -5,6 +5,8 @@ import static org.junit.Assert.fail;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
 import java.util.Arrays;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -175,4 +177,26 @@ public class TestInputStreamFromOutputStream {
 		Thread.sleep(1000);
 		assertEquals("Active Threads", 0, es.getActiveCount());
 	}
+
+	/**
+	 * The class is still a connected <code>PipedInputStream</code>.
+	 */
+	@Test
+	public void testPipedCompatibility() throws Exception {
+		final PipedInputStream isos = new InputStreamFromOutputStream<Void>() {
+			@Override
+			public Void produce(final OutputStream ostream) throws Exception {
+				ostream.write("test".getBytes());
+				return null;
+			}
+		};
+		try {
+			new PipedOutputStream(isos);
+			fail("Connected twice");
+		} catch (final IOException e) {
+			assertEquals("message", "Already connected", e.getMessage());
+		}
+		assertEquals("read", "test", new String(IOUtils.toByteArray(isos)));
+		isos.close();
+	}
 }
@@ -7,6 +7,8 @@ import static org.junit.Assert.fail;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -213,4 +215,27 @@ public class TestOutputStreamToInputStream {
 				oStream2IStream.getResult());
 	}
 
+	/**
+	 * The class is still a connected <code>PipedOutputStream</code>.
+	 */
+	@Test
+	public void testPipedCompatibility() throws Exception {
+		final OutputStreamToInputStream<String> osis = new OutputStreamToInputStream<String>() {
+			@Override
+			protected String doRead(final InputStream istream)
+					throws Exception {
+				return new String(IOUtils.toByteArray(istream));
+			}
+		};
+		final PipedOutputStream piped = osis;
+		try {
+			new PipedInputStream(piped);
+			fail("Connected twice");
+		} catch (final IOException e) {
+			assertEquals("message", "Already connected", e.getMessage());
+		}
+		piped.write("test".getBytes());
+		piped.close();
+		assertEquals("result", "test", osis.getResult());
+	}
 }
@@ -0,0 +1,99 @@
+package com.gc.iotools.stream.store;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.commons.lang3.ArrayUtils;
+import org.junit.Test;
+
+public class DirectBufferStoreTest {
+
+	@Test
+	public void testCleanupReleasesSlabs() throws IOException {
+		final DirectBufferPool pool = new DirectBufferPool(16, 4);
+		final DirectBufferStore dbs = new DirectBufferStore(pool);
+		dbs.put(new byte[100], 0, 100);
+		assertEquals("slabs in use", 7, pool.getOutstanding());
+		assertEquals("misses", 7, pool.getMisses());
+		dbs.cleanup();
+		assertEquals("slabs in use after cleanup", 0, pool.getOutstanding());
+		assertEquals("pool bounded", 4, pool.getPooled());
+		assertEquals("read after cleanup", -1, dbs.get(new byte[10], 0, 10));
+
+		final DirectBufferStore dbs2 = new DirectBufferStore(pool);
+		dbs2.put(new byte[40], 0, 40);
+		assertEquals("hits", 3, pool.getHits());
+		assertEquals("misses", 7, pool.getMisses());
+		assertEquals("pooled", 1, pool.getPooled());
+		dbs2.cleanup();
+		assertEquals("pooled", 4, pool.getPooled());
+	}
+
+	@Test
+	public void testSpillWhenPoolExhausted() throws IOException {
+		final DirectBufferPool pool = new DirectBufferPool(16, 4, 3);
+		final DirectBufferStore dbs = new DirectBufferStore(pool);
+		final byte[] ref = new byte[100];
+		new Random().nextBytes(ref);
+		dbs.put(ref, 0, 40);
+		assertFalse("in memory", dbs.isSpilled());
+		assertEquals("slabs in use", 3, pool.getOutstanding());
+		dbs.seek(10);
+		dbs.put(ref, 40, ref.length - 40);
+		assertTrue("spilled", dbs.isSpilled());
+		assertEquals("slabs released", 0, pool.getOutstanding());
+		final byte[] read = new byte[20];
+		assertEquals("read after spill", 20, dbs.get(read, 0, read.length));
+		assertArrayEquals("position kept", ArrayUtils.subarray(ref, 10, 30),
+				read);
+		dbs.seek(0);
+		final byte[] all = new byte[ref.length];
+		int pos = 0;
+		int n;
+		while ((n = dbs.get(all, pos, all.length - pos)) > 0) {
+			pos += n;
+		}
+		assertArrayEquals("read equals written", ref, all);
+
+		final DirectBufferStore other = new DirectBufferStore(pool);
+		other.put(ref, 0, 16);
+		assertFalse("slabs available again", other.isSpilled());
+		other.cleanup();
+		dbs.cleanup();
+		assertFalse("cleanup removes the file", dbs.isSpilled());
+		assertEquals("read after cleanup", -1, dbs.get(read, 0, read.length));
+	}
+
+	@Test
+	public void testReadWrite() throws IOException {
+		final DirectBufferStore dbs = new DirectBufferStore(
+				new DirectBufferPool(7, 10));
+		final byte[] ref1 = new byte[100];
+		new Random().nextBytes(ref1);
+		dbs.put(ref1, 0, 33);
+		dbs.put(ref1, 33, ref1.length - 33);
+		final byte[] read = new byte[ref1.length];
+		int pos = 0;
+		int n;
+		while ((n = dbs.get(read, pos, Math.min(13, read.length - pos))) > 0) {
+			pos += n;
+		}
+		assertArrayEquals("read equals written", ref1, read);
+		final Random r = new Random();
+		for (int i = 0; i < 100; i++) {
+			final int seekPos = r.nextInt(ref1.length - 1);
+			dbs.seek(seekPos);
+			final byte[] buf = new byte[25];
+			final int rl = dbs.get(buf, 0, buf.length);
+			assertArrayEquals("array equals pos[" + seekPos + "]",
+					ArrayUtils.subarray(ref1, seekPos, seekPos + rl),
+					ArrayUtils.subarray(buf, 0, rl));
+		}
+		dbs.cleanup();
+	}
+}
@@ -0,0 +1,138 @@
+package com.gc.iotools.stream.store;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.commons.lang3.ArrayUtils;
+import org.junit.Test;
+
+public class MappedThresholdStoreTest {
+
+	private static long readRandom(final SeekableStore store,
+			final byte[] data, final int reads) throws IOException {
+		store.put(data, 0, data.length);
+		final Random r = new Random(0);
+		final byte[] read = new byte[512];
+		final long startTime = System.currentTimeMillis();
+		for (int i = 0; i < reads; i++) {
+			store.seek(r.nextInt(data.length - read.length));
+			store.get(read, 0, read.length);
+		}
+		final long result = System.currentTimeMillis() - startTime;
+		store.cleanup();
+		return result;
+	}
+
+	static int getTmpFileNum() {
+		final File tmpDir1 = new File(System.getProperty("java.io.tmpdir"));
+		int result = 0;
+		final File[] files = tmpDir1.listFiles();
+		for (final File file : files) {
+			if (file.getName().matches("iotools-mapped.*tmp")) {
+				result++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Benchmarks random re-reads against ThresholdStore.
+	 *
+	 * @param args
+	 */
+	public static void main(final String[] args) throws Exception {
+		final byte[] data = new byte[64 * 1024 * 1024];
+		new Random().nextBytes(data);
+		final int reads = 500000;
+		System.out.println("random reads:" + reads + " ThresholdStore:"
+				+ readRandom(new ThresholdStore(65536), data, reads)
+				+ " MappedThresholdStore:"
+				+ readRandom(new MappedThresholdStore(65536), data, reads));
+	}
+
+	@Test
+	public void testCleanup() throws IOException {
+		final int before = getTmpFileNum();
+		final MappedThresholdStore mts = new MappedThresholdStore(20, 16);
+		final byte[] ref1 = new byte[140];
+		new Random().nextBytes(ref1);
+		mts.put(ref1, 0, ref1.length);
+		assertEquals("temporary files", before + 1, getTmpFileNum());
+		mts.cleanup();
+		assertEquals("read " + mts, -1, mts.get(new byte[20], 0, 20));
+		assertEquals("temporary files after cleanup", before,
+				getTmpFileNum());
+		// still works after cleanup
+		mts.put(ref1, 0, ref1.length);
+		final byte[] read = new byte[280];
+		int pos = 0;
+		int n;
+		while ((n = mts.get(read, pos, read.length - pos)) >= 0) {
+			pos += n;
+		}
+		assertEquals("read", ref1.length, pos);
+		assertArrayEquals("arrays equal", ref1,
+				ArrayUtils.subarray(read, 0, ref1.length));
+		mts.cleanup();
+	}
+
+	@Test
+	public void testGetPositionAcrossThreshold() throws IOException {
+		final MappedThresholdStore mts = new MappedThresholdStore(150, 64);
+		final byte[] ref1 = new byte[130];
+		new Random().nextBytes(ref1);
+		mts.put(ref1, 0, ref1.length);
+		mts.get(new byte[5], 0, 5);
+		// goes over threshold
+		mts.put(ref1, 0, ref1.length);
+		final byte[] read = new byte[ref1.length * 2 - 5];
+		int pos = 0;
+		int n;
+		while ((n = mts.get(read, pos, Math.min(7, read.length - pos))) > 0) {
+			pos += n;
+		}
+		assertArrayEquals("read after threshold",
+				ArrayUtils.subarray(ArrayUtils.addAll(ref1, ref1), 5,
+						ref1.length * 2), read);
+		assertEquals("get over eof", -1, mts.get(new byte[10], 0, 10));
+		mts.cleanup();
+	}
+
+	@Test
+	public void testRandomAccess() throws IOException {
+		final byte[] ref1 = new byte[1024 * 8];
+		final Random r = new Random();
+		r.nextBytes(ref1);
+		final MappedThresholdStore mts = new MappedThresholdStore(1024, 1000);
+		for (int i = 0; i < ref1.length; i += 100) {
+			mts.put(ref1, i, Math.min(100, ref1.length - i));
+		}
+		for (int i = 0; i < 1024; i++) {
+			final int pos = r.nextInt(ref1.length - 1);
+			mts.seek(pos);
+			final byte[] read = new byte[128];
+			final int rl = mts.get(read, 0, read.length);
+			assertEquals("read length pos[" + pos + "]",
+					Math.min(read.length, ref1.length - pos), rl);
+			assertArrayEquals("array equals pos[" + pos + "]",
+					ArrayUtils.subarray(ref1, pos, pos + rl),
+					ArrayUtils.subarray(read, 0, rl));
+		}
+		mts.cleanup();
+	}
+
+	@Test(expected = IOException.class)
+	public void testSeekOutside() throws IOException {
+		final MappedThresholdStore mts = new MappedThresholdStore(10, 16);
+		try {
+			mts.put(new byte[30], 0, 30);
+			mts.seek(31);
+		} finally {
+			mts.cleanup();
+		}
+	}
+}
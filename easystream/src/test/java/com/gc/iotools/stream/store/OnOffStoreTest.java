@@ -0,0 +1,113 @@
+package com.gc.iotools.stream.store;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.gc.iotools.stream.is.RandomAccessInputStream;
+
+public class OnOffStoreTest {
+
+	private static byte[] getContent(final int length) {
+		final byte[] content = new byte[length];
+		new Random().nextBytes(content);
+		return content;
+	}
+
+	private static int readFully(final RandomAccessInputStream ras,
+			final byte[] buffer) throws IOException {
+		int pos = 0;
+		int n;
+		while ((pos < buffer.length)
+				&& ((n = ras.read(buffer, pos, buffer.length - pos)) > 0)) {
+			pos += n;
+		}
+		return pos;
+	}
+
+	@Test
+	public void testEvictAfterPrefix() throws Exception {
+		final byte[] content = getContent(200 * 1024);
+		final File file = File.createTempFile("iotools-onoff", ".tmp");
+		// the prefix spills on disk.
+		final OnOffStore store = new OnOffStore(new ThresholdStore(1024,
+				file), true);
+		final RandomAccessInputStream ras = new RandomAccessInputStream(
+				new ByteArrayInputStream(content), store);
+		final byte[] prefix = new byte[16 * 1024];
+		assertEquals("prefix", prefix.length, readFully(ras, prefix));
+		ras.seek(0);
+		store.enable(false);
+		assertTrue("file exists while buffering", file.exists());
+		// replays the prefix from the store
+		final byte[] head = new byte[prefix.length - 10];
+		readFully(ras, head);
+		assertFalse("not evicted before the end of the prefix",
+				store.isEvicted());
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(head);
+		final byte[] buffer = new byte[4096];
+		int n;
+		while ((n = ras.read(buffer)) > 0) {
+			out.write(buffer, 0, n);
+			assertTrue("evicted", store.isEvicted());
+			assertFalse("file deleted", file.exists());
+		}
+		ras.close();
+		assertArrayEquals("content", content, out.toByteArray());
+	}
+
+	@Test
+	public void testEvictedSeek() throws Exception {
+		final byte[] content = getContent(8 * 1024);
+		final OnOffStore store = new OnOffStore(new ThresholdStore(4096),
+				true);
+		final RandomAccessInputStream ras = new RandomAccessInputStream(
+				new ByteArrayInputStream(content), store);
+		readFully(ras, new byte[1000]);
+		store.enable(false);
+		assertTrue("nothing to replay", store.isEvicted());
+		readFully(ras, new byte[3000]);
+		try {
+			ras.seek(10);
+			fail("seek on released data");
+		} catch (final IOException e) {
+			// expected
+		}
+		try {
+			store.enable(true);
+			fail("can't enable after eviction");
+		} catch (final IllegalStateException e) {
+			// expected
+		}
+		ras.close();
+	}
+
+	@Test
+	public void testNoEvict() throws Exception {
+		final byte[] content = getContent(8 * 1024);
+		final OnOffStore store = new OnOffStore(new ThresholdStore(4096));
+		final RandomAccessInputStream ras = new RandomAccessInputStream(
+				new ByteArrayInputStream(content), store);
+		readFully(ras, new byte[1000]);
+		ras.seek(0);
+		store.enable(false);
+		final byte[] read = new byte[content.length];
+		assertEquals("read", content.length, readFully(ras, read));
+		assertFalse("not evicted", store.isEvicted());
+		ras.seek(500);
+		assertEquals("stored data", content[500], (byte) ras.read());
+		ras.close();
+		assertArrayEquals("content", content, read);
+	}
+}
@@ -0,0 +1,110 @@
+package com.gc.iotools.stream.store;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.commons.lang3.ArrayUtils;
+import org.junit.Test;
+
+public class SegmentedMemoryStoreTest {
+
+	private static long fill(final SeekableStore store, final int total,
+			final int chunk) throws IOException {
+		final long startTime = System.currentTimeMillis();
+		final byte[] buf = new byte[chunk];
+		for (int i = 0; i < total; i += chunk) {
+			store.put(buf, 0, Math.min(chunk, total - i));
+		}
+		store.seek(0);
+		final byte[] read = new byte[8192];
+		while (store.get(read, 0, read.length) > 0) {
+			// empty block: just read all the data.
+		}
+		store.cleanup();
+		return System.currentTimeMillis() - startTime;
+	}
+
+	/**
+	 * Benchmarks
+	 *
+	 * @param args
+	 */
+	public static void main(final String[] args) throws Exception {
+		final int[] sizes = new int[] { 64 * 1024, 512 * 1024,
+				2 * 1024 * 1024 };
+		final int[] chunks = new int[] { 256, 4096 };
+		for (final int size : sizes) {
+			for (final int chunk : chunks) {
+				System.out.println("size:" + size + " chunk:" + chunk
+						+ " MemoryStore:"
+						+ fill(new MemoryStore(), size, chunk)
+						+ " SegmentedMemoryStore:"
+						+ fill(new SegmentedMemoryStore(), size, chunk));
+			}
+		}
+	}
+
+	@Test
+	public void testCleanup() throws IOException {
+		final SegmentedMemoryStore sms = new SegmentedMemoryStore(16);
+		final byte[] ref1 = new byte[140];
+		new Random().nextBytes(ref1);
+		sms.put(ref1, 0, ref1.length);
+		sms.cleanup();
+		assertEquals("size after cleanup", 0, sms.getSize());
+		assertEquals("read after cleanup", -1,
+				sms.get(new byte[20], 0, 20));
+		sms.put(ref1, 10, 20);
+		final byte[] read = new byte[20];
+		assertEquals("read", 20, sms.get(read, 0, read.length));
+		assertArrayEquals("data after cleanup",
+				ArrayUtils.subarray(ref1, 10, 30), read);
+	}
+
+	@Test
+	public void testGetAcrossSegments() throws IOException {
+		final SegmentedMemoryStore sms = new SegmentedMemoryStore(7);
+		final byte[] ref1 = new byte[100];
+		new Random().nextBytes(ref1);
+		sms.put(ref1, 0, 33);
+		sms.put(ref1, 33, 1);
+		sms.put(ref1, 34, ref1.length - 34);
+		assertEquals("size", ref1.length, sms.getSize());
+		final byte[] read = new byte[ref1.length + 10];
+		int pos = 0;
+		int n;
+		while ((n = sms.get(read, pos, 13)) > 0) {
+			pos += n;
+		}
+		assertEquals("bytes read", ref1.length, pos);
+		assertArrayEquals("read equals written", ref1,
+				ArrayUtils.subarray(read, 0, ref1.length));
+	}
+
+	@Test
+	public void testSeek() throws IOException {
+		final SegmentedMemoryStore sms = new SegmentedMemoryStore(10);
+		final byte[] ref1 = new byte[140];
+		final Random r = new Random();
+		r.nextBytes(ref1);
+		for (final byte element : ref1) {
+			sms.put(new byte[] { element }, 0, 1);
+		}
+		for (int i = 0; i < 200; i++) {
+			final int pos = r.nextInt(ref1.length - 1);
+			sms.seek(pos);
+			final byte[] read = new byte[25];
+			final int rl = sms.get(read, 0, read.length);
+			assertEquals("read length pos[" + pos + "]",
+					Math.min(read.length, ref1.length - pos), rl);
+			assertArrayEquals("array equals pos[" + pos + "]",
+					ArrayUtils.subarray(ref1, pos, pos + rl),
+					ArrayUtils.subarray(read, 0, rl));
+		}
+		sms.seek(ref1.length);
+		assertEquals("get over eof", -1, sms.get(new byte[10], 0, 10));
+	}
+}
@@ -2,10 +2,67 @@ package com.gc.iotools.stream.utils;
 
 import static org.junit.Assert.assertEquals;
 
+import java.util.Random;
+
 import org.junit.Test;
 
 public class ArrayToolsTest {
 
+	private static int naiveIndexOf(final byte[] src, final int offset,
+			final int length, final byte[] contained) {
+		for (int pos = offset; pos <= offset + length - contained.length; pos++) {
+			int j = 0;
+			while ((j < contained.length) && (src[pos + j] == contained[j])) {
+				j++;
+			}
+			if ((j == contained.length) && (j > 0)) {
+				return pos;
+			}
+		}
+		return -1;
+	}
+
+	private static long time(final byte[] src, final byte[] marker,
+			final boolean naive) {
+		final long start = System.nanoTime();
+		int found = 0;
+		for (int i = 0; i < 200; i++) {
+			found += (naive ? naiveIndexOf(src, 0, src.length, marker)
+					: ArrayTools.indexOf(src, 0, src.length, marker));
+		}
+		if (found == 0) {
+			System.out.println("found at 0");
+		}
+		return (System.nanoTime() - start) / 1000000;
+	}
+
+	/**
+	 * Benchmarks indexOf with short and long markers placed at the end of a
+	 * 1MB buffer of text.
+	 *
+	 * @param args
+	 */
+	public static void main(final String[] args) {
+		final byte[] src = new byte[1024 * 1024];
+		final Random random = new Random(1);
+		for (int i = 0; i < src.length; i++) {
+			src[i] = (byte) ('a' + random.nextInt(26));
+		}
+		final String[] markers = new String[] { "-", "--", "\r\n--",
+				"-----BEGIN PKCS7-----", "<?xml version=\"1.0\" encoding",
+				"--=_Part_boundary_0123456789abcdef0123456789abcdef" };
+		for (int round = 0; round < 3; round++) {
+			for (final String marker : markers) {
+				final byte[] bytes = marker.getBytes();
+				System.arraycopy(bytes, 0, src, src.length - bytes.length,
+						bytes.length);
+				System.out.println("marker length:" + bytes.length
+						+ " naive:" + time(src, bytes, true) + "ms indexOf:"
+						+ time(src, bytes, false) + "ms");
+			}
+		}
+	}
+
 	@Test
 	public void testIndexOf() {
 		final byte[] reference = "0123456789".getBytes();
@@ -20,4 +77,43 @@ public class ArrayToolsTest {
 
 	}
 
+	@Test
+	public void testIndexOfOffset() {
+		final byte[] reference = "0123456789012345678901234567890123456789"
+				.getBytes();
+		assertEquals("short", 12, ArrayTools.indexOf(reference, 5, 20,
+				"23".getBytes()));
+		assertEquals("short outside range", -1, ArrayTools.indexOf(
+				reference, 5, 8, "23".getBytes()));
+		assertEquals("long", 13, ArrayTools.indexOf(reference, 5, 30,
+				"3456789012".getBytes()));
+		assertEquals("long at end of range", 13, ArrayTools.indexOf(
+				reference, 5, 18, "3456789012".getBytes()));
+		assertEquals("long outside range", -1, ArrayTools.indexOf(
+				reference, 5, 17, "3456789012".getBytes()));
+		assertEquals("empty", -1,
+				ArrayTools.indexOf(reference, 0, 10, new byte[0]));
+	}
+
+	@Test
+	public void testIndexOfRandom() {
+		final Random random = new Random();
+		for (int i = 0; i < 5000; i++) {
+			// small alphabet: many partial matches.
+			final byte[] src = new byte[random.nextInt(300)];
+			for (int j = 0; j < src.length; j++) {
+				src[j] = (byte) random.nextInt(3);
+			}
+			final byte[] contained = new byte[1 + random.nextInt(20)];
+			for (int j = 0; j < contained.length; j++) {
+				contained[j] = (byte) random.nextInt(3);
+			}
+			final int offset = random.nextInt(src.length + 1);
+			final int length = random.nextInt(src.length - offset + 1);
+			assertEquals("search " + i, naiveIndexOf(src, offset, length,
+					contained), ArrayTools.indexOf(src, offset, length,
+					contained));
+		}
+	}
+
 }
@@ -0,0 +1,31 @@
+package com.gc.iotools.fmt;
+
+/*
+ * Copyright (c) 2008, 2014 Gabriele Contini. This source code is released
+ * under the BSD License.
+ */
+import com.gc.iotools.fmt.base.ResettableInputStream;
+
+/**
+ * The original stream wrapped by a {@link GuessInputStream}: it can be
+ * rewound while the format is identified.
+ *
+ * @author dvd.smnt
+ * @since 1.2.15
+ * @see ResettableStreamRASAdapter
+ * @see ResettableFileChannelAdapter
+ */
+public abstract class AbstractResettableSource extends ResettableInputStream {
+
+	/**
+	 * Tells the stream if it must keep what is read to allow
+	 * {@link #resetToBeginning()}. It is enabled during the identification
+	 * and disabled when the data is returned to the user.
+	 *
+	 * @param enable
+	 *            <code>true</code> if the stream will be rewound.
+	 */
+	public abstract void enable(boolean enable);
+
+	public abstract boolean isCloseCalled();
+}
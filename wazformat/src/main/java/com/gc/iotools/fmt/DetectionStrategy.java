@@ -20,7 +20,9 @@ import com.gc.iotools.fmt.base.DetectionLibrary;
 import com.gc.iotools.fmt.base.FormatEnum;
 import com.gc.iotools.fmt.base.FormatId;
 import com.gc.iotools.fmt.base.ResettableInputStream;
+import com.gc.iotools.fmt.base.SharedPrefixInputStream;
 import com.gc.iotools.fmt.decoders.CompositeDecoder;
+import com.gc.iotools.fmt.decoders.PipelinedCompositeDecoder;
 import com.gc.iotools.fmt.detect.droid.DroidDetectorImpl;
 
 final class DetectionStrategy {
@@ -40,11 +42,14 @@ final class DetectionStrategy {
 	private static final Logger LOG = LoggerFactory
 			.getLogger(DroidDetectorImpl.class);
 
+	/**
+	 * The beginning of the stream is read once and shared by all the
+	 * detectors: resetting the stream between them doesn't read it again.
+	 */
 	private static FormatId detectFormatStream(
-			final ResettableInputStream stream,
+			final SharedPrefixInputStream stream,
 			final DetectionLibrary[] detectors,
 			final FormatEnum[] enabledFormats) throws IOException {
-
 		FormatId detected = new FormatId(FormatEnum.UNKNOWN, null);
 		final Collection<FormatEnum> toDetect = new ArrayList<FormatEnum>(
 				Arrays.asList(enabledFormats));
@@ -94,14 +99,16 @@ final class DetectionStrategy {
 	private final Decoder[] decoders;
 	private final DetectionLibrary[] detectionLibraries;
 	private FormatEnum[] enabledFormats;
-	private final ResettableStreamRASAdapter internalStream;
+	private final AbstractResettableSource internalStream;
 	// recursion disabled by default
 	private int maxRecursion = 0;
+	private boolean pipelined = false;
 	private IdentificationResult result;
+	private boolean singlePass = false;
 
 	public DetectionStrategy(final DetectionLibrary[] detectors,
 			final Decoder[] decoders, final FormatEnum[] enabledFormats,
-			final ResettableStreamRASAdapter istream) {
+			final AbstractResettableSource istream) {
 		this.internalStream = istream;
 		this.detectionLibraries = detectors;
 		this.decoders = decoders;
@@ -114,6 +121,17 @@ final class DetectionStrategy {
 		}
 	}
 
+	/**
+	 * Stops the decoders of the decoded stream, if any. The internal stream
+	 * is not closed.
+	 */
+	public void close() throws IOException {
+		if ((this.result != null)
+				&& (this.result.resettableIs != this.internalStream)) {
+			this.result.resettableIs.close();
+		}
+	}
+
 	private Decoder getDecoder(final List<FormatId> formats,
 			final Map<FormatEnum, Decoder> decMap) {
 		final Decoder decoder;
@@ -145,27 +163,51 @@ final class DetectionStrategy {
 
 	private IdentificationResult identify() throws IOException {
 		final List<FormatId> formats = new ArrayList<FormatId>();
+		final List<Decoder> applied = new ArrayList<Decoder>();
 		final Map<FormatEnum, Decoder> decMap = getDecodersMap(this.decoders);
 		FormatId curFormat;
 		this.internalStream.enable(true);
 		ResettableInputStream currentStream = this.internalStream;
+		SharedPrefixInputStream first = null;
 		int recursionLevel = 0;
 		do {
-			curFormat = detectFormatStream(currentStream,
-					this.detectionLibraries, this.enabledFormats);
+			final SharedPrefixInputStream shared = new SharedPrefixInputStream(
+					currentStream);
+			if (first == null) {
+				first = shared;
+			}
+			curFormat = detectFormatStream(shared, this.detectionLibraries,
+					this.enabledFormats);
 			if ((recursionLevel == 0)
 					|| !FormatEnum.UNKNOWN.equals(curFormat)) {
 				formats.add(curFormat);
 			}
 			if (!FormatEnum.UNKNOWN.equals(curFormat.format)
 					&& decMap.containsKey(curFormat.format)) {
-				final Decoder decoder = getDecoder(formats, decMap);
-				currentStream = new ResettableStreamWrapper(
-						this.internalStream, decoder);
+				applied.add(decMap.get(curFormat.format));
+				if (this.singlePass) {
+					// the next layer is decoded from the bytes of this
+					// layer kept by shared.
+					currentStream = new ResettableStreamWrapper(shared,
+							decMap.get(curFormat.format));
+				} else {
+					final Decoder decoder = getDecoder(formats, decMap);
+					currentStream = new ResettableStreamWrapper(
+							this.internalStream, decoder);
+				}
 			}
 			recursionLevel++;
 		} while (decMap.containsKey(curFormat.format)
 				&& (recursionLevel <= this.maxRecursion));
+		first.resetSource();
+		if (currentStream != this.internalStream) {
+			currentStream.resetToBeginning();
+			if (this.pipelined) {
+				currentStream = new ResettableStreamWrapper(
+						this.internalStream, new PipelinedCompositeDecoder(
+								applied.toArray(new Decoder[0])));
+			}
+		}
 		this.internalStream.enable(false);
 		return new IdentificationResult(currentStream,
 				formats.toArray(new FormatId[formats.size()]));
@@ -182,4 +224,45 @@ final class DetectionStrategy {
 		}
 		this.maxRecursion = maxRecursion;
 	}
+
+	/**
+	 * <p>
+	 * When <code>true</code> the decoded stream returned by
+	 * {@link #getStream()} runs each decoder in its own thread, connected
+	 * to the others by bounded buffers. Identification is not affected.
+	 * </p>
+	 *
+	 * @param pipelined
+	 *            <code>true</code> to decode the layers in parallel.
+	 * @see PipelinedCompositeDecoder
+	 */
+	public void setPipelined(final boolean pipelined) {
+		if (this.pipelined != pipelined) {
+			this.result = null;
+		}
+		this.pipelined = pipelined;
+	}
+
+	/**
+	 * <p>
+	 * When <code>true</code> each nested layer is decoded once: the decoder
+	 * of a layer reads the bytes of the previous layer kept in memory by its
+	 * {@link SharedPrefixInputStream} instead of decoding again all the
+	 * layers from the beginning of the original stream. Detection on a layer
+	 * pulls the bytes it needs through the decoders, so deep nesting costs
+	 * about one pass on the prefix of each layer.
+	 * </p>
+	 * <p>
+	 * The decoded stream keeps in memory the prefix of each layer.
+	 * </p>
+	 *
+	 * @param singlePass
+	 *            <code>true</code> to decode each layer once.
+	 */
+	public void setSinglePass(final boolean singlePass) {
+		if (this.singlePass != singlePass) {
+			this.result = null;
+		}
+		this.singlePass = singlePass;
+	}
 }
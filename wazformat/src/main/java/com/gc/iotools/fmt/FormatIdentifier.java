@@ -0,0 +1,411 @@
+package com.gc.iotools.fmt;
+
+/*
+ * Copyright (c) 2008, 2014 Gabriele Contini. This source code is released
+ * under the BSD License.
+ */
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.gc.iotools.fmt.base.Decoder;
+import com.gc.iotools.fmt.base.DetectionLibrary;
+import com.gc.iotools.fmt.base.FormatEnum;
+import com.gc.iotools.fmt.base.FormatId;
+import com.gc.iotools.fmt.detect.droid.DroidDetectorImpl;
+import com.gc.iotools.fmt.detect.wzf.StreamDetectorImpl;
+
+/**
+ * <p>
+ * Identifies the format of many files or streams. The detection libraries
+ * are loaded once, when the <code>FormatIdentifier</code> is built, and are
+ * shared by all the identifications: the cost of each document is only the
+ * I/O needed to read its beginning.
+ * </p>
+ * <p>
+ * Instances are thread safe. Batches of documents are identified in parallel
+ * on an <code>ExecutorService</code>.
+ * </p>
+ * <p>
+ * Sample usage:
+ * </p>
+ *
+ * <pre>
+ * FormatIdentifier identifier = new FormatIdentifier();
+ * identifier.identifyPaths(paths, new IdentificationListener&lt;Path&gt;() {
+ * 	public void identified(Path path, FormatId[] formats) {
+ * 		...
+ * 	}
+ *
+ * 	public void failed(Path path, IOException e) {
+ * 		...
+ * 	}
+ * });
+ * </pre>
+ *
+ * @author dvd.smnt
+ * @since 1.2.15
+ * @see GuessInputStream
+ */
+public final class FormatIdentifier {
+
+	/**
+	 * Receives the results of a batch identification. Methods are called by
+	 * the threads of the executor, possibly concurrently: implementations
+	 * must be thread safe.
+	 *
+	 * @param <T>
+	 *            type of the identified documents.
+	 */
+	public interface IdentificationListener<T> {
+
+		/**
+		 * Called when <code>source</code> can't be read.
+		 *
+		 * @param source
+		 *            the document that failed.
+		 * @param e
+		 *            the exception thrown reading the document.
+		 */
+		void failed(T source, IOException e);
+
+		/**
+		 * Called when <code>source</code> has been identified.
+		 *
+		 * @param source
+		 *            the identified document.
+		 * @param formats
+		 *            the formats detected, see
+		 *            {@link GuessInputStream#getDetectedFormatsId()}.
+		 */
+		void identified(T source, FormatId[] formats);
+	}
+
+	/**
+	 * A document that can be opened as an <code>InputStream</code>. The
+	 * stream is opened by the thread that identifies the document, and
+	 * closed after the identification.
+	 */
+	public interface StreamSource {
+
+		/**
+		 * @return a new stream on the beginning of the document.
+		 * @throws IOException
+		 *             if the document can't be opened.
+		 */
+		InputStream openStream() throws IOException;
+	}
+
+	/**
+	 * The identification of one document of a batch.
+	 */
+	private interface Identification {
+		FormatId[] identify() throws IOException;
+	}
+
+	private static ExecutorService defaultExecutor;
+
+	/**
+	 * Returns the executor used when none is given: one daemon thread per
+	 * processor, released when idle.
+	 */
+	private static synchronized ExecutorService getDefaultExecutor() {
+		if (defaultExecutor == null) {
+			final int threads = Runtime.getRuntime().availableProcessors();
+			final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+					threads, threads, 5, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+						@Override
+						public Thread newThread(final Runnable r) {
+							final Thread thread = new Thread(r,
+									"FormatIdentifier");
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+			executor.allowCoreThreadTimeOut(true);
+			defaultExecutor = executor;
+		}
+		return defaultExecutor;
+	}
+
+	private final Decoder[] decoders;
+
+	private final DetectionLibrary[] detectors;
+
+	private final FormatEnum[] enabledFormats;
+
+	private final ExecutorService executor;
+
+	private final int identificationDepth;
+
+	/**
+	 * Builds an identifier of all the formats with the default detection
+	 * libraries and decoders, without recursion. Batches are identified
+	 * with one thread per processor.
+	 */
+	public FormatIdentifier() {
+		this(FormatEnum.values(), new DetectionLibrary[] {
+				new StreamDetectorImpl(), new DroidDetectorImpl() }, null, 1,
+				getDefaultExecutor());
+	}
+
+	/**
+	 * @param enabledFormats
+	 *            formats to detect. If null all the formats of the
+	 *            detection libraries are detected.
+	 * @param detectors
+	 *            detection libraries, shared by all the identifications:
+	 *            they must be thread safe.
+	 * @param decoders
+	 *            decoders used for recursive identification. If null
+	 *            {@link GuessInputStream#DEFAULT_DECODERS} are used.
+	 * @param identificationDepth
+	 *            see {@link GuessInputStream#setIdentificationDepth(int)}.
+	 * @param executor
+	 *            runs the identification of batches. Its number of threads
+	 *            limits the documents open at the same time.
+	 */
+	public FormatIdentifier(final FormatEnum[] enabledFormats,
+			final DetectionLibrary[] detectors, final Decoder[] decoders,
+			final int identificationDepth, final ExecutorService executor) {
+		if ((detectors == null) || (detectors.length == 0)) {
+			throw new IllegalArgumentException("no detectors");
+		}
+		if (identificationDepth < 1) {
+			throw new IllegalArgumentException(
+					"Identification depth must be >=1 but was ]["
+							+ identificationDepth + "]");
+		}
+		if (executor == null) {
+			throw new IllegalArgumentException("executor is null");
+		}
+		if (decoders == null) {
+			synchronized (GuessInputStream.DEFAULT_DECODERS) {
+				this.decoders = GuessInputStream.DEFAULT_DECODERS.values()
+						.toArray(new Decoder[0]);
+			}
+		} else {
+			this.decoders = decoders.clone();
+		}
+		this.detectors = detectors.clone();
+		this.enabledFormats = (enabledFormats == null ? null
+				: enabledFormats.clone());
+		this.identificationDepth = identificationDepth;
+		this.executor = executor;
+	}
+
+	/**
+	 * Identifies a file.
+	 *
+	 * @param file
+	 *            the file to identify.
+	 * @return the formats detected, see
+	 *         {@link GuessInputStream#getDetectedFormatsId()}.
+	 * @throws IOException
+	 *             if the file can't be read.
+	 */
+	public FormatId[] identify(final File file) throws IOException {
+		// a regular file is read again when needed, not copied.
+		return identify(new FileInputStream(file));
+	}
+
+	/**
+	 * Identifies a file. It is read through its channel when it is not
+	 * empty, see {@link GuessInputStream#getInstance(Path)}.
+	 *
+	 * @param path
+	 *            the file to identify.
+	 * @return the formats detected, see
+	 *         {@link GuessInputStream#getDetectedFormatsId()}.
+	 * @throws IOException
+	 *             if the file can't be read.
+	 */
+	public FormatId[] identify(final Path path) throws IOException {
+		return identify(GuessInputStream.getInstance(path,
+				this.enabledFormats, this.detectors, this.decoders));
+	}
+
+	/**
+	 * Identifies <code>gis</code> and closes it.
+	 */
+	private FormatId[] identify(final GuessInputStream gis)
+			throws IOException {
+		try {
+			gis.setIdentificationDepth(this.identificationDepth);
+			return gis.getDetectedFormatsId();
+		} finally {
+			gis.close();
+		}
+	}
+
+	/**
+	 * Identifies a stream in the calling thread. The stream is closed.
+	 *
+	 * @param stream
+	 *            the stream to identify.
+	 * @return the formats detected, see
+	 *         {@link GuessInputStream#getDetectedFormatsId()}.
+	 * @throws IOException
+	 *             if the stream can't be read.
+	 */
+	public FormatId[] identify(final InputStream stream) throws IOException {
+		return identify(GuessInputStream.getInstance(stream,
+				this.enabledFormats, this.detectors, this.decoders));
+	}
+
+	/**
+	 * Identifies the files in parallel. It returns when all the files have
+	 * been identified.
+	 *
+	 * @param files
+	 *            the files to identify.
+	 * @param listener
+	 *            receives the result of each file.
+	 * @throws InterruptedException
+	 *             if the calling thread is interrupted while waiting. The
+	 *             identifications already queued are cancelled.
+	 */
+	public void identifyFiles(final Collection<File> files,
+			final IdentificationListener<File> listener)
+			throws InterruptedException {
+		final Collection<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (final File file : files) {
+			tasks.add(newTask(file, new Identification() {
+				@Override
+				public FormatId[] identify() throws IOException {
+					return FormatIdentifier.this.identify(file);
+				}
+			}, listener));
+		}
+		runAll(tasks);
+	}
+
+	/**
+	 * Identifies the files in parallel. It returns when all the files have
+	 * been identified.
+	 *
+	 * @param paths
+	 *            the files to identify.
+	 * @param listener
+	 *            receives the result of each file.
+	 * @throws InterruptedException
+	 *             if the calling thread is interrupted while waiting. The
+	 *             identifications already queued are cancelled.
+	 */
+	public void identifyPaths(final Collection<Path> paths,
+			final IdentificationListener<Path> listener)
+			throws InterruptedException {
+		final Collection<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (final Path path : paths) {
+			tasks.add(newTask(path, new Identification() {
+				@Override
+				public FormatId[] identify() throws IOException {
+					return FormatIdentifier.this.identify(path);
+				}
+			}, listener));
+		}
+		runAll(tasks);
+	}
+
+	/**
+	 * Identifies the streams in parallel. It returns when all the streams
+	 * have been identified.
+	 *
+	 * @param <T>
+	 *            type of the sources.
+	 * @param sources
+	 *            the documents to identify.
+	 * @param listener
+	 *            receives the result of each source.
+	 * @throws InterruptedException
+	 *             if the calling thread is interrupted while waiting. The
+	 *             identifications already queued are cancelled.
+	 */
+	public <T extends StreamSource> void identifyStreams(
+			final Collection<T> sources,
+			final IdentificationListener<T> listener)
+			throws InterruptedException {
+		final Collection<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (final T source : sources) {
+			tasks.add(newTask(source, new Identification() {
+				@Override
+				public FormatId[] identify() throws IOException {
+					return FormatIdentifier.this.identify(source
+							.openStream());
+				}
+			}, listener));
+		}
+		runAll(tasks);
+	}
+
+	private <T> Callable<Void> newTask(final T source,
+			final Identification identification,
+			final IdentificationListener<T> listener) {
+		if (listener == null) {
+			throw new IllegalArgumentException("listener is null");
+		}
+		return new Callable<Void>() {
+			@Override
+			public Void call() {
+				FormatId[] formats = null;
+				try {
+					formats = identification.identify();
+				} catch (final IOException e) {
+					listener.failed(source, e);
+				}
+				if (formats != null) {
+					listener.identified(source, formats);
+				}
+				return null;
+			}
+		};
+	}
+
+	/**
+	 * Submits all the tasks and waits for them. Exceptions thrown by the
+	 * listener are rethrown after all the tasks completed.
+	 */
+	private void runAll(final Collection<Callable<Void>> tasks)
+			throws InterruptedException {
+		final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		for (final Callable<Void> task : tasks) {
+			futures.add(this.executor.submit(task));
+		}
+		Throwable failure = null;
+		try {
+			for (final Future<Void> future : futures) {
+				try {
+					future.get();
+				} catch (final ExecutionException e) {
+					if (failure == null) {
+						failure = e.getCause();
+					}
+				}
+			}
+		} catch (final InterruptedException e) {
+			for (final Future<Void> future : futures) {
+				future.cancel(true);
+			}
+			throw e;
+		}
+		if (failure instanceof RuntimeException) {
+			throw (RuntimeException) failure;
+		} else if (failure instanceof Error) {
+			throw (Error) failure;
+		}
+	}
+}
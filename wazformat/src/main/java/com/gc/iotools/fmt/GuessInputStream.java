@@ -4,8 +4,15 @@ package com.gc.iotools.fmt;
  * Copyright (c) 2008, 2014 Gabriele Contini. This source code is released
  * under the BSD License.
  */
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -28,7 +35,8 @@ import com.gc.iotools.fmt.decoders.Pkcs7Decoder;
 import com.gc.iotools.fmt.decoders.TSDDecoder;
 import com.gc.iotools.fmt.detect.droid.DroidDetectorImpl;
 import com.gc.iotools.fmt.detect.wzf.StreamDetectorImpl;
-import com.gc.iotools.stream.is.RandomAccessInputStream;
+import com.gc.iotools.stream.store.SeekableStore;
+import com.gc.iotools.stream.store.ThresholdStore;
 import com.gc.iotools.stream.utils.LogUtils;
 
 /**
@@ -47,6 +55,11 @@ import com.gc.iotools.stream.utils.LogUtils;
  */
 public class GuessInputStream extends InputStream {
 	public static final Map<FormatEnum, Decoder> DEFAULT_DECODERS = new HashMap<FormatEnum, Decoder>();
+	/**
+	 * Bytes of the original stream kept in memory during detection, over
+	 * this size they are kept in a temporary file.
+	 */
+	private static final int DETECTION_THRESHOLD = 64 * 1024;
 	private static final Logger LOGGER = LoggerFactory
 			.getLogger(GuessInputStream.class);
 
@@ -177,30 +190,265 @@ public class GuessInputStream extends InputStream {
 				detectionLibraries.toArray(new DetectionLibrary[0]), decoders);
 	}
 
+	/**
+	 * <p>
+	 * Constructs a new GuessInputStream on a file.
+	 * </p>
+	 * <p>
+	 * A regular file is seekable: it is read again when the detection needs
+	 * to rewind it, nothing is copied in memory or in temporary files.
+	 * Special files (pipes, devices, <code>/proc</code>) are read as any
+	 * other stream.
+	 * </p>
+	 *
+	 * @param file
+	 *            file to be identified.
+	 * @return Instance of the newly created GuessInputStream
+	 * @throws IOException
+	 *             if the file can't be opened.
+	 * @see #getInstance(Path)
+	 */
+	public static GuessInputStream getInstance(final File file)
+			throws IOException {
+		if (file == null) {
+			throw new IllegalArgumentException("Parameter file==null");
+		}
+		return getInstance(file.toPath());
+	}
+
+	/**
+	 * Constructs a new GuessInputStream on a <code>FileChannel</code>, see
+	 * {@link #getInstance(SeekableByteChannel)}.
+	 *
+	 * @param channel
+	 *            channel to be identified.
+	 * @return Instance of the newly created GuessInputStream
+	 * @throws IOException
+	 *             if the position of the channel can't be read.
+	 */
+	public static GuessInputStream getInstance(final FileChannel channel)
+			throws IOException {
+		return getInstance((SeekableByteChannel) channel);
+	}
+
+	/**
+	 * Constructs a new GuessInputStream on a <code>FileChannel</code>, see
+	 * {@link #getInstance(SeekableByteChannel, FormatEnum[], DetectionLibrary[], Decoder[])}
+	 * .
+	 *
+	 * @param channel
+	 *            channel to be identified. It is closed by {@link #close()}.
+	 * @param enabledFormats
+	 *            formats to detect, if null all the formats of the
+	 *            detectors.
+	 * @param detectors
+	 *            detection libraries.
+	 * @param decoders
+	 *            decoders used in recursive detection.
+	 * @return Instance of the newly created GuessInputStream
+	 * @throws IOException
+	 *             if the position of the channel can't be read.
+	 */
+	public static GuessInputStream getInstance(final FileChannel channel,
+			final FormatEnum[] enabledFormats,
+			final DetectionLibrary[] detectors, final Decoder[] decoders)
+			throws IOException {
+		return getInstance((SeekableByteChannel) channel, enabledFormats,
+				detectors, decoders);
+	}
+
+	/**
+	 * <p>
+	 * Constructs a new GuessInputStream on a file.
+	 * </p>
+	 * <p>
+	 * The file is opened with <code>FileChannel.open()</code>. When it is
+	 * not empty it is read again when the detection needs to rewind it,
+	 * nothing is copied in memory or in temporary files. Special files
+	 * (pipes, devices, <code>/proc</code>) have size 0 and are read as any
+	 * other stream.
+	 * </p>
+	 *
+	 * @param path
+	 *            file to be identified.
+	 * @return Instance of the newly created GuessInputStream
+	 * @throws IOException
+	 *             if the file can't be opened.
+	 */
+	public static GuessInputStream getInstance(final Path path)
+			throws IOException {
+		return getInstance(path, FormatEnum.values(),
+				new DetectionLibrary[] { new StreamDetectorImpl(),
+						new DroidDetectorImpl() }, getDefaultDecoders());
+	}
+
+	/**
+	 * Constructs a new GuessInputStream on a file allowing customization of
+	 * the formats, detectors and decoders.
+	 *
+	 * @param path
+	 *            file to be identified.
+	 * @param enabledFormats
+	 *            formats to detect, if null all the formats of the
+	 *            detectors.
+	 * @param detectors
+	 *            detection libraries.
+	 * @param decoders
+	 *            decoders used in recursive detection.
+	 * @return Instance of the newly created GuessInputStream
+	 * @throws IOException
+	 *             if the file can't be opened.
+	 * @see #getInstance(Path)
+	 */
+	public static GuessInputStream getInstance(final Path path,
+			final FormatEnum[] enabledFormats,
+			final DetectionLibrary[] detectors, final Decoder[] decoders)
+			throws IOException {
+		if (path == null) {
+			throw new IllegalArgumentException("Parameter path==null");
+		}
+		final FileChannel channel = FileChannel.open(path,
+				StandardOpenOption.READ);
+		try {
+			final GuessInputStream result;
+			if (channel.size() > 0) {
+				result = newInstance(new ResettableFileChannelAdapter(
+						channel), enabledFormats, detectors, decoders);
+			} else {
+				result = getInstance(Channels.newInputStream(channel),
+						enabledFormats, detectors, decoders);
+			}
+			return result;
+		} catch (final IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Constructs a new GuessInputStream on a <code>SeekableByteChannel</code>
+	 * , from its current position to the end of the channel. The channel is
+	 * closed by {@link #close()}.
+	 * </p>
+	 *
+	 * @param channel
+	 *            channel to be identified.
+	 * @return Instance of the newly created GuessInputStream
+	 * @throws IOException
+	 *             if the position of the channel can't be read.
+	 * @see #getInstance(Path)
+	 */
+	public static GuessInputStream getInstance(
+			final SeekableByteChannel channel) throws IOException {
+		return getInstance(channel, FormatEnum.values(),
+				new DetectionLibrary[] { new StreamDetectorImpl(),
+						new DroidDetectorImpl() }, getDefaultDecoders());
+	}
+
+	/**
+	 * Constructs a new GuessInputStream on a <code>SeekableByteChannel</code>
+	 * allowing customization of the formats, detectors and decoders.
+	 *
+	 * @param channel
+	 *            channel to be identified. It is closed by {@link #close()}.
+	 * @param enabledFormats
+	 *            formats to detect, if null all the formats of the
+	 *            detectors.
+	 * @param detectors
+	 *            detection libraries.
+	 * @param decoders
+	 *            decoders used in recursive detection.
+	 * @return Instance of the newly created GuessInputStream
+	 * @throws IOException
+	 *             if the position of the channel can't be read.
+	 * @see #getInstance(Path)
+	 */
+	public static GuessInputStream getInstance(
+			final SeekableByteChannel channel,
+			final FormatEnum[] enabledFormats,
+			final DetectionLibrary[] detectors, final Decoder[] decoders)
+			throws IOException {
+		if (channel == null) {
+			throw new IllegalArgumentException("Parameter channel==null");
+		}
+		return newInstance(new ResettableFileChannelAdapter(channel),
+				enabledFormats, detectors, decoders);
+	}
+
 	public static GuessInputStream getInstance(final InputStream stream,
 			final FormatEnum[] enabledFormats,
 			final DetectionLibrary[] detectors, final Decoder[] decoders) {
+		return getInstance(stream, enabledFormats, detectors, decoders,
+				new ThresholdStore(DETECTION_THRESHOLD));
+	}
+
+	/**
+	 * @param store
+	 *            keeps the bytes read during the detection when the stream
+	 *            can't be read again.
+	 */
+	static GuessInputStream getInstance(final InputStream stream,
+			final FormatEnum[] enabledFormats,
+			final DetectionLibrary[] detectors, final Decoder[] decoders,
+			final SeekableStore store) {
 		if (stream == null) {
 			throw new IllegalArgumentException("Parameter stream==null");
 		}
-		final FormatEnum[] effectiveFormats = getEffectiveFormats(
-				enabledFormats, detectors);
-		GuessInputStream result;
-		ResettableStreamRASAdapter ris;
+		AbstractResettableSource ris = null;
 		if (stream instanceof GuessInputStream) {
 			final GuessInputStream gis = (GuessInputStream) stream;
 			ris = gis.baseStream;
-		} else {
-			ris = new ResettableStreamRASAdapter(new RandomAccessInputStream(
-					stream));
+		} else if (stream.getClass() == FileInputStream.class) {
+			ris = getFileSource((FileInputStream) stream);
 		}
+		if (ris == null) {
+			// the adapter is the only buffering stage.
+			ris = new ResettableStreamRASAdapter(stream, -1, store);
+		}
+		return newInstance(ris, enabledFormats, detectors, decoders);
+	}
+
+	private static Decoder[] getDefaultDecoders() {
+		synchronized (DEFAULT_DECODERS) {
+			return DEFAULT_DECODERS.values().toArray(new Decoder[0]);
+		}
+	}
+
+	/**
+	 * A regular file can be read again instead of being copied. Special
+	 * files have size 0 and can't always be read by position: they are
+	 * copied as any other stream.
+	 *
+	 * @return the adapter or <code>null</code> if the stream must be copied.
+	 */
+	private static AbstractResettableSource getFileSource(
+			final FileInputStream stream) {
+		AbstractResettableSource result = null;
+		try {
+			final FileChannel channel = stream.getChannel();
+			if (channel.size() > channel.position()) {
+				result = new ResettableFileChannelAdapter(channel);
+			}
+		} catch (final IOException e) {
+			LOGGER.debug("Can't use the channel of [" + stream
+					+ "], the stream will be copied.", e);
+		}
+		return result;
+	}
+
+	private static GuessInputStream newInstance(
+			final AbstractResettableSource ris,
+			final FormatEnum[] enabledFormats,
+			final DetectionLibrary[] detectors, final Decoder[] decoders) {
+		final FormatEnum[] effectiveFormats = getEffectiveFormats(
+				enabledFormats, detectors);
 		final DetectionStrategy ds = new DetectionStrategy(detectors,
 				decoders, effectiveFormats, ris);
-		result = new GuessInputStream(effectiveFormats, ris, ds);
-		return result;
+		return new GuessInputStream(effectiveFormats, ris, ds);
 	}
 
-	private final ResettableStreamRASAdapter baseStream;
+	private final AbstractResettableSource baseStream;
 
 	private boolean decode = false;
 
@@ -213,7 +461,7 @@ public class GuessInputStream extends InputStream {
 	private InputStreamStatusEnum status = InputStreamStatusEnum.NOT_INITIALIZED;
 
 	protected GuessInputStream(final FormatEnum[] enabledFormats,
-			final ResettableStreamRASAdapter baseStream,
+			final AbstractResettableSource baseStream,
 			final DetectionStrategy decodedStream) {
 		this.enabledFormats = Collections.unmodifiableCollection(Arrays
 				.asList(enabledFormats));
@@ -275,7 +523,11 @@ public class GuessInputStream extends InputStream {
 	@Override
 	public void close() throws IOException {
 		this.status = InputStreamStatusEnum.READING_DATA;
-		this.baseStream.close();
+		try {
+			this.detectionStrategy.close();
+		} finally {
+			this.baseStream.close();
+		}
 	}
 
 	/**
@@ -437,6 +689,60 @@ public class GuessInputStream extends InputStream {
 		this.detectionStrategy.setMaxRecursion(level - 1);
 	}
 
+	/**
+	 * <p>
+	 * Run each decoder in its own thread when the content is decoded (see
+	 * {@link #decode(boolean)}). Decoders are connected by bounded buffers:
+	 * while the data is read, the following bytes are decoded in parallel
+	 * by all the layers (for instance base64, PKCS7 and gzip). Useful on
+	 * multi-core machines for big streams with several encoding layers.
+	 * Default is <code>false</code>.
+	 * </p>
+	 * <p>
+	 * It can be set only before any read() is invoked. The threads are
+	 * stopped by {@link #close()}.
+	 * </p>
+	 *
+	 * @param pipelined
+	 *            <code>true</code> to decode the layers in parallel.
+	 * @see com.gc.iotools.fmt.decoders.PipelinedCompositeDecoder
+	 */
+	public void setPipelinedDecoding(final boolean pipelined) {
+		if (InputStreamStatusEnum.READING_DATA.equals(this.status)) {
+			throw new IllegalStateException("The decoding mode can "
+					+ "be set only before any read() "
+					+ "operation has been called.");
+		}
+		this.detectionStrategy.setPipelined(pipelined);
+	}
+
+	/**
+	 * <p>
+	 * Decode each nested layer only once during recursive identification.
+	 * By default every identification step decodes again all the layers
+	 * from the beginning of the original stream: the cost grows with the
+	 * square of the identification depth. In single pass mode each layer is
+	 * decoded from the bytes of the previous layer kept in memory (up to
+	 * {@link com.gc.iotools.fmt.base.SharedPrefixInputStream#DEFAULT_MAX_PREFIX}
+	 * bytes per layer).
+	 * </p>
+	 * <p>
+	 * It can be set only before any read() is invoked.
+	 * </p>
+	 *
+	 * @param singlePass
+	 *            <code>true</code> to decode each layer once.
+	 * @see #setIdentificationDepth(int)
+	 */
+	public void setSinglePassDetection(final boolean singlePass) {
+		if (InputStreamStatusEnum.READING_DATA.equals(this.status)) {
+			throw new IllegalStateException("The detection mode can "
+					+ "be set only before any read() "
+					+ "operation has been called.");
+		}
+		this.detectionStrategy.setSinglePass(singlePass);
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
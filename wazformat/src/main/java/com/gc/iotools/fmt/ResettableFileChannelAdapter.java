@@ -0,0 +1,217 @@
+package com.gc.iotools.fmt;
+
+/*
+ * Copyright (c) 2008, 2014 Gabriele Contini. This source code is released
+ * under the BSD License.
+ */
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * <p>
+ * Adapts a <code>SeekableByteChannel</code> to a resettable stream. The
+ * channel is seekable: {@link #resetToBeginning()} and {@link #skip(long)}
+ * just move the read position, nothing is copied in memory or in temporary
+ * files. A <code>FileChannel</code> is read by position and its position is
+ * not modified, other channels are moved to the position of each read.
+ * </p>
+ * <p>
+ * The stream starts at the position the channel had when the adapter was
+ * created, and ends where the channel returns EOF. The size of the channel
+ * is only a hint: the file may grow after the adapter is created, and the
+ * size of special files (like the ones in <code>/proc</code>) is 0 even if
+ * they have content.
+ * </p>
+ *
+ * @author dvd.smnt
+ * @since 1.2.15
+ */
+public class ResettableFileChannelAdapter extends AbstractResettableSource {
+	private static final int BUFFER_SIZE = 8192;
+
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	/**
+	 * Number of valid bytes in buffer.
+	 */
+	private int bufferLength = 0;
+	/**
+	 * Position in the file of the first byte of buffer.
+	 */
+	private long bufferStart = 0;
+	private final SeekableByteChannel channel;
+	private boolean closeCalled = false;
+	private long position;
+	private final long start;
+
+	/**
+	 * @param channel
+	 *            the channel to read. It is closed by {@link #close()}.
+	 * @throws IOException
+	 *             if the position of the channel can't be read.
+	 */
+	public ResettableFileChannelAdapter(final SeekableByteChannel channel)
+			throws IOException {
+		if (channel == null) {
+			throw new IllegalArgumentException("channel is null");
+		}
+		this.channel = channel;
+		this.start = channel.position();
+		this.position = this.start;
+	}
+
+	@Override
+	public int available() throws IOException {
+		final long remaining = this.channel.size() - this.position;
+		return (int) Math.max(0, Math.min(Integer.MAX_VALUE, remaining));
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!this.closeCalled) {
+			this.closeCalled = true;
+			this.channel.close();
+		}
+	}
+
+	/**
+	 * Nothing to do: the file can always be read again.
+	 */
+	@Override
+	public void enable(final boolean enable) {
+		// no store
+	}
+
+	/**
+	 * Fills the buffer with the bytes at the current position.
+	 */
+	private void fillBuffer() throws IOException {
+		this.bufferStart = this.position;
+		this.bufferLength = readChannel(this.buffer, 0, this.buffer.length,
+				this.position);
+		if (this.bufferLength < 0) {
+			this.bufferLength = 0;
+		}
+	}
+
+	/**
+	 * The current size of the channel, <code>-1</code> when it is 0 because
+	 * it may be a special file.
+	 */
+	@Override
+	public long getLength() {
+		long result = -1;
+		try {
+			final long size = this.channel.size();
+			if (size > this.start) {
+				result = size - this.start;
+			}
+		} catch (final IOException e) {
+			// unknown.
+		}
+		return result;
+	}
+
+	@Override
+	public boolean isCloseCalled() {
+		return this.closeCalled;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public int read() throws IOException {
+		int result = -1;
+		if ((this.position < this.bufferStart)
+				|| (this.position >= this.bufferStart + this.bufferLength)) {
+			fillBuffer();
+		}
+		final int offset = (int) (this.position - this.bufferStart);
+		if (offset < this.bufferLength) {
+			result = this.buffer[offset] & 0xff;
+			this.position++;
+		}
+		return result;
+	}
+
+	@Override
+	public int read(final byte[] b, final int off, final int len)
+			throws IOException {
+		int result;
+		if (len == 0) {
+			result = 0;
+		} else if ((this.position >= this.bufferStart)
+				&& (this.position < this.bufferStart + this.bufferLength)) {
+			final int offset = (int) (this.position - this.bufferStart);
+			result = Math.min(len, this.bufferLength - offset);
+			System.arraycopy(this.buffer, offset, b, off, result);
+		} else if (len >= BUFFER_SIZE) {
+			// big reads go directly to the file.
+			result = readChannel(b, off, len, this.position);
+		} else {
+			fillBuffer();
+			result = Math.min(len, this.bufferLength);
+			System.arraycopy(this.buffer, 0, b, off, result);
+			if (result == 0) {
+				result = -1;
+			}
+		}
+		if (result > 0) {
+			this.position += result;
+		}
+		return result;
+	}
+
+	/**
+	 * Reads at <code>filePosition</code>. Returns -1 at EOF.
+	 */
+	private int readChannel(final byte[] b, final int off, final int len,
+			final long filePosition) throws IOException {
+		final ByteBuffer bb = ByteBuffer.wrap(b, off, len);
+		int n = 0;
+		if (this.channel instanceof FileChannel) {
+			// positional read, the channel position is left alone.
+			final FileChannel fileChannel = (FileChannel) this.channel;
+			while ((n == 0) && bb.hasRemaining()) {
+				n = fileChannel.read(bb, filePosition);
+			}
+		} else {
+			this.channel.position(filePosition);
+			while ((n == 0) && bb.hasRemaining()) {
+				n = this.channel.read(bb);
+			}
+		}
+		return n;
+	}
+
+	@Override
+	public void resetToBeginning() throws IOException {
+		this.position = this.start;
+	}
+
+	@Override
+	public long skip(final long n) throws IOException {
+		long result = 0;
+		if (n > 0) {
+			result = Math.min(n,
+					Math.max(0, this.channel.size() - this.position));
+			this.position += result;
+			// past the size of the channel the bytes are read to find EOF.
+			while (result < n) {
+				fillBuffer();
+				if (this.bufferLength == 0) {
+					break;
+				}
+				final int skipped = (int) Math.min(n - result,
+						this.bufferLength);
+				this.position += skipped;
+				result += skipped;
+			}
+		}
+		return result;
+	}
+}
@@ -7,21 +7,70 @@ package com.gc.iotools.fmt;
 import java.io.IOException;
 import java.io.InputStream;
 
-import com.gc.iotools.fmt.base.ResettableInputStream;
 import com.gc.iotools.stream.is.RandomAccessInputStream;
 import com.gc.iotools.stream.store.OnOffStore;
+import com.gc.iotools.stream.store.SeekableStore;
 import com.gc.iotools.stream.store.Store;
 import com.gc.iotools.stream.store.ThresholdStore;
 
-public class ResettableStreamRASAdapter extends ResettableInputStream {
+/**
+ * <p>
+ * Makes resettable a stream that can be read only once. It is the only
+ * buffering stage between the original stream and the detectors: the
+ * bytes read are copied once in a store, to be read again after
+ * {@link #resetToBeginning()}.
+ * </p>
+ * <p>
+ * Buffering is needed only during the detection. After
+ * <code>enable(false)</code> nothing new is copied in the store: the bytes
+ * already stored are read from it, then the store (and its temporary file)
+ * is released as soon as they have all been read, and the remaining bytes
+ * are read directly from the original stream.
+ * </p>
+ *
+ * @author dvd.smnt
+ * @since 1.2.0
+ */
+public class ResettableStreamRASAdapter extends AbstractResettableSource {
 	private boolean closeCalled = false;
 	// private BufferedInputStream bis;
+	private final long length;
 	private final RandomAccessInputStream ras;
 
 	public ResettableStreamRASAdapter(final InputStream source) {
-		final ThresholdStore ts = new ThresholdStore(64 * 1024);
-		final OnOffStore os = new OnOffStore(ts);
-		this.ras = new RandomAccessInputStream(source, os);
+		this(source, -1);
+	}
+
+	/**
+	 * @param source
+	 *            the stream to adapt.
+	 * @param length
+	 *            length of <code>source</code> if known in advance, -1
+	 *            otherwise.
+	 */
+	public ResettableStreamRASAdapter(final InputStream source,
+			final long length) {
+		this(source, length, new ThresholdStore(64 * 1024));
+	}
+
+	/**
+	 * @param source
+	 *            the stream to adapt.
+	 * @param length
+	 *            length of <code>source</code> if known in advance, -1
+	 *            otherwise.
+	 * @param store
+	 *            where the bytes read are kept until the buffering is
+	 *            disabled.
+	 */
+	public ResettableStreamRASAdapter(final InputStream source,
+			final long length, final SeekableStore store) {
+		if (store == null) {
+			throw new IllegalArgumentException("store is null");
+		}
+		this.length = length;
+		this.ras = new RandomAccessInputStream(source, new OnOffStore(store,
+				true));
 		// this.bis = new BufferedInputStream(ras);
 	}
 
@@ -39,15 +88,27 @@ public class ResettableStreamRASAdapter extends ResettableInputStream {
 		}
 	}
 
+	/**
+	 * Enables or disables the buffering. Once disabled and some byte has
+	 * been read from the original stream, it can't be enabled again.
+	 */
+	@Override
 	public void enable(final boolean enable) {
 		final OnOffStore store = (OnOffStore) this.ras.getStore();
 		store.enable(enable);
 	}
 
+	/** {@inheritDoc} */
+	@Override
+	public long getLength() {
+		return this.length;
+	}
+
 	public Store getStore() {
 		return this.ras.getStore();
 	}
 
+	@Override
 	public boolean isCloseCalled() {
 		return this.closeCalled;
 	}
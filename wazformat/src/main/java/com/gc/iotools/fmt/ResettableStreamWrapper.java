@@ -7,12 +7,22 @@ package com.gc.iotools.fmt;
 import java.io.IOException;
 import java.io.InputStream;
 
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CloseShieldInputStream;
+
 import com.gc.iotools.fmt.base.Decoder;
 import com.gc.iotools.fmt.base.ResettableInputStream;
 
 /**
  * Helps in mark and reset of decoded streams. Mark and reset are done on
  * baseStream. Reads are done on decodedStream.
+ * <p>
+ * The decoded stream is closed before the baseStream is reset, so decoders
+ * that read in background (see
+ * {@link com.gc.iotools.fmt.decoders.PipelinedCompositeDecoder}) stop before
+ * the baseStream is moved. Closing the decoded stream doesn't close the
+ * baseStream.
+ * </p>
  * 
  * @since 1.2.0
  * @author dvd.smnt
@@ -37,14 +47,19 @@ public class ResettableStreamWrapper extends ResettableInputStream {
 	private void checkInitialized() throws IOException {
 		if (this.decodedStream == null) {
 			this.baseStream.resetToBeginning();
-			this.decodedStream = this.decoder.decode(this.baseStream);
+			this.decodedStream = this.decoder
+					.decode(new CloseShieldInputStream(this.baseStream));
 		}
 	}
 
 	@Override
 	public void close() throws IOException {
 		// this.baseStream.close();
+		final InputStream decoded = this.decodedStream;
 		this.decodedStream = null;
+		if (decoded != null) {
+			decoded.close();
+		}
 	}
 
 	@Override
@@ -73,6 +88,8 @@ public class ResettableStreamWrapper extends ResettableInputStream {
 
 	@Override
 	public void resetToBeginning() throws IOException {
+		// errors of the decoder are reported by read(), not by the reset.
+		IOUtils.closeQuietly(this.decodedStream);
 		this.decodedStream = null;
 		this.baseStream.resetToBeginning();
 	}
@@ -5,5 +5,16 @@ import java.io.InputStream;
 
 public abstract class ResettableInputStream extends InputStream {
 
+	/**
+	 * Length of the stream when it is known in advance (file size,
+	 * Content-Length). It allows the detectors to avoid reading the whole
+	 * stream just to compute its length.
+	 *
+	 * @return the length of the stream or <code>-1</code> if unknown.
+	 */
+	public long getLength() {
+		return -1;
+	}
+
 	public abstract void resetToBeginning() throws IOException;
 }
@@ -0,0 +1,277 @@
+package com.gc.iotools.fmt.base;
+
+/*
+ * Copyright (c) 2008, 2014 Gabriele Contini. This source code is released
+ * under the BSD License.
+ */
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * <p>
+ * ResettableInputStream that keeps in memory the beginning of another
+ * ResettableInputStream. It is read once and shared by all the
+ * {@link DetectionLibrary} that identify the stream.
+ * </p>
+ * <p>
+ * The prefix grows on demand, while the stream is read, up to a maximum
+ * size. Reads and skips inside the prefix and {@link #resetToBeginning()} don't
+ * touch the underlying stream. Only reads beyond the maximum size go to the
+ * underlying stream, that is repositioned if needed.
+ * </p>
+ * <p>
+ * Detectors that only need the header of the stream can access the prefix
+ * directly with {@link #getPrefix(int)}.
+ * </p>
+ *
+ * @author dvd.smnt
+ * @since 1.2.15
+ */
+public final class SharedPrefixInputStream extends ResettableInputStream {
+
+	/**
+	 * Default maximum size of the prefix, same as the memory threshold of the
+	 * stores used by the library.
+	 */
+	public static final int DEFAULT_MAX_PREFIX = 64 * 1024;
+
+	private static final int INITIAL_SIZE = 4096;
+
+	private final int maxPrefix;
+	private long position = 0;
+	private byte[] prefix = new byte[0];
+	private int prefixLength = 0;
+	/**
+	 * <code>true</code> when the underlying stream reached EOF before
+	 * <code>maxPrefix</code>: the prefix is the whole stream.
+	 */
+	private boolean sourceEof = false;
+	/**
+	 * Position of the underlying stream.
+	 */
+	private long sourcePosition = 0;
+	private final ResettableInputStream source;
+
+	public SharedPrefixInputStream(final ResettableInputStream source) {
+		this(source, DEFAULT_MAX_PREFIX);
+	}
+
+	/**
+	 * @param source
+	 *            the stream to share. It must be at its beginning.
+	 * @param maxPrefix
+	 *            maximum number of bytes kept in memory.
+	 */
+	public SharedPrefixInputStream(final ResettableInputStream source,
+			final int maxPrefix) {
+		if (source == null) {
+			throw new IllegalArgumentException("source is null");
+		}
+		if (maxPrefix < 0) {
+			throw new IllegalArgumentException("maxPrefix [" + maxPrefix
+					+ "] must be positive");
+		}
+		this.source = source;
+		this.maxPrefix = maxPrefix;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return (this.position < this.prefixLength ? (int) (this.prefixLength - this.position)
+				: 0);
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.source.close();
+	}
+
+	/**
+	 * Reads the underlying stream until the prefix is <code>length</code>
+	 * bytes long or EOF is reached.
+	 */
+	private void fillPrefix(final int length) throws IOException {
+		final int target = Math.min(length, this.maxPrefix);
+		if ((target > this.prefixLength) && !this.sourceEof) {
+			if (target > this.prefix.length) {
+				final int newSize = Math.min(this.maxPrefix, Math.max(target,
+						Math.max(INITIAL_SIZE, this.prefix.length * 2)));
+				final byte[] newPrefix = new byte[newSize];
+				System.arraycopy(this.prefix, 0, newPrefix, 0,
+						this.prefixLength);
+				this.prefix = newPrefix;
+			}
+			seekSource(this.prefixLength);
+			while ((this.prefixLength < target) && !this.sourceEof) {
+				// blocks of INITIAL_SIZE: don't read more than needed from
+				// an expensive (decoded) source.
+				final int n = this.source.read(this.prefix, this.prefixLength,
+						Math.min(this.prefix.length - this.prefixLength, Math
+								.max(target - this.prefixLength, INITIAL_SIZE)));
+				if (n < 0) {
+					this.sourceEof = true;
+				} else {
+					this.prefixLength += n;
+					this.sourcePosition += n;
+				}
+			}
+		}
+	}
+
+	@Override
+	public long getLength() {
+		return (this.sourceEof ? this.prefixLength : this.source.getLength());
+	}
+
+	/**
+	 * <p>
+	 * Returns the first <code>length</code> bytes of the stream, or the whole
+	 * stream if it is shorter. The position of the stream is not changed.
+	 * </p>
+	 * <p>
+	 * The bytes are between <code>arrayOffset()</code> and
+	 * <code>arrayOffset() + limit()</code> of the backing array, that is
+	 * shared: it must not be modified. The content of the returned buffer
+	 * never changes.
+	 * </p>
+	 *
+	 * @param length
+	 *            number of bytes requested. It is capped to the maximum size
+	 *            of the prefix.
+	 * @return a buffer on the first bytes of the stream.
+	 * @throws IOException
+	 *             if the underlying stream can't be read.
+	 */
+	public ByteBuffer getPrefix(final int length) throws IOException {
+		fillPrefix(length);
+		return ByteBuffer.wrap(this.prefix, 0,
+				Math.min(Math.max(length, 0), this.prefixLength));
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public int read() throws IOException {
+		int result;
+		if (this.position < this.prefixLength) {
+			result = this.prefix[(int) this.position++] & 0xff;
+		} else {
+			final byte[] b = new byte[1];
+			final int n = read(b, 0, 1);
+			result = (n > 0 ? b[0] & 0xff : -1);
+		}
+		return result;
+	}
+
+	@Override
+	public int read(final byte[] b) throws IOException {
+		return read(b, 0, b.length);
+	}
+
+	@Override
+	public int read(final byte[] b, final int off, final int len)
+			throws IOException {
+		int result;
+		if (len == 0) {
+			result = 0;
+		} else {
+			if (this.position < this.maxPrefix) {
+				fillPrefix((int) Math.min(this.maxPrefix, this.position + len));
+			}
+			if (this.position < this.prefixLength) {
+				result = (int) Math.min(len, this.prefixLength - this.position);
+				System.arraycopy(this.prefix, (int) this.position, b, off,
+						result);
+			} else if (this.sourceEof) {
+				result = -1;
+			} else {
+				seekSource(this.position);
+				result = this.source.read(b, off, len);
+				if (result > 0) {
+					this.sourcePosition += result;
+				}
+			}
+			if (result > 0) {
+				this.position += result;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Moves the underlying stream to its beginning, the position of this
+	 * stream doesn't change. It must be used instead of resetting the
+	 * underlying stream directly, that would leave this stream out of sync.
+	 *
+	 * @throws IOException
+	 *             if the underlying stream can't be reset.
+	 */
+	public void resetSource() throws IOException {
+		this.source.resetToBeginning();
+		this.sourcePosition = 0;
+	}
+
+	@Override
+	public void resetToBeginning() throws IOException {
+		this.position = 0;
+	}
+
+	/**
+	 * Moves the underlying stream to <code>newPosition</code>.
+	 */
+	private void seekSource(final long newPosition) throws IOException {
+		if (newPosition < this.sourcePosition) {
+			this.source.resetToBeginning();
+			this.sourcePosition = 0;
+		}
+		while (this.sourcePosition < newPosition) {
+			final long n = this.source.skip(newPosition - this.sourcePosition);
+			if (n > 0) {
+				this.sourcePosition += n;
+			} else if (this.source.read() >= 0) {
+				this.sourcePosition++;
+			} else {
+				throw new IOException("Can't seek to position [" + newPosition
+						+ "], EOF at [" + this.sourcePosition + "]");
+			}
+		}
+	}
+
+	@Override
+	public long skip(final long n) throws IOException {
+		long result = 0;
+		if (n > 0) {
+			if (this.position < this.maxPrefix) {
+				fillPrefix((int) Math.min(this.maxPrefix, this.position + n));
+			}
+			if ((this.position + n <= this.prefixLength) || this.sourceEof) {
+				result = Math.min(n, Math.max(0, this.prefixLength
+						- this.position));
+			} else {
+				// beyond the prefix: the underlying stream tells the length.
+				final long start = Math.max(this.position, this.prefixLength);
+				seekSource(start);
+				long skipped = 0;
+				boolean eof = false;
+				while ((start + skipped < this.position + n) && !eof) {
+					final long s = this.source.skip(this.position + n - start
+							- skipped);
+					if (s > 0) {
+						skipped += s;
+					} else if (this.source.read() >= 0) {
+						skipped++;
+					} else {
+						eof = true;
+					}
+				}
+				this.sourcePosition += skipped;
+				result = start + skipped - this.position;
+			}
+			this.position += result;
+		}
+		return result;
+	}
+}
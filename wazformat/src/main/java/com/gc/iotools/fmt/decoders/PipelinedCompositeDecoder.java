@@ -0,0 +1,192 @@
+package com.gc.iotools.fmt.decoders;
+
+/*
+ * Copyright (c) 2008, 2014 Gabriele Contini. This source code is released
+ * under the BSD License.
+ */
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CloseShieldInputStream;
+
+import com.gc.iotools.fmt.base.Decoder;
+import com.gc.iotools.fmt.base.FormatEnum;
+import com.gc.iotools.stream.base.ExecutionModel;
+import com.gc.iotools.stream.base.ExecutorServiceFactory;
+import com.gc.iotools.stream.is.InputStreamFromOutputStream;
+
+/**
+ * <p>
+ * Composes multiple decoders like {@link CompositeDecoder}, but each decoder
+ * runs in its own thread. Stages are connected by bounded buffers: while the
+ * caller reads the output of the last decoder, the previous ones are already
+ * decoding the following bytes, so that for instance base64 decoding, PKCS7
+ * parsing and inflating overlap on different cores.
+ * </p>
+ * <p>
+ * Closing the returned stream stops all the stages and waits for their
+ * threads to finish. The <code>InputStream</code> passed to
+ * {@link #decode(InputStream)} is not closed: it can be reset and decoded
+ * again once the returned stream has been closed. It is intended for
+ * internal use only.
+ * </p>
+ *
+ * @author dvd.smnt
+ * @since 1.2.15
+ * @see CompositeDecoder
+ */
+public class PipelinedCompositeDecoder implements Decoder {
+
+	/**
+	 * Output of a decoder, copied to a bounded buffer by another thread.
+	 * When the reader closes the stage, the copy stops and the decoder (and
+	 * the previous stages) are closed.
+	 */
+	private static final class DecoderStage extends
+			InputStreamFromOutputStream<Void> {
+		private final InputStream source;
+
+		DecoderStage(final InputStream source,
+				final ExecutorService executor, final int bufferSize) {
+			super(true, executor, bufferSize);
+			this.source = source;
+		}
+
+		@Override
+		protected Void produce(final OutputStream sink) throws Exception {
+			final byte[] buffer = new byte[COPY_BUFFER_SIZE];
+			try {
+				boolean readerClosed = false;
+				int n;
+				while (!readerClosed && ((n = this.source.read(buffer)) >= 0)) {
+					try {
+						sink.write(buffer, 0, n);
+					} catch (final IOException e) {
+						// the stage was closed: the rest is not needed.
+						readerClosed = true;
+					}
+				}
+			} finally {
+				IOUtils.closeQuietly(this.source);
+			}
+			return null;
+		}
+	}
+
+	private static final int COPY_BUFFER_SIZE = 8192;
+
+	/**
+	 * Default size of the buffer between two stages.
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	private final int bufferSize;
+
+	private final Decoder[] decoders;
+
+	/**
+	 * Used when the executor is not given: some models (for instance
+	 * THREAD_PER_INSTANCE) return a new executor for each stage.
+	 */
+	private final ExecutionModel executionModel;
+
+	private final ExecutorService executor;
+
+	/**
+	 * Creates a pipeline running each stage in a virtual thread, with the
+	 * default buffer size.
+	 *
+	 * @param decoders
+	 *            decoders to apply, in order.
+	 * @see ExecutionModel#VIRTUAL_THREAD
+	 */
+	public PipelinedCompositeDecoder(final Decoder[] decoders) {
+		this(decoders, ExecutionModel.VIRTUAL_THREAD, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * @param decoders
+	 *            decoders to apply, in order.
+	 * @param executionModel
+	 *            how the threads of the stages are allocated.
+	 * @param bufferSize
+	 *            size in bytes of the buffer between two stages.
+	 */
+	public PipelinedCompositeDecoder(final Decoder[] decoders,
+			final ExecutionModel executionModel, final int bufferSize) {
+		this(decoders, executionModel, null, bufferSize);
+		if (executionModel == null) {
+			throw new IllegalArgumentException("executionModel is null");
+		}
+	}
+
+	/**
+	 * @param decoders
+	 *            decoders to apply, in order.
+	 * @param executor
+	 *            executes the stages. It must be able to run all the stages
+	 *            concurrently.
+	 * @param bufferSize
+	 *            size in bytes of the buffer between two stages.
+	 */
+	public PipelinedCompositeDecoder(final Decoder[] decoders,
+			final ExecutorService executor, final int bufferSize) {
+		this(decoders, null, executor, bufferSize);
+		if (executor == null) {
+			throw new IllegalArgumentException("executor is null");
+		}
+	}
+
+	private PipelinedCompositeDecoder(final Decoder[] decoders,
+			final ExecutionModel executionModel,
+			final ExecutorService executor, final int bufferSize) {
+		if (decoders == null) {
+			throw new IllegalArgumentException("decoders array is null");
+		}
+		if (bufferSize <= 0) {
+			throw new IllegalArgumentException("bufferSize [" + bufferSize
+					+ "] must be positive");
+		}
+		this.decoders = decoders;
+		this.executionModel = executionModel;
+		this.executor = executor;
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The headers of each layer are parsed in the calling thread, the
+	 * content is decoded in the background.
+	 * </p>
+	 */
+	@Override
+	public InputStream decode(final InputStream inStream) throws IOException {
+		InputStream curStream = new CloseShieldInputStream(inStream);
+		try {
+			for (final Decoder decoder : this.decoders) {
+				curStream = new DecoderStage(decoder.decode(curStream),
+						getExecutor(), this.bufferSize);
+			}
+		} catch (final IOException e) {
+			// stops the stages already started.
+			IOUtils.closeQuietly(curStream);
+			throw e;
+		}
+		return curStream;
+	}
+
+	private ExecutorService getExecutor() {
+		return (this.executor != null ? this.executor
+				: ExecutorServiceFactory.getExecutor(this.executionModel));
+	}
+
+	@Override
+	public FormatEnum getFormat() {
+		throw new UnsupportedOperationException("Shouldn't be called");
+	}
+
+}
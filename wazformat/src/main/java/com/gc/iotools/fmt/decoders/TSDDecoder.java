@@ -4,37 +4,114 @@ import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
-import org.apache.commons.io.IOUtils;
-import org.bouncycastle.asn1.cms.TimeStampedData;
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.ASN1OctetStringParser;
+import org.bouncycastle.asn1.ASN1SequenceParser;
+import org.bouncycastle.asn1.ASN1StreamParser;
+import org.bouncycastle.asn1.ASN1TaggedObjectParser;
+import org.bouncycastle.asn1.BERTags;
+import org.bouncycastle.asn1.InMemoryRepresentable;
+import org.bouncycastle.asn1.cms.CMSObjectIdentifiers;
 
 import com.gc.iotools.fmt.base.Decoder;
 import com.gc.iotools.fmt.base.FormatEnum;
 
 /**
+ * <p>
  * Decoder for TSD (TimeStampedData) documents.
- * 
+ * </p>
+ * <p>
+ * The ASN.1 structure is parsed while it is read: the content octets are
+ * returned as a stream, without loading the document in memory. Both a
+ * TimeStampedData wrapped in a ContentInfo (RFC 5544) and a bare
+ * TimeStampedData are accepted. The temporal evidence that follows the
+ * content is not verified.
+ * </p>
+ *
  * @author gboccardo Jan 4, 2013
  * @see Decoder
  */
 public class TSDDecoder implements Decoder {
 
+	private static IOException parseException(final String message,
+			final Throwable cause) {
+		final IOException e1 = new IOException("Error parsing TSD content: "
+				+ message);
+		if (cause != null) {
+			e1.initCause(cause);
+		}
+		return e1;
+	}
+
+	/**
+	 * Reads the fields of a TimeStampedData sequence up to the content.
+	 * <code>version</code> is the first field, already read.
+	 */
+	private static InputStream readContent(final ASN1SequenceParser tsd,
+			final ASN1Encodable version) throws IOException {
+		if (!(version instanceof ASN1Integer)) {
+			throw parseException("expected version got [" + version + "]",
+					null);
+		}
+		InputStream result = null;
+		ASN1Encodable field = tsd.readObject();
+		while ((result == null) && (field != null)) {
+			if (field instanceof ASN1OctetStringParser) {
+				result = ((ASN1OctetStringParser) field).getOctetStream();
+			} else {
+				// dataUri or metaData: consumed to move to the next field.
+				if (field instanceof InMemoryRepresentable) {
+					((InMemoryRepresentable) field).getLoadedObject();
+				}
+				field = tsd.readObject();
+			}
+		}
+		if (result == null) {
+			throw parseException("content is detached", null);
+		}
+		return result;
+	}
+
 	@Override
 	public InputStream decode(final InputStream tsdIS) throws IOException {
-		TimeStampedData tsdParser;
+		InputStream content;
 		try {
-			// TODO: the document is read completely in memory. Make a stream
-			// detection instead
-			final byte[] byteArray = IOUtils.toByteArray(tsdIS);
-			tsdParser = TimeStampedData.getInstance(byteArray);
-		} catch (final IOException e) {
-			final IOException e1 = new IOException(
-					"Error parsing TSD content");
-			e1.initCause(e);
-			throw e1;
+			final ASN1StreamParser parser = new ASN1StreamParser(tsdIS);
+			final ASN1Encodable root = parser.readObject();
+			if (!(root instanceof ASN1SequenceParser)) {
+				throw parseException("expected SEQUENCE got [" + root + "]",
+						null);
+			}
+			ASN1SequenceParser tsd = (ASN1SequenceParser) root;
+			ASN1Encodable first = tsd.readObject();
+			if (first instanceof ASN1ObjectIdentifier) {
+				// ContentInfo
+				if (!CMSObjectIdentifiers.timestampedData.equals(first)) {
+					throw parseException("expected oid timestampedData["
+							+ CMSObjectIdentifiers.timestampedData + "] got["
+							+ first + "]", null);
+				}
+				final ASN1Encodable tagged = tsd.readObject();
+				if (!(tagged instanceof ASN1TaggedObjectParser)) {
+					throw parseException("expected [0] content got ["
+							+ tagged + "]", null);
+				}
+				tsd = (ASN1SequenceParser) ((ASN1TaggedObjectParser) tagged)
+						.getObjectParser(
+						BERTags.SEQUENCE, true);
+				first = tsd.readObject();
+			}
+			content = readContent(tsd, first);
+		} catch (final ClassCastException e) {
+			throw parseException("unexpected ASN.1 structure", e);
+		} catch (final IllegalStateException e) {
+			throw parseException(e.getMessage(), e);
+		} catch (final IllegalArgumentException e) {
+			throw parseException(e.getMessage(), e);
 		}
-
-		return new BufferedInputStream(tsdParser.getContent()
-				.getOctetStream());
+		return new BufferedInputStream(content);
 	}
 
 	@Override
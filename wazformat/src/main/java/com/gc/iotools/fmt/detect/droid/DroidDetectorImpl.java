@@ -11,8 +11,13 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
@@ -49,12 +54,25 @@ public class DroidDetectorImpl implements DetectionLibrary {
 	private static final String SIGNATURE_FILE_NS = "http://www.nationalarchives.gov.uk/pronom/SignatureFile";
 	private static final String SIGNATURE_FILE = "DROID_SignatureFile_V18.xml";
 	private static final String MAPPING_FILE = "mapping.properties";
+	/**
+	 * Maximum number of signature files reduced to the enabled formats kept
+	 * in memory.
+	 */
+	private static final int MAX_REDUCED_SIGNATURES = 32;
 
 	private final Class<? extends FormatEnum> formatEnumClass;
-	private static final Map<String, FFSignatureFile> CONF_MAP = new HashMap<String, FFSignatureFile>();
+	private static final ConcurrentMap<String, FFSignatureFile> CONF_MAP = new ConcurrentHashMap<String, FFSignatureFile>();
+	private static final ConcurrentMap<String, Properties> MAPPING_MAP = new ConcurrentHashMap<String, Properties>();
+	/**
+	 * Signature files reduced to a set of enabled formats. The enabled
+	 * formats seldom change in an application, so the reduction is done
+	 * once and not on every detection.
+	 */
+	private static final ConcurrentMap<List<Object>, FFSignatureFile> REDUCED_MAP = new ConcurrentHashMap<List<Object>, FFSignatureFile>();
 	private final String configFile;
 
 	private final Properties mapping;
+	private final String mappingFile;
 	private static final Logger LOG = LoggerFactory
 			.getLogger(DroidDetectorImpl.class);
 
@@ -90,18 +108,32 @@ public class DroidDetectorImpl implements DetectionLibrary {
 						e);
 			}
 			final FFSignatureFile fsigfile = parseSigFile(confFile);
-			CONF_MAP.put(this.configFile, fsigfile);
+			CONF_MAP.putIfAbsent(this.configFile, fsigfile);
 		}
-		this.mapping = new Properties();
-		try {
-			final InputStream mappingIs = DroidDetectorImpl.class
-					.getResourceAsStream(mappingFileStr);
-			this.mapping.load(mappingIs);
-			mappingIs.close();
-		} catch (final IOException e) {
-			throw new IllegalArgumentException("can't load resource["
-					+ mappingFileStr + "]", e);
+		this.mappingFile = mappingFileStr;
+		this.mapping = loadMapping(mappingFileStr);
+	}
+
+	private static Properties loadMapping(final String mappingFileStr) {
+		Properties result = MAPPING_MAP.get(mappingFileStr);
+		if (result == null) {
+			result = new Properties();
+			try {
+				final InputStream mappingIs = DroidDetectorImpl.class
+						.getResourceAsStream(mappingFileStr);
+				result.load(mappingIs);
+				mappingIs.close();
+			} catch (final IOException e) {
+				throw new IllegalArgumentException("can't load resource["
+						+ mappingFileStr + "]", e);
+			}
+			final Properties previous = MAPPING_MAP.putIfAbsent(
+					mappingFileStr, result);
+			if (previous != null) {
+				result = previous;
+			}
 		}
+		return result;
 	}
 
 	/**
@@ -116,12 +148,11 @@ public class DroidDetectorImpl implements DetectionLibrary {
 //		fos.close();
 		// System.out.println("Data written to [" + file.getName() + "]");
 		stream.resetToBeginning();
-		final ByteReader testFile = new RandomAccessByteReader(idFile, stream);
+		final ByteReader testFile = new RandomAccessByteReader(idFile, stream,
+				stream.getLength());
 //		FileByteReader testFile = new FileByteReader(new IdentificationFile(
 //				file.getAbsolutePath()), true, file.getAbsolutePath());
-		final FFSignatureFile fsigfile = CONF_MAP.get(this.configFile);
-		FFSignatureFile reduced = reduceDetectedSequences(fsigfile,
-				enabledFormats);
+		final FFSignatureFile reduced = getReducedSignatures(enabledFormats);
 		reduced.runFileIdentification(testFile);
 		final int n = testFile.getNumHits();
 		FormatId fenumId = new FormatId(FormatEnum.UNKNOWN, null);
@@ -147,6 +178,36 @@ public class DroidDetectorImpl implements DetectionLibrary {
 		return fenumId;
 	}
 
+	/**
+	 * Returns the signature file reduced to the <code>enabled</code> formats.
+	 * It is computed on first use and then kept in {@link #REDUCED_MAP}.
+	 */
+	private FFSignatureFile getReducedSignatures(final FormatEnum[] enabled) {
+		final List<Object> key = Arrays.<Object> asList(this.configFile,
+				this.mappingFile, this.formatEnumClass,
+				new HashSet<FormatEnum>(Arrays.asList(enabled)));
+		FFSignatureFile result = REDUCED_MAP.get(key);
+		if (result == null) {
+			result = reduceDetectedSequences(CONF_MAP.get(this.configFile),
+					enabled);
+			if (REDUCED_MAP.size() >= MAX_REDUCED_SIGNATURES) {
+				// enabled formats change often: make room for the new set.
+				final Iterator<List<Object>> keys = REDUCED_MAP.keySet()
+						.iterator();
+				if (keys.hasNext()) {
+					keys.next();
+					keys.remove();
+				}
+			}
+			final FFSignatureFile previous = REDUCED_MAP.putIfAbsent(key,
+					result);
+			if (previous != null) {
+				result = previous;
+			}
+		}
+		return result;
+	}
+
 	private FFSignatureFile reduceDetectedSequences(FFSignatureFile fsig,
 			FormatEnum[] enabled) {
 		Collection<FileFormat> fformats = new ArrayList<FileFormat>();
@@ -0,0 +1,109 @@
+package com.gc.iotools.fmt.detect.wzf;
+
+/*
+ * Copyright (c) 2008, 2014 Gabriele Contini.
+ * This source code is released under the BSD License.
+ */
+import org.apache.commons.lang3.StringUtils;
+
+import com.gc.iotools.fmt.base.FormatId;
+
+/**
+ * <p>
+ * Detects base64 encoded data checking the bytes in one pass, with a table
+ * that gives the class of each byte: base64 alphabet, padding, white space
+ * or invalid.
+ * </p>
+ * <p>
+ * White spaces and line breaks are allowed anywhere. The padding, at most
+ * two '=', can only be followed by white spaces and must complete the last
+ * group of four characters. The parameter is the number of bytes checked
+ * (default 200).
+ * </p>
+ *
+ * @author dvd.smnt
+ * @since 1.2.15
+ */
+class Base64DetectorModule implements DefiniteLengthModule {
+	private static final byte ALPHABET = 0;
+
+	private static final byte[] CLASSES = new byte[256];
+
+	private static final int DEFAULT_SAMPLE_SIZE = 200;
+
+	private static final byte INVALID = 3;
+
+	private static final int MAX_PADDING = 2;
+
+	private static final byte PADDING = 1;
+
+	private static final byte SPACE = 2;
+
+	static {
+		for (int i = 0; i < CLASSES.length; i++) {
+			final boolean alphabet = ((i >= 'A') && (i <= 'Z'))
+					|| ((i >= 'a') && (i <= 'z'))
+					|| ((i >= '0') && (i <= '9')) || (i == '+') || (i == '/');
+			CLASSES[i] = (alphabet ? ALPHABET : INVALID);
+		}
+		CLASSES['='] = PADDING;
+		// the same as \p{Space}
+		final byte[] spaces = new byte[] { ' ', '\t', '\n', 0x0b, '\f', '\r' };
+		for (final byte space : spaces) {
+			CLASSES[space] = SPACE;
+		}
+	}
+
+	private FormatId detectedFormat = null;
+
+	private int detectLength = DEFAULT_SAMPLE_SIZE;
+
+	public boolean detect(final byte[] readBytes) {
+		boolean result = true;
+		int characters = 0;
+		int padding = 0;
+		boolean end = false;
+		for (int i = 0; result && (i < readBytes.length); i++) {
+			switch (CLASSES[readBytes[i] & 0xff]) {
+			case ALPHABET:
+				result = (padding == 0);
+				characters++;
+				break;
+			case PADDING:
+				result = !end && (padding < MAX_PADDING);
+				padding++;
+				break;
+			case SPACE:
+				end = (padding > 0);
+				break;
+			default:
+				result = false;
+			}
+		}
+		if (padding > 0) {
+			result &= ((characters + padding) % 4 == 0);
+		}
+		return result;
+	}
+
+	public FormatId getDetectedFormat() {
+		return this.detectedFormat;
+	}
+
+	public int getDetectLength() {
+		return this.detectLength;
+	}
+
+	public void init(final FormatId fenum, final String param) {
+		if (StringUtils.isNotBlank(param)) {
+			this.detectLength = Integer.parseInt(param.trim());
+		}
+		this.detectedFormat = fenum;
+	}
+
+	@Override
+	public String toString() {
+		return "Base64Module [" + this.detectedFormat + "] len["
+				+ this.detectLength + "]";
+	}
+}
@@ -113,6 +113,9 @@ public class DefiniteModuleFactory {
 				+ method.length() + 2);
 		DefiniteLengthModule result;
 		switch (selectedMode) {
+		case BASE64:
+			result = new Base64DetectorModule();
+			break;
 		case REGEXP:
 			result = new RegexpDetectorModule();
 			break;
@@ -28,6 +28,10 @@ package com.gc.iotools.fmt.detect.wzf;
  */
 
 enum DetectMode {
+	/**
+	 * Base64 encoded data, see {@link Base64DetectorModule}.
+	 */
+	BASE64,
 	/**
 	 * A custom class is made for detection
 	 */
@@ -6,19 +6,32 @@ package com.gc.iotools.fmt.detect.wzf;
  */
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
-import java.util.List;
 
 import com.gc.iotools.fmt.base.DetectionLibrary;
 import com.gc.iotools.fmt.base.FormatEnum;
 import com.gc.iotools.fmt.base.FormatId;
 import com.gc.iotools.fmt.base.ResettableInputStream;
+import com.gc.iotools.fmt.base.SharedPrefixInputStream;
 
 public final class StreamDetectorImpl implements DetectionLibrary {
 
+	/**
+	 * Modules enabled for an array of formats.
+	 */
+	private static final class Selection {
+		private final FormatEnum[] formats;
+		private final int[] modules;
+
+		Selection(final FormatEnum[] formats, final int[] modules) {
+			this.formats = formats;
+			this.modules = modules;
+		}
+	}
+
 	private static byte[] readBytesAndReset(final InputStream input,
 			final int size) throws IOException {
 		final byte[] buffer = new byte[size];
@@ -40,6 +53,14 @@ public final class StreamDetectorImpl implements DetectionLibrary {
 
 	private final DefiniteLengthModule[] configuredModules;
 
+	private final StringModuleIndex index;
+
+	/**
+	 * Last computed selection: detectors are usually called many times
+	 * with the same formats.
+	 */
+	private volatile Selection lastSelection;
+
 	public StreamDetectorImpl() {
 		this("deflen.properties", FormatEnum.class);
 	}
@@ -48,18 +69,30 @@ public final class StreamDetectorImpl implements DetectionLibrary {
 		final DefiniteModuleFactory dfmf = new DefiniteModuleFactory(
 				confFile, enumclass);
 		this.configuredModules = dfmf.getConfiguredModules();
+		this.index = new StringModuleIndex(this.configuredModules);
 	}
 
 	public StreamDetectorImpl(DefiniteLengthModule[] configuredModules) {
 		this.configuredModules = configuredModules;
+		this.index = new StringModuleIndex(this.configuredModules);
 	}
 
 	public FormatId detect(final FormatEnum[] enabledFormats,
 			final ResettableInputStream stream) throws IOException {
-		final DefiniteLengthModule[] modules = getModulesForFormats(enabledFormats);
-		final int len = getDetectLength(enabledFormats);
-		final byte[] bytes = readBytesAndReset(stream, len);
-		return detectFormat(bytes, modules);
+		final int[] modules = getModulesForFormats(enabledFormats);
+		final int len = getDetectLength(modules);
+		final FormatId result;
+		if (stream instanceof SharedPrefixInputStream) {
+			// header shared with the other detectors: no copy.
+			final ByteBuffer prefix = ((SharedPrefixInputStream) stream)
+					.getPrefix(len);
+			result = detectFormat(prefix.array(), prefix.arrayOffset(),
+					prefix.limit(), modules);
+		} else {
+			final byte[] bytes = readBytesAndReset(stream, len);
+			result = detectFormat(bytes, 0, bytes.length, modules);
+		}
+		return result;
 	}
 
 	public FormatEnum[] getDetectedFormats() {
@@ -72,21 +105,31 @@ public final class StreamDetectorImpl implements DetectionLibrary {
 	}
 
 	public int getDetectLength(final FormatEnum[] enabledFormats) {
-		final DefiniteLengthModule[] modules = getModulesForFormats(enabledFormats);
+		return getDetectLength(getModulesForFormats(enabledFormats));
+	}
+
+	private int getDetectLength(final int[] modules) {
 		int detectLen = -1;
-		for (final DefiniteLengthModule module : modules) {
-			detectLen = Math.max(detectLen, module.getDetectLength());
+		for (final int module : modules) {
+			detectLen = Math.max(detectLen,
+					this.configuredModules[module].getDetectLength());
 		}
 		return detectLen;
 	}
 
-	private FormatId detectFormat(final byte[] bytes,
-			final DefiniteLengthModule[] modules) {
+	/**
+	 * The string modules are evaluated together by the index, the others
+	 * one by one. The first module that matches, in configuration order,
+	 * gives the format.
+	 */
+	private FormatId detectFormat(final byte[] bytes, final int offset,
+			final int length, final int[] modules) {
 		FormatId detected = new FormatId(FormatEnum.UNKNOWN, null);
-		if (bytes.length > 0) {
+		if (length > 0) {
+			byte[] indexed = null;
 			for (int i = 0; (i < modules.length)
 					&& FormatEnum.UNKNOWN.equals(detected.format); i++) {
-				final DefiniteLengthModule module = modules[i];
+				final DefiniteLengthModule module = this.configuredModules[modules[i]];
 				final int detectLenght = module.getDetectLength();
 				if (detectLenght <= 0) {
 					throw new IllegalStateException("Module ["
@@ -94,26 +137,47 @@ public final class StreamDetectorImpl implements DetectionLibrary {
 							+ "] request a detect size of [" + detectLenght
 							+ "]");
 				}
-				final int bytesToCopy = Math.min(detectLenght, bytes.length);
-				final byte[] splittedBytes = new byte[bytesToCopy];
-				System.arraycopy(bytes, 0, splittedBytes, 0, bytesToCopy);
-				final boolean success = module.detect(splittedBytes);
+				if ((indexed == null) && this.index.isIndexed(modules[i])) {
+					indexed = this.index.match(bytes, offset, length);
+				}
+				final boolean success;
+				if ((indexed != null)
+						&& (indexed[modules[i]] != StringModuleIndex.UNKNOWN)) {
+					success = (indexed[modules[i]] == StringModuleIndex.MATCH);
+				} else {
+					final int bytesToCopy = Math.min(detectLenght, length);
+					final byte[] splittedBytes = new byte[bytesToCopy];
+					System.arraycopy(bytes, offset, splittedBytes, 0,
+							bytesToCopy);
+					success = module.detect(splittedBytes);
+				}
 				detected = (success ? module.getDetectedFormat() : detected);
 			}
 		}
 		return detected;
 	}
 
-	private DefiniteLengthModule[] getModulesForFormats(
-			final FormatEnum[] requestedFormats) {
-		final Collection<DefiniteLengthModule> modules = new ArrayList<DefiniteLengthModule>();
-		final List<FormatEnum> reqFormatList = Arrays
-				.asList(requestedFormats);
-		for (final DefiniteLengthModule module : this.configuredModules) {
-			if (reqFormatList.contains(module.getDetectedFormat().format)) {
-				modules.add(module);
+	/**
+	 * Returns the indexes of the modules that detect the requested formats,
+	 * in configuration order.
+	 */
+	private int[] getModulesForFormats(final FormatEnum[] requestedFormats) {
+		final Selection last = this.lastSelection;
+		if ((last != null) && Arrays.equals(last.formats, requestedFormats)) {
+			return last.modules;
+		}
+		final Collection<FormatEnum> reqFormats = new HashSet<FormatEnum>(
+				Arrays.asList(requestedFormats));
+		final int[] modules = new int[this.configuredModules.length];
+		int count = 0;
+		for (int i = 0; i < this.configuredModules.length; i++) {
+			if (reqFormats.contains(this.configuredModules[i]
+					.getDetectedFormat().format)) {
+				modules[count++] = i;
 			}
 		}
-		return modules.toArray(new DefiniteLengthModule[modules.size()]);
+		final int[] result = Arrays.copyOf(modules, count);
+		this.lastSelection = new Selection(requestedFormats.clone(), result);
+		return result;
 	}
 }
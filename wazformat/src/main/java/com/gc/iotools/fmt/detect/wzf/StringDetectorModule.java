@@ -25,6 +25,13 @@ public class StringDetectorModule implements DefiniteLengthModule {
 		return result;
 	}
 
+	/**
+	 * Returns the searched bytes, not a copy.
+	 */
+	byte[] getByteSequence() {
+		return this.byteSequence;
+	}
+
 	public FormatId getDetectedFormat() {
 		if (this.detectedFormat == null) {
 			throw new IllegalStateException(
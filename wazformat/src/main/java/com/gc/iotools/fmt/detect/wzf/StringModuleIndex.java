@@ -0,0 +1,215 @@
+package com.gc.iotools.fmt.detect.wzf;
+
+/*
+ * Copyright (c) 2008, 2014 Gabriele Contini.
+ * This source code is released under the BSD License.
+ */
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Evaluates all the {@link StringDetectorModule}s and
+ * {@link StringncDetectorModule}s of a configuration in one pass over the
+ * header of the stream.
+ * </p>
+ * <p>
+ * The strings are compiled, when the configuration is loaded, in two tries:
+ * one for the case sensitive strings and one, walked with the bytes
+ * converted to upper case, for the others. At each position of the header a
+ * table indexed by the current byte selects the strings that can start
+ * there, so most of the positions are discarded with one lookup.
+ * </p>
+ * <p>
+ * A string matches if it is found entirely within the first
+ * <code>detectLength</code> bytes: when <code>detectLength</code> equals
+ * the length of the string this means at the beginning of the header.
+ * </p>
+ *
+ * @author dvd.smnt
+ * @since 1.2.15
+ */
+final class StringModuleIndex {
+
+	private static final class Node {
+		private Node[] children = new Node[0];
+		private byte[] keys = new byte[0];
+		/**
+		 * Modules whose string ends at this node.
+		 */
+		private int[] modules = new int[0];
+
+		Node getChild(final byte key) {
+			for (int i = 0; i < this.keys.length; i++) {
+				if (this.keys[i] == key) {
+					return this.children[i];
+				}
+			}
+			return null;
+		}
+
+		Node getOrAddChild(final byte key) {
+			Node result = getChild(key);
+			if (result == null) {
+				result = new Node();
+				this.keys = Arrays.copyOf(this.keys, this.keys.length + 1);
+				this.keys[this.keys.length - 1] = key;
+				this.children = Arrays.copyOf(this.children,
+						this.children.length + 1);
+				this.children[this.children.length - 1] = result;
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * The module matched.
+	 */
+	static final byte MATCH = 1;
+
+	/**
+	 * The module didn't match.
+	 */
+	static final byte NO_MATCH = 0;
+
+	/**
+	 * The module is not indexed: its <code>detect()</code> must be called.
+	 */
+	static final byte UNKNOWN = -1;
+
+	/**
+	 * Returns the bytes searched by the module, or <code>null</code> if it
+	 * can't be indexed. Subclasses are not indexed since they may change the
+	 * detection.
+	 */
+	private static byte[] getString(final DefiniteLengthModule module) {
+		byte[] result = null;
+		if (module.getClass() == StringDetectorModule.class) {
+			result = ((StringDetectorModule) module).getByteSequence();
+		} else if (module.getClass() == StringncDetectorModule.class) {
+			result = ((StringncDetectorModule) module).getByteSequence();
+		}
+		return result;
+	}
+
+	private final boolean[] caseInsensitive;
+
+	/**
+	 * Root of the case insensitive trie, indexed by the first byte.
+	 */
+	private final Node[] foldedRoot = new Node[256];
+
+	private final boolean hasCaseInsensitive;
+
+	private final int[] lengths;
+
+	/**
+	 * Number of bytes of the header that can contain an indexed string.
+	 */
+	private final int maxWindow;
+
+	/**
+	 * Root of the case sensitive trie, indexed by the first byte.
+	 */
+	private final Node[] root = new Node[256];
+
+	private final int[] windows;
+
+	/**
+	 * @param modules
+	 *            the configured modules. The result of
+	 *            {@link #match(byte[], int, int)} has the same indexes.
+	 */
+	StringModuleIndex(final DefiniteLengthModule[] modules) {
+		this.caseInsensitive = new boolean[modules.length];
+		this.lengths = new int[modules.length];
+		this.windows = new int[modules.length];
+		int window = 0;
+		boolean folded = false;
+		for (int i = 0; i < modules.length; i++) {
+			final byte[] string = getString(modules[i]);
+			if ((string != null) && (string.length > 0)) {
+				this.caseInsensitive[i] = (modules[i] instanceof StringncDetectorModule);
+				this.lengths[i] = string.length;
+				this.windows[i] = modules[i].getDetectLength();
+				final Node[] trie = (this.caseInsensitive[i] ? this.foldedRoot
+						: this.root);
+				Node node = trie[string[0] & 0xff];
+				if (node == null) {
+					node = new Node();
+					trie[string[0] & 0xff] = node;
+				}
+				for (int j = 1; j < string.length; j++) {
+					node = node.getOrAddChild(string[j]);
+				}
+				node.modules = Arrays.copyOf(node.modules,
+						node.modules.length + 1);
+				node.modules[node.modules.length - 1] = i;
+				window = Math.max(window, this.windows[i]);
+				folded |= this.caseInsensitive[i];
+			} else {
+				this.lengths[i] = -1;
+			}
+		}
+		this.maxWindow = window;
+		this.hasCaseInsensitive = folded;
+	}
+
+	/**
+	 * Returns true if the result of the module is given by
+	 * {@link #match(byte[], int, int)}.
+	 */
+	boolean isIndexed(final int module) {
+		return this.lengths[module] > 0;
+	}
+
+	/**
+	 * Evaluates the indexed modules on a header.
+	 *
+	 * @return for each module {@link #MATCH}, {@link #NO_MATCH}, or
+	 *         {@link #UNKNOWN} if the module must be evaluated calling its
+	 *         <code>detect()</code> method.
+	 */
+	byte[] match(final byte[] bytes, final int offset, final int length) {
+		final byte[] result = new byte[this.lengths.length];
+		final int end = Math.min(length, this.maxWindow);
+		for (int i = 0; i < result.length; i++) {
+			result[i] = (isIndexed(i) ? NO_MATCH : UNKNOWN);
+		}
+		for (int pos = 0; pos < end; pos++) {
+			final byte b = bytes[offset + pos];
+			walk(this.root[b & 0xff], bytes, offset, pos, end, false, result);
+			if (this.hasCaseInsensitive) {
+				walk(this.foldedRoot[StringncDetectorModule.toUpperCase(b) & 0xff],
+						bytes, offset, pos, end, true, result);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Follows the trie from the node of the byte at <code>start</code>,
+	 * marking the modules whose string is found within their window.
+	 */
+	private void walk(final Node first, final byte[] bytes, final int offset,
+			final int start, final int end, final boolean folded,
+			final byte[] result) {
+		Node node = first;
+		int pos = start + 1;
+		while (node != null) {
+			for (final int module : node.modules) {
+				if ((result[module] == NO_MATCH)
+						&& (pos <= this.windows[module])) {
+					result[module] = MATCH;
+				}
+			}
+			if (pos < end) {
+				final byte b = bytes[offset + pos];
+				node = node.getChild(folded ? StringncDetectorModule
+						.toUpperCase(b) : b);
+				pos++;
+			} else {
+				node = null;
+			}
+		}
+	}
+}
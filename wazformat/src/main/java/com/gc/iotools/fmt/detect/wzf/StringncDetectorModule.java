@@ -4,25 +4,74 @@ package com.gc.iotools.fmt.detect.wzf;
  * Copyright (c) 2008, 2014 Gabriele Contini.
  * This source code is released under the BSD License.
  */
+import java.util.Arrays;
+
 import com.gc.iotools.fmt.base.FormatId;
 
+/**
+ * <p>
+ * Searches a string ignoring the case. Bytes are compared directly, without
+ * decoding them: ASCII letters are converted to upper case through a table,
+ * other bytes must be equal.
+ * </p>
+ * <p>
+ * When the detect length is greater than the string, the string is searched
+ * with the Boyer-Moore-Horspool algorithm on the converted bytes.
+ * </p>
+ */
 public class StringncDetectorModule implements DefiniteLengthModule {
-	private String byteSequence = null;
+	/**
+	 * Upper case of each byte: only ASCII letters are changed.
+	 */
+	private static final byte[] FOLD = new byte[256];
+
+	static {
+		for (int i = 0; i < FOLD.length; i++) {
+			FOLD[i] = (byte) ((i >= 'a') && (i <= 'z') ? i - ('a' - 'A') : i);
+		}
+	}
+
+	/**
+	 * Returns the upper case of an ASCII letter, the byte itself otherwise.
+	 */
+	static byte toUpperCase(final byte b) {
+		return FOLD[b & 0xff];
+	}
+
+	private byte[] byteSequence = null;
 	private int detectLength = -1;
 	private FormatId detectedFormat;
+	/**
+	 * Horspool shift for each upper cased byte.
+	 */
+	private int[] skip;
 
 	public boolean detect(final byte[] readBytes) {
 		boolean result;
-		final String readString = new String(readBytes);
-		final String ucaseStr = readString.toUpperCase();
-		if (this.detectLength == this.byteSequence.length()) {
-			result = this.byteSequence.equals(ucaseStr);
+		if (this.detectLength == this.byteSequence.length) {
+			result = (readBytes.length == this.byteSequence.length)
+					&& matches(readBytes, 0);
 		} else {
-			result = ucaseStr.contains(this.byteSequence);
+			result = false;
+			final int lastIndex = this.byteSequence.length - 1;
+			for (int pos = 0; !result
+					&& (pos <= readBytes.length - this.byteSequence.length);) {
+				result = matches(readBytes, pos);
+				if (!result) {
+					pos += this.skip[FOLD[readBytes[pos + lastIndex] & 0xff] & 0xff];
+				}
+			}
 		}
 		return result;
 	}
 
+	/**
+	 * Returns the searched bytes, upper cased. It is not a copy.
+	 */
+	byte[] getByteSequence() {
+		return this.byteSequence;
+	}
+
 	public FormatId getDetectedFormat() {
 		if (this.detectedFormat == null) {
 			throw new IllegalStateException(
@@ -41,22 +90,44 @@ public class StringncDetectorModule implements DefiniteLengthModule {
 
 	public void init(final FormatId fenum, final String param) {
 		final int sepPos = param.indexOf(':');
-		this.byteSequence = param.substring(sepPos + 1).toUpperCase();
+		this.byteSequence = param.substring(sepPos + 1).getBytes();
+		for (int i = 0; i < this.byteSequence.length; i++) {
+			this.byteSequence[i] = toUpperCase(this.byteSequence[i]);
+		}
 		if (sepPos > 0) {
 			final String detectLString = param.substring(0, sepPos);
 			this.detectLength = Integer.parseInt(detectLString);
 		}
 		if (this.detectLength <= 0) {
-			this.detectLength = this.byteSequence.length();
+			this.detectLength = this.byteSequence.length;
+		}
+		this.skip = new int[256];
+		Arrays.fill(this.skip, Math.max(1, this.byteSequence.length));
+		for (int i = 0; i < this.byteSequence.length - 1; i++) {
+			this.skip[this.byteSequence[i] & 0xff] = this.byteSequence.length
+					- 1 - i;
 		}
 
 		this.detectedFormat = fenum;
 	}
 
+	/**
+	 * Compares the string with the bytes at <code>pos</code>, ignoring the
+	 * case.
+	 */
+	private boolean matches(final byte[] readBytes, final int pos) {
+		int i = this.byteSequence.length - 1;
+		while ((i >= 0)
+				&& (FOLD[readBytes[pos + i] & 0xff] == this.byteSequence[i])) {
+			i--;
+		}
+		return i < 0;
+	}
+
 	@Override
 	public String toString() {
 		return "StringNCModule [" + this.detectedFormat + "] len["
-				+ this.detectLength + "] strIgnoreCase [" + this.byteSequence
-				+ "]";
+				+ this.detectLength + "] strIgnoreCase ["
+				+ new String(this.byteSequence) + "]";
 	}
 }
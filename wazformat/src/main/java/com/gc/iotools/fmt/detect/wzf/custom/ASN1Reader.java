@@ -1,14 +1,15 @@
 package com.gc.iotools.fmt.detect.wzf.custom;
 
-import java.io.EOFException;
-import java.io.IOException;
-import java.io.InputStream;
-
-import org.bouncycastle.asn1.ASN1InputStream;
-import org.bouncycastle.asn1.ASN1ObjectIdentifier;
-import org.bouncycastle.asn1.ASN1Primitive;
-
 /**
+ * <p>
+ * Reads the header of a DER or BER encoded CMS ContentInfo: a SEQUENCE
+ * followed by the OID of the content type.
+ * </p>
+ * <p>
+ * The bytes are read in place and the OID is compared with the encodings of
+ * the known content types, so both the PKCS7 and the TSD detectors use the
+ * same parsing and only need the first {@link #HEADER_LENGTH} bytes.
+ * </p>
  * 
  * @since 02/oct/08
  * @author dvd.smnt
@@ -16,143 +17,137 @@ import org.bouncycastle.asn1.ASN1Primitive;
 // TODO from UCDetector: Change visibility of Class "ASN1Reader" to default -
 // May cause compile errors!
 public final class ASN1Reader { // NO_UCD
-	private static final int CONSTRUCTED = 32;
-	private static final int SEQUENCE = 16;
-
-	private static final int TAGGED = 128;
+	/**
+	 * Bytes needed to recognize the content type: SEQUENCE tag and length (at
+	 * most 6 bytes), OID tag and length, OID.
+	 */
+	static final int HEADER_LENGTH = 32;
 
-	private boolean eofFound = false;
+	/**
+	 * The header is not one of the known content types.
+	 */
+	static final int NONE = -1;
 
-	private InputStream istream = null;
+	/**
+	 * PKCS7 signed data (1.2.840.113549.1.7.2).
+	 */
+	static final int SIGNED_DATA = 0;
 
-	protected ASN1Reader(final InputStream istream) {
-		this.istream = istream;
-	}
+	/**
+	 * Time stamped data (1.2.840.113549.1.9.16.1.31).
+	 */
+	static final int TIMESTAMPED_DATA = 1;
 
 	/**
-	 * 
-	 * @param expectedObjIdentifier
-	 *            for pkcs7: PKCSObjectIdentifiers.signedData, <br>
-	 *            for timestamp: PKCSObjectIdentifiers.id_ct_TSTInfo.getId()
-	 * @throws IOException
-	 * @throws FormatException
+	 * Content of the OIDs, indexed by content type.
 	 */
-	protected void check(final ASN1ObjectIdentifier expectedObjIdentifier)
-			throws IOException, FormatException {
-		try {
-			readSequence(this.istream);
-			readTagID(this.istream, expectedObjIdentifier);
-		} catch (final IOException e) {
-			throw new FormatException(
-					"Error reading pkcs7 or underlying stream", e);
-		} catch (final RuntimeException e) {
-			throw new FormatException("Error reading pkcs7", e);
-		}
-	}
+	private static final byte[][] CONTENT_TYPES = new byte[][] {
+			{ 0x2a, (byte) 0x86, 0x48, (byte) 0x86, (byte) 0xf7, 0x0d, 0x01,
+					0x07, 0x02 },
+			{ 0x2a, (byte) 0x86, 0x48, (byte) 0x86, (byte) 0xf7, 0x0d, 0x01,
+					0x09, 0x10, 0x01, 0x1f } };
 
-	private int getTagNo(final InputStream is, final int tag)
-			throws IOException {
-		final int baseTagNo = tag & ~CONSTRUCTED;
-		int tagNo = baseTagNo;
-		if ((tag & TAGGED) != 0) {
-			tagNo = tag & 0x1f;
+	private static final int CONSTRUCTED = 32;
 
-			//
-			// with tagged object tag number is bottom 5 bits, or stored at the
-			// start of the content
-			//
-			if (tagNo == 0x1f) {
-				tagNo = 0;
+	/**
+	 * Length octets in the long form, at most 4.
+	 */
+	private static final int MAX_LENGTH_OCTETS = 4;
 
-				int b = is.read();
+	private static final int OBJECT_IDENTIFIER = 6;
 
-				while ((b >= 0) && ((b & 0x80) != 0)) {
-					tagNo |= (b & 0x7f);
-					tagNo <<= 7;
-					b = is.read();
-				}
+	private static final int SEQUENCE = 16;
 
-				tagNo |= (b & 0x7f);
+	/**
+	 * Returns the content type of a ContentInfo.
+	 * 
+	 * @param bytes
+	 *            the beginning of the document.
+	 * @param offset
+	 *            start of the document in <code>bytes</code>.
+	 * @param length
+	 *            number of bytes available.
+	 * @return {@link #SIGNED_DATA}, {@link #TIMESTAMPED_DATA} or {@link #NONE}
+	 */
+	static int getContentType(final byte[] bytes, final int offset,
+			final int length) {
+		final int end = offset + length;
+		int result = NONE;
+		if ((length > 0) && ((bytes[offset] & ~CONSTRUCTED) == SEQUENCE)) {
+			final int oid = skipLength(bytes, offset + 1, end, true);
+			if ((oid >= 0) && (oid < end)
+					&& (bytes[oid] == OBJECT_IDENTIFIER)) {
+				final int content = skipLength(bytes, oid + 1, end, false);
+				final int oidLength = (content < 0 ? -1 : readLength(bytes,
+						oid + 1));
+				for (int i = 0; (oidLength >= 0) && (result == NONE)
+						&& (i < CONTENT_TYPES.length); i++) {
+					if ((oidLength == CONTENT_TYPES[i].length)
+							&& (content + oidLength <= end)
+							&& regionMatches(bytes, content, CONTENT_TYPES[i])) {
+						result = i;
+					}
+				}
 			}
 		}
-		return tagNo;
+		return result;
 	}
 
-	private int readLength(final InputStream stream) throws IOException,
-			FormatException {
-		int length = stream.read();
-		if (length < 0) {
-			throw new FormatException("EOF found when length expected");
-		}
-
-		if (length == 0x80) {
-			return -1; // indefinite-length encoding
-		}
-
-		if (length > 127) {
-			final int size = length & 0x7f;
-
-			if (size > 4) {
-				throw new FormatException("DER length more than 4 bytes");
-			}
-
-			length = 0;
-			for (int i = 0; i < size; i++) {
-				final int next = stream.read();
-
-				if (next < 0) {
-					throw new FormatException("EOF found reading length");
-				}
-
-				length = (length << 8) + next;
-			}
-
-			if (length < 0) {
-				throw new FormatException(
-						"corrupted steam - negative length found");
+	/**
+	 * Decodes length octets already checked by
+	 * {@link #skipLength(byte[], int, int, boolean)}.
+	 */
+	private static int readLength(final byte[] bytes, final int pos) {
+		int result = bytes[pos] & 0xff;
+		if (result > 0x80) {
+			final int size = result & 0x7f;
+			result = 0;
+			for (int i = 1; i <= size; i++) {
+				result = (result << 8) + (bytes[pos + i] & 0xff);
 			}
 		}
-
-		return length;
+		return result;
 	}
 
-	private void readSequence(final InputStream is) throws IOException,
-			FormatException {
-		final int tag = readTag(is);
-		readLength(is);
-		getTagNo(is, tag);
-		final int baseTagNo = tag & ~CONSTRUCTED;
-		final boolean result = (SEQUENCE == baseTagNo);
-		if (result == false) {
-			throw new FormatException("Formato PKCS#7 non riconosciuto. "
-					+ "atteso tag SEQUENCE[" + SEQUENCE + "] ottenuto ["
-					+ baseTagNo + "]");
+	private static boolean regionMatches(final byte[] bytes, final int pos,
+			final byte[] expected) {
+		boolean result = true;
+		for (int i = 0; result && (i < expected.length); i++) {
+			result = (bytes[pos + i] == expected[i]);
 		}
-
+		return result;
 	}
 
-	private int readTag(final InputStream in) throws IOException {
-		final int tag = in.read();
-		if (tag == -1) {
-			if (this.eofFound) {
-				throw new EOFException("attempt to read past end of file.");
+	/**
+	 * Checks the length octets at <code>pos</code>.
+	 * 
+	 * @param indefinite
+	 *            the indefinite length of BER is allowed.
+	 * @return the position after the length octets, -1 if they are not
+	 *         valid or the bytes end before.
+	 */
+	private static int skipLength(final byte[] bytes, final int pos,
+			final int end, final boolean indefinite) {
+		int result = -1;
+		if (pos < end) {
+			final int first = bytes[pos] & 0xff;
+			if (first < 0x80) {
+				result = pos + 1;
+			} else if (first == 0x80) {
+				result = (indefinite ? pos + 1 : -1);
+			} else {
+				final int size = first & 0x7f;
+				final boolean valid = (size <= MAX_LENGTH_OCTETS)
+						&& (pos + size < end)
+						// a negative length is not valid.
+						&& ((size < MAX_LENGTH_OCTETS) || (bytes[pos + 1] >= 0));
+				result = (valid ? pos + 1 + size : -1);
 			}
-
-			this.eofFound = true;
-			return 0;
 		}
-		return tag;
+		return result;
 	}
 
-	private void readTagID(final InputStream is,
-			final ASN1ObjectIdentifier expectedIdentifier) throws IOException,
-			FormatException {
-		final ASN1InputStream asn1Stream = new ASN1InputStream(is);
-		final ASN1Primitive doi = asn1Stream.readObject();
-		asn1Stream.close();
-		if (!expectedIdentifier.equals(doi)) {
-			throw new FormatException("Expected oid signedData["
-					+ expectedIdentifier + "] got[" + doi + "]");
-		}
+	private ASN1Reader() {
+		// static methods only
 	}
 }
@@ -1,13 +1,5 @@
 package com.gc.iotools.fmt.detect.wzf.custom;
 
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import java.io.InputStream;
-
-import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
 import com.gc.iotools.fmt.base.FormatEnum;
 import com.gc.iotools.fmt.base.FormatId;
 import com.gc.iotools.fmt.detect.wzf.DefiniteLengthModule;
@@ -46,26 +38,9 @@ import com.gc.iotools.fmt.detect.wzf.DefiniteLengthModule;
  */
 public class PKCS7Detector implements DefiniteLengthModule { // NO_UCD
 
-	private static final Logger LOGGER = LoggerFactory
-			.getLogger(PKCS7Detector.class);
-
-
 	public boolean detect(final byte[] readBytes) {
-		final InputStream buffer = new ByteArrayInputStream(readBytes);
-		boolean result = false;
-		try {
-			final ASN1Reader pkcsHdrRead = new ASN1Reader(buffer);
-			pkcsHdrRead.check(PKCSObjectIdentifiers.signedData);
-			result = true;
-		} catch (final FormatException e) {
-			LOGGER.debug("PKCS7 not recognized" + "Exception (normal) ["
-					+ e.getMessage() + "]");
-		} catch (final IOException e) {
-			LOGGER.warn("PKCS7 not recognized for an I/O exception", e);
-		} catch (final Throwable e) {
-			LOGGER.warn("PKCS7 not recognized for unexpected exception.", e);
-		}
-		return result;
+		return ASN1Reader.getContentType(readBytes, 0, readBytes.length)
+				== ASN1Reader.SIGNED_DATA;
 	}
 
 	public FormatId getDetectedFormat() {
@@ -73,7 +48,7 @@ public class PKCS7Detector implements DefiniteLengthModule { // NO_UCD
 	}
 
 	public int getDetectLength() {
-		return 4096;
+		return ASN1Reader.HEADER_LENGTH;
 	}
 
 	public void init(final FormatId fenum, final String param) {
@@ -1,12 +1,5 @@
 package com.gc.iotools.fmt.detect.wzf.custom;
 
-import java.io.ByteArrayInputStream;
-import java.io.InputStream;
-
-import org.bouncycastle.asn1.cms.CMSObjectIdentifiers;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
 import com.gc.iotools.fmt.base.FormatEnum;
 import com.gc.iotools.fmt.base.FormatId;
 import com.gc.iotools.fmt.detect.wzf.DefiniteLengthModule;
@@ -18,23 +11,10 @@ import com.gc.iotools.fmt.detect.wzf.DefiniteLengthModule;
  */
 public class TSDDetector implements DefiniteLengthModule {
 
-	private static final Logger LOGGER = LoggerFactory
-			.getLogger(TSDDetector.class);
-
-
 	@Override
 	public boolean detect(final byte[] readBytes) {
-		final InputStream buffer = new ByteArrayInputStream(readBytes);
-		boolean result = false;
-		try {
-			final ASN1Reader pkcsHdrRead = new ASN1Reader(buffer);
-			pkcsHdrRead.check(CMSObjectIdentifiers.timestampedData);
-			result = true;
-		} catch (final Exception e) {
-			LOGGER.debug("TSD not recognized. Exception: [" + e.getMessage()
-					+ "]");
-		}
-		return result;
+		return ASN1Reader.getContentType(readBytes, 0, readBytes.length)
+				== ASN1Reader.TIMESTAMPED_DATA;
 	}
 
 	@Override
@@ -44,7 +24,7 @@ public class TSDDetector implements DefiniteLengthModule {
 
 	@Override
 	public int getDetectLength() {
-		return 4096;
+		return ASN1Reader.HEADER_LENGTH;
 	}
 
 	@Override
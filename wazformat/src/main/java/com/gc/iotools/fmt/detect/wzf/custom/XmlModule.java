@@ -24,14 +24,13 @@ package com.gc.iotools.fmt.detect.wzf.custom;
  * DAMAGE.
  */
 import java.io.ByteArrayInputStream;
-import java.io.InputStream;
 
 import javax.xml.stream.Location;
-import javax.xml.stream.XMLEventReader;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLReporter;
+import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
-import javax.xml.stream.events.XMLEvent;
+import javax.xml.stream.XMLStreamReader;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,13 +40,23 @@ import com.gc.iotools.fmt.base.FormatId;
 import com.gc.iotools.fmt.detect.wzf.DefiniteLengthModule;
 
 /**
+ * <p>
  * Detect a file in XML
+ * </p>
+ * <p>
+ * The beginning of the document is first checked on the bytes by
+ * {@link XmlPrologSniffer}: most of the documents are recognized (or
+ * discarded) there. The others are parsed with StAX, using a
+ * <code>XMLInputFactory</code> created once per thread. When the full
+ * {@link #getDetectLength()} bytes are available the parsing stops at the
+ * start tag of the root element, otherwise the whole document is parsed.
+ * </p>
  * 
  * @author dvd.smnt
  * @since Nov 8, 2008
  */
 public final class XmlModule implements DefiniteLengthModule {
-	private final class MyReporter implements XMLReporter {
+	private static final class MyReporter implements XMLReporter {
 
 		MyReporter() {
 			// to avoid synthetic method
@@ -61,48 +70,63 @@ public final class XmlModule implements DefiniteLengthModule {
 
 	}
 
+	/**
+	 * Factories are not thread safe: one is kept for each thread.
+	 */
+	private static final ThreadLocal<XMLInputFactory> FACTORY = new ThreadLocal<XMLInputFactory>() {
+		@Override
+		protected XMLInputFactory initialValue() {
+			final XMLInputFactory factory = XMLInputFactory.newInstance();
+			factory.setProperty(XMLInputFactory.IS_VALIDATING, Boolean.FALSE);
+			factory.setXMLReporter(new MyReporter());
+			return factory;
+		}
+	};
+
 	private static final Logger LOGGER = LoggerFactory
 			.getLogger(XmlModule.class);
 
-	private static final int XML_GUESS_SIZE = 8192;
+	/**
+	 * Parser errors caused by the document being cut at
+	 * {@link #XML_GUESS_SIZE}.
+	 */
+	private static final String[] TRUNCATION_MESSAGES = new String[] {
+			"must start and end", "end of stream",
+			"must be terminated by the matching", "was expecting a close tag",
+			"end of input block in end tag" };
 
-	public boolean detect(final byte[] readBytes) {
-		final XMLInputFactory factory = XMLInputFactory.newInstance();
-		factory.setProperty(XMLInputFactory.IS_VALIDATING, Boolean.FALSE);
-		factory.setXMLReporter(new MyReporter());
+	private static final int XML_GUESS_SIZE = 8192;
 
-		final InputStream in = new ByteArrayInputStream(readBytes);
-		boolean xmlDetected = false;
-		long currentEvent = -1;
-		try {
-			final XMLEventReader parser = factory.createXMLEventReader(in);
-			while (parser.hasNext()) {
-				currentEvent++;
-				final XMLEvent event = parser.nextEvent();
-				XmlModule.LOGGER.debug("Found XML event ["
-						+ event.getEventType() + "]");
-			}
-			xmlDetected = true;
-			XmlModule.LOGGER.debug("XML detected (EOF reach)");
-		} catch (final XMLStreamException e) {
-			final Location location = e.getLocation();
-			final String message = e.getMessage();
-			final boolean locationCondition = location != null
-					&& location.getCharacterOffset() == XmlModule.XML_GUESS_SIZE;
-			if (locationCondition
-					|| (message != null
-							&& (message.contains("must start and end")
-									|| message.indexOf("end of stream") >= 0
-									|| message
-											.contains("must be terminated by the matching")
-									|| message
-											.contains("was expecting a close tag") || message
-										.contains("end of input block in end tag")) && readBytes.length == XML_GUESS_SIZE)) {
-				xmlDetected = evaluateException(currentEvent);
+	private static boolean isTruncation(final XMLStreamException e,
+			final int length) {
+		final Location location = e.getLocation();
+		boolean result = (location != null)
+				&& (location.getCharacterOffset() == XmlModule.XML_GUESS_SIZE);
+		final String message = e.getMessage();
+		for (int i = 0; !result && (message != null)
+				&& (length == XML_GUESS_SIZE)
+				&& (i < TRUNCATION_MESSAGES.length); i++) {
+			result = message.contains(TRUNCATION_MESSAGES[i]);
+		}
+		return result;
+	}
 
-			} else {
-				XmlModule.LOGGER.debug("XML not detected " + e);
-			}
+	public boolean detect(final byte[] readBytes) {
+		final boolean fullWindow = (readBytes.length == XML_GUESS_SIZE);
+		final boolean xmlDetected;
+		switch (XmlPrologSniffer.sniff(readBytes)) {
+		case XmlPrologSniffer.NOT_XML:
+			xmlDetected = false;
+			break;
+		case XmlPrologSniffer.TRUNCATED:
+			xmlDetected = fullWindow;
+			break;
+		case XmlPrologSniffer.ROOT:
+			// a short document must be parsed till the end.
+			xmlDetected = fullWindow || parse(readBytes, false);
+			break;
+		default:
+			xmlDetected = parse(readBytes, fullWindow);
 		}
 		return xmlDetected;
 	}
@@ -133,4 +157,45 @@ public final class XmlModule implements DefiniteLengthModule {
 		return tenum;
 	}
 
+	/**
+	 * Parses the document with StAX.
+	 * 
+	 * @param stopAtRoot
+	 *            stop at the start tag of the root element.
+	 */
+	private boolean parse(final byte[] readBytes, final boolean stopAtRoot) {
+		boolean xmlDetected = false;
+		long currentEvent = -1;
+		XMLStreamReader parser = null;
+		try {
+			parser = FACTORY.get().createXMLStreamReader(
+					new ByteArrayInputStream(readBytes));
+			currentEvent++;
+			boolean root = false;
+			while (!root && parser.hasNext()) {
+				currentEvent++;
+				root = (parser.next() == XMLStreamConstants.START_ELEMENT)
+						&& stopAtRoot;
+			}
+			xmlDetected = true;
+			XmlModule.LOGGER.debug("XML detected ("
+					+ (root ? "root element" : "EOF reach") + ")");
+		} catch (final XMLStreamException e) {
+			if (isTruncation(e, readBytes.length)) {
+				xmlDetected = evaluateException(currentEvent);
+			} else {
+				XmlModule.LOGGER.debug("XML not detected " + e);
+			}
+		} finally {
+			if (parser != null) {
+				try {
+					parser.close();
+				} catch (final XMLStreamException e) {
+					XmlModule.LOGGER.debug("Error closing the parser", e);
+				}
+			}
+		}
+		return xmlDetected;
+	}
+
 }
@@ -0,0 +1,582 @@
+package com.gc.iotools.fmt.detect.wzf.custom;
+
+/*
+ * Copyright (c) 2008, 2014 Gabriele Contini. This source code is released
+ * under the BSD License.
+ */
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * <p>
+ * Checks the beginning of an XML document directly on its bytes: byte order
+ * mark, XML declaration, comments, processing instructions and the start tag
+ * of the root element.
+ * </p>
+ * <p>
+ * Only a strict subset of XML is recognized: ASCII names, predefined entity
+ * and character references, ASCII compatible encodings, no DOCTYPE. Whatever
+ * is outside the subset is reported as {@link #UNKNOWN} and left to a real
+ * parser, so that the sniffer never gives a different answer from it.
+ * </p>
+ *
+ * @author dvd.smnt
+ * @since 1.2.15
+ */
+final class XmlPrologSniffer {
+
+	/**
+	 * Not XML: the document doesn't start with markup.
+	 */
+	static final int NOT_XML = 0;
+
+	/**
+	 * A well formed prolog and the start tag of the root element were
+	 * found.
+	 */
+	static final int ROOT = 1;
+
+	/**
+	 * The bytes end before the start tag of the root element is complete,
+	 * but everything up to there is well formed.
+	 */
+	static final int TRUNCATED = 2;
+
+	/**
+	 * The sniffer can't tell: the document must be parsed.
+	 */
+	static final int UNKNOWN = 3;
+
+	/**
+	 * Returned by the parsing methods to go on.
+	 */
+	private static final int CONTINUE = -1;
+
+	private static final Set<String> ENCODINGS = new HashSet<String>(
+			Arrays.asList(new String[] { "UTF-8", "US-ASCII", "ISO-8859-1",
+					"ISO-8859-2", "ISO-8859-15", "WINDOWS-1250",
+					"WINDOWS-1252" }));
+
+	/**
+	 * Beginning of a document in EBCDIC: "&lt;?xm".
+	 */
+	private static final byte[] EBCDIC = new byte[] { 0x4c, 0x6f,
+			(byte) 0xa7, (byte) 0x94 };
+
+	private static final int MAX_ATTRIBUTES = 32;
+
+	private static final byte[] UTF8_BOM = new byte[] { (byte) 0xef,
+			(byte) 0xbb, (byte) 0xbf };
+
+	private static boolean isNameChar(final byte b) {
+		return isNameStartChar(b) || ((b >= '0') && (b <= '9'))
+				|| (b == '-') || (b == '.');
+	}
+
+	private static boolean isNameStartChar(final byte b) {
+		return ((b >= 'a') && (b <= 'z')) || ((b >= 'A') && (b <= 'Z'))
+				|| (b == '_') || (b == ':');
+	}
+
+	/**
+	 * Checks a character of text: other bytes than printable ASCII and
+	 * white spaces must be decoded.
+	 */
+	private static boolean isPlainText(final byte b) {
+		return (b >= ' ') || isSpace(b);
+	}
+
+	private static boolean isSpace(final byte b) {
+		return (b == ' ') || (b == '\n') || (b == '\r') || (b == '\t');
+	}
+
+	/**
+	 * Checks the beginning of a document.
+	 *
+	 * @param bytes
+	 *            the first bytes of the document.
+	 * @return {@link #NOT_XML}, {@link #ROOT}, {@link #TRUNCATED} or
+	 *         {@link #UNKNOWN}.
+	 */
+	static int sniff(final byte[] bytes) {
+		return new XmlPrologSniffer(bytes).sniff();
+	}
+
+	/**
+	 * Start and end of the names of the attributes of the root element.
+	 */
+	private final int[] attributes = new int[MAX_ATTRIBUTES * 2];
+
+	private int attributesCount = 0;
+
+	private final byte[] bytes;
+
+	private int pos = 0;
+
+	private boolean utf8Bom = false;
+
+	/**
+	 * Start of the last value read by {@link #quoted()}.
+	 */
+	private int valueStart = 0;
+
+	private XmlPrologSniffer(final byte[] bytes) {
+		this.bytes = bytes;
+	}
+
+	/**
+	 * Checks that the prefixes used in the start tag of the root element are
+	 * declared in the tag itself, and that attributes are not repeated.
+	 */
+	private int checkNames(final int elementStart, final int elementEnd) {
+		final int elementColon = indexOf(':', elementStart, elementEnd);
+		if ((elementColon >= 0) && !isDeclared(elementStart, elementColon)) {
+			return UNKNOWN;
+		}
+		for (int i = 0; i < this.attributesCount; i++) {
+			final int start = this.attributes[2 * i];
+			final int end = this.attributes[2 * i + 1];
+			final int colon = indexOf(':', start, end);
+			if (colon >= 0) {
+				if (equals(start, colon, "xmlns")) {
+					if (equals(colon + 1, end, "xml")
+							|| equals(colon + 1, end, "xmlns")) {
+						return UNKNOWN;
+					}
+				} else if (!equals(start, colon, "xml")
+						&& !isDeclared(start, colon)) {
+					return UNKNOWN;
+				}
+			}
+			for (int j = 0; j < i; j++) {
+				// a:x and b:x may be the same name: only the local names
+				// are compared.
+				final int otherEnd = this.attributes[2 * j + 1];
+				if (equals(localName(start, end), end,
+						localName(this.attributes[2 * j], otherEnd), otherEnd)) {
+					return UNKNOWN;
+				}
+			}
+		}
+		return ROOT;
+	}
+
+	private int comment() {
+		this.pos += 4;
+		while (this.pos < this.bytes.length) {
+			final byte b = this.bytes[this.pos];
+			if (!isPlainText(b)) {
+				return UNKNOWN;
+			}
+			if (b == '-') {
+				final int match = match("-->");
+				if (match == TRUNCATED) {
+					return TRUNCATED;
+				} else if (match == ROOT) {
+					this.pos += 3;
+					return CONTINUE;
+				} else if ((this.pos + 1 < this.bytes.length)
+						&& (this.bytes[this.pos + 1] == '-')) {
+					// "--" is not allowed in comments.
+					return UNKNOWN;
+				}
+			}
+			this.pos++;
+		}
+		return TRUNCATED;
+	}
+
+	private boolean equals(final int start, final int end, final int start2,
+			final int end2) {
+		boolean result = (end - start == end2 - start2);
+		for (int i = 0; result && (i < end - start); i++) {
+			result = (this.bytes[start + i] == this.bytes[start2 + i]);
+		}
+		return result;
+	}
+
+	private boolean equals(final int start, final int end, final String str) {
+		boolean result = (end - start == str.length());
+		for (int i = 0; result && (i < str.length()); i++) {
+			result = (this.bytes[start + i] == str.charAt(i));
+		}
+		return result;
+	}
+
+	private int indexOf(final char c, final int start, final int end) {
+		for (int i = start; i < end; i++) {
+			if (this.bytes[i] == c) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns true if <code>xmlns:prefix</code> is an attribute of the root
+	 * element.
+	 */
+	private boolean isDeclared(final int prefixStart, final int prefixEnd) {
+		for (int i = 0; i < this.attributesCount; i++) {
+			final int start = this.attributes[2 * i];
+			final int end = this.attributes[2 * i + 1];
+			if ((end - start > 6) && equals(start, start + 6, "xmlns:")
+					&& equals(start + 6, end, prefixStart, prefixEnd)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private int localName(final int start, final int end) {
+		final int colon = indexOf(':', start, end);
+		return (colon < 0 ? start : colon + 1);
+	}
+
+	/**
+	 * Compares the bytes at the current position with <code>str</code>.
+	 *
+	 * @return {@link #ROOT} if they are equal, {@link #TRUNCATED} if the
+	 *         bytes end before a difference is found, {@link #NOT_XML}
+	 *         otherwise.
+	 */
+	private int match(final String str) {
+		for (int i = 0; i < str.length(); i++) {
+			if (this.pos + i >= this.bytes.length) {
+				return TRUNCATED;
+			}
+			if (this.bytes[this.pos + i] != str.charAt(i)) {
+				return NOT_XML;
+			}
+		}
+		return ROOT;
+	}
+
+	/**
+	 * Reads a name. Returns its end, or a negative result (-1 if truncated,
+	 * -2 if unknown).
+	 */
+	private int name() {
+		if (this.pos >= this.bytes.length) {
+			return -1;
+		}
+		if (!isNameStartChar(this.bytes[this.pos])
+				|| (this.bytes[this.pos] == ':')) {
+			return -2;
+		}
+		int colons = 0;
+		int end = this.pos + 1;
+		while ((end < this.bytes.length) && isNameChar(this.bytes[end])) {
+			if (this.bytes[end] == ':') {
+				colons++;
+				// the local part starts like a name.
+				if ((end + 1 < this.bytes.length)
+						&& (!isNameStartChar(this.bytes[end + 1]) || (this.bytes[end + 1] == ':'))) {
+					return -2;
+				}
+			}
+			end++;
+		}
+		if (end >= this.bytes.length) {
+			return -1;
+		}
+		if ((colons > 1) || (this.bytes[end - 1] == ':')) {
+			return -2;
+		}
+		return end;
+	}
+
+	private int processingInstruction() {
+		this.pos += 2;
+		final int end = name();
+		if (end < 0) {
+			return (end == -1 ? TRUNCATED : UNKNOWN);
+		}
+		if ((end - this.pos == 3)
+				&& ((this.bytes[this.pos] | 0x20) == 'x')
+				&& ((this.bytes[this.pos + 1] | 0x20) == 'm')
+				&& ((this.bytes[this.pos + 2] | 0x20) == 'l')) {
+			// the declaration is allowed only at the beginning.
+			return UNKNOWN;
+		}
+		this.pos = end;
+		if (!isSpace(this.bytes[this.pos])) {
+			// without a space the instruction must end here.
+			final int match = match("?>");
+			this.pos += 2;
+			return (match == ROOT ? CONTINUE : (match == TRUNCATED ? TRUNCATED
+					: UNKNOWN));
+		}
+		while (this.pos < this.bytes.length) {
+			final byte b = this.bytes[this.pos];
+			if (!isPlainText(b)) {
+				return UNKNOWN;
+			}
+			if (b == '?') {
+				final int match = match("?>");
+				if (match != NOT_XML) {
+					this.pos += 2;
+					return (match == ROOT ? CONTINUE : TRUNCATED);
+				}
+			}
+			this.pos++;
+		}
+		return TRUNCATED;
+	}
+
+	/**
+	 * Reads the value of a pseudo attribute of the declaration.
+	 *
+	 * @return the end of the value or a negative number (-1 if truncated, -2
+	 *         if unknown).
+	 */
+	private int pseudoAttribute(final String name) {
+		final int match = match(name);
+		if (match != ROOT) {
+			return (match == TRUNCATED ? -1 : -2);
+		}
+		this.pos += name.length();
+		skipSpaces();
+		final int eq = match("=");
+		if (eq != ROOT) {
+			return (eq == TRUNCATED ? -1 : -2);
+		}
+		this.pos++;
+		skipSpaces();
+		return quoted();
+	}
+
+	/**
+	 * Reads a quoted value, of an attribute or of the declaration.
+	 *
+	 * @return the end of the value (before the quote) or a negative number
+	 *         (-1 if truncated, -2 if unknown).
+	 */
+	private int quoted() {
+		if (this.pos >= this.bytes.length) {
+			return -1;
+		}
+		final byte quote = this.bytes[this.pos];
+		if ((quote != '"') && (quote != '\'')) {
+			return -2;
+		}
+		this.pos++;
+		this.valueStart = this.pos;
+		while (this.pos < this.bytes.length) {
+			final byte b = this.bytes[this.pos];
+			if (b == quote) {
+				return this.pos++;
+			} else if ((b == '<') || !isPlainText(b)) {
+				return -2;
+			} else if (b == '&') {
+				final int reference = reference();
+				if (reference < 0) {
+					return reference;
+				}
+			}
+			this.pos++;
+		}
+		return -1;
+	}
+
+	/**
+	 * Checks a predefined entity or a character reference. The position is
+	 * left on the ';'.
+	 */
+	private int reference() {
+		final int semicolon = indexOf(';', this.pos + 1, Math.min(
+				this.bytes.length, this.pos + 12));
+		if (semicolon < 0) {
+			return (this.pos + 12 > this.bytes.length ? -1 : -2);
+		}
+		final int start = this.pos + 1;
+		boolean valid = equals(start, semicolon, "lt")
+				|| equals(start, semicolon, "gt")
+				|| equals(start, semicolon, "amp")
+				|| equals(start, semicolon, "apos")
+				|| equals(start, semicolon, "quot");
+		if (!valid && (semicolon - start > 1) && (this.bytes[start] == '#')) {
+			// only printable ASCII characters are sure to be valid.
+			int value = 0;
+			final boolean hex = (this.bytes[start + 1] == 'x');
+			valid = !hex || (semicolon - start > 2);
+			for (int i = start + (hex ? 2 : 1); valid && (i < semicolon); i++) {
+				final int digit = Character.digit(this.bytes[i], hex ? 16
+						: 10);
+				value = value * (hex ? 16 : 10) + digit;
+				valid = (digit >= 0) && (value < 0x7f);
+			}
+			valid &= (value >= ' ') && (value < 0x7f);
+		}
+		this.pos = semicolon;
+		return (valid ? 0 : -2);
+	}
+
+	private int skipSpaces() {
+		final int start = this.pos;
+		while ((this.pos < this.bytes.length)
+				&& isSpace(this.bytes[this.pos])) {
+			this.pos++;
+		}
+		return this.pos - start;
+	}
+
+	private int sniff() {
+		if (this.bytes.length == 0) {
+			return TRUNCATED;
+		}
+		final int first = this.bytes[0] & 0xff;
+		if ((first == 0) || (first == 0xfe) || (first == 0xff)) {
+			// UTF-16 or UTF-32
+			return UNKNOWN;
+		}
+		if (first == EBCDIC[0]) {
+			boolean ebcdic = true;
+			for (int i = 1; ebcdic && (i < Math.min(EBCDIC.length,
+					this.bytes.length)); i++) {
+				ebcdic = (this.bytes[i] == EBCDIC[i]);
+			}
+			if (ebcdic) {
+				return UNKNOWN;
+			}
+		}
+		if (first == 0xef) {
+			for (int i = 0; i < UTF8_BOM.length; i++) {
+				if (i >= this.bytes.length) {
+					return TRUNCATED;
+				}
+				if (this.bytes[i] != UTF8_BOM[i]) {
+					return NOT_XML;
+				}
+			}
+			this.pos = UTF8_BOM.length;
+			this.utf8Bom = true;
+		}
+		int result = CONTINUE;
+		final int declaration = match("<?xml");
+		if (declaration == TRUNCATED) {
+			result = TRUNCATED;
+		} else if ((declaration == ROOT)
+				&& ((this.pos + 5 >= this.bytes.length) || !isNameChar(this.bytes[this.pos + 5]))) {
+			result = xmlDeclaration();
+		}
+		while (result == CONTINUE) {
+			skipSpaces();
+			if (this.pos >= this.bytes.length) {
+				result = TRUNCATED;
+			} else if (this.bytes[this.pos] != '<') {
+				result = NOT_XML;
+			} else if (match("<!--") == ROOT) {
+				result = comment();
+			} else if (match("<?") == ROOT) {
+				result = processingInstruction();
+			} else if (match("<!") != NOT_XML) {
+				// DOCTYPE and its internal subset are left to the parser.
+				result = (match("<!--") == TRUNCATED ? TRUNCATED : UNKNOWN);
+			} else {
+				result = startTag();
+			}
+		}
+		return result;
+	}
+
+	private int startTag() {
+		this.pos++;
+		final int elementStart = this.pos;
+		final int elementEnd = name();
+		if (elementEnd < 0) {
+			return (elementEnd == -1 ? TRUNCATED : UNKNOWN);
+		}
+		this.pos = elementEnd;
+		while (true) {
+			final int spaces = skipSpaces();
+			if (this.pos >= this.bytes.length) {
+				return TRUNCATED;
+			}
+			final byte b = this.bytes[this.pos];
+			if (b == '>') {
+				return checkNames(elementStart, elementEnd);
+			} else if (b == '/') {
+				final int match = match("/>");
+				return (match == ROOT ? checkNames(elementStart, elementEnd)
+						: (match == TRUNCATED ? TRUNCATED : UNKNOWN));
+			} else if ((spaces == 0)
+					|| (this.attributesCount == MAX_ATTRIBUTES)) {
+				return UNKNOWN;
+			}
+			final int nameStart = this.pos;
+			final int nameEnd = name();
+			if (nameEnd < 0) {
+				return (nameEnd == -1 ? TRUNCATED : UNKNOWN);
+			}
+			this.attributes[2 * this.attributesCount] = nameStart;
+			this.attributes[2 * this.attributesCount + 1] = nameEnd;
+			this.attributesCount++;
+			this.pos = nameEnd;
+			skipSpaces();
+			final int eq = match("=");
+			if (eq != ROOT) {
+				return (eq == TRUNCATED ? TRUNCATED : UNKNOWN);
+			}
+			this.pos++;
+			skipSpaces();
+			final int valueEnd = quoted();
+			if (valueEnd < 0) {
+				return (valueEnd == -1 ? TRUNCATED : UNKNOWN);
+			}
+			if ((valueEnd == this.valueStart) && (nameEnd - nameStart > 6)
+					&& equals(nameStart, nameStart + 6, "xmlns:")) {
+				// a prefix can't be bound to an empty namespace.
+				return UNKNOWN;
+			}
+		}
+	}
+
+	private int xmlDeclaration() {
+		this.pos += 5;
+		if (skipSpaces() == 0) {
+			return (this.pos >= this.bytes.length ? TRUNCATED : UNKNOWN);
+		}
+		int valueEnd = pseudoAttribute("version");
+		if (valueEnd < 0) {
+			return (valueEnd == -1 ? TRUNCATED : UNKNOWN);
+		}
+		if (!equals(this.valueStart, valueEnd, "1.0")
+				&& !equals(this.valueStart, valueEnd, "1.1")) {
+			return UNKNOWN;
+		}
+		boolean space = (skipSpaces() > 0);
+		if (space && (match("encoding") != NOT_XML)) {
+			valueEnd = pseudoAttribute("encoding");
+			if (valueEnd < 0) {
+				return (valueEnd == -1 ? TRUNCATED : UNKNOWN);
+			}
+			final String encoding = new String(this.bytes, this.valueStart,
+					valueEnd - this.valueStart).toUpperCase(Locale.ENGLISH);
+			if (!ENCODINGS.contains(encoding)
+					|| (this.utf8Bom && !"UTF-8".equals(encoding))) {
+				return UNKNOWN;
+			}
+			space = (skipSpaces() > 0);
+		}
+		if (space && (match("standalone") != NOT_XML)) {
+			valueEnd = pseudoAttribute("standalone");
+			if (valueEnd < 0) {
+				return (valueEnd == -1 ? TRUNCATED : UNKNOWN);
+			}
+			if (!equals(this.valueStart, valueEnd, "yes")
+					&& !equals(this.valueStart, valueEnd, "no")) {
+				return UNKNOWN;
+			}
+			skipSpaces();
+		}
+		final int end = match("?>");
+		if (end == ROOT) {
+			this.pos += 2;
+			return CONTINUE;
+		}
+		return (end == TRUNCATED ? TRUNCATED : UNKNOWN);
+	}
+}
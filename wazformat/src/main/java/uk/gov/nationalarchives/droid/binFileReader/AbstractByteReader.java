@@ -20,6 +20,8 @@
 
 package uk.gov.nationalarchives.droid.binFileReader;
 
+import java.nio.ByteBuffer;
+
 import uk.gov.nationalarchives.droid.base.FileFormatHit;
 
 /**
@@ -106,6 +108,20 @@ public abstract class AbstractByteReader implements ByteReader { // NO_UCD
 		return this.myIDFile.getWarning();
 	}
 
+	/**
+	 * Copies at most <code>minLength</code> bytes in a new window
+	 */
+	@Override
+	public ByteBuffer getWindow(final long fileIndex, final int minLength) {
+		final byte[] bytes = new byte[Math.max(minLength, 0)];
+		int n = 0;
+		while ((n < bytes.length) && hasByte(fileIndex + n)) {
+			bytes[n] = getByte(fileIndex + n);
+			n++;
+		}
+		return ByteBuffer.wrap(bytes, 0, n);
+	}
+
 	/**
 	 * Get number of file format hits
 	 */
@@ -114,6 +130,14 @@ public abstract class AbstractByteReader implements ByteReader { // NO_UCD
 		return this.myIDFile.getNumHits();
 	}
 
+	/**
+	 * Checks whether the file contains the byte at <code>fileIndex</code>
+	 */
+	@Override
+	public boolean hasByte(final long fileIndex) {
+		return (fileIndex >= 0) && (fileIndex < getNumBytes());
+	}
+
 	/**
 	 * Checks whether the file has yet been classified
 	 */
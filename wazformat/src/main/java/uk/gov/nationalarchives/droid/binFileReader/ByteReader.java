@@ -16,6 +16,8 @@
  */
 package uk.gov.nationalarchives.droid.binFileReader;
 
+import java.nio.ByteBuffer;
+
 import uk.gov.nationalarchives.droid.base.FileFormatHit;
 
 /**
@@ -82,6 +84,29 @@ public interface ByteReader {
 	 */
 	public String getIdentificationWarning();
 
+	/**
+	 * Returns a window on the bytes of the file around
+	 * <code>fileIndex</code>, to be read directly from the backing array.
+	 * <p>
+	 * The byte at <code>fileIndex</code> is
+	 * <code>array()[arrayOffset() + position()]</code>. The array between
+	 * <code>arrayOffset()</code> and <code>arrayOffset() + limit()</code>
+	 * holds the contiguous bytes of the file starting from
+	 * <code>fileIndex - position()</code>. At least <code>minLength</code>
+	 * bytes are available from <code>fileIndex</code> unless the end of the
+	 * file is reached; a reader may cap <code>minLength</code> to the size of
+	 * its buffers. The window is empty (<code>remaining() == 0</code>) when
+	 * <code>fileIndex</code> is outside the file.
+	 * </p>
+	 * <p>
+	 * The window is valid until the next call to {@link #getByte(long)},
+	 * {@link #hasByte(long)}, {@link #getNumBytes()} or
+	 * {@link #getWindow(long, int)}: the reader can reuse its array. It must
+	 * not be modified.
+	 * </p>
+	 */
+	public ByteBuffer getWindow(long fileIndex, int minLength);
+
 	/**
 	 * Returns the number of bytes in the file
 	 */
@@ -92,6 +117,13 @@ public interface ByteReader {
 	 */
 	public int getNumHits();
 
+	/**
+	 * Checks whether the file contains the byte at <code>fileIndex</code>.
+	 * Unlike {@link #getNumBytes()} the file is read only up to
+	 * <code>fileIndex</code>.
+	 */
+	public boolean hasByte(long fileIndex);
+
 	/**
 	 * Checks whether the file has yet been classified
 	 */
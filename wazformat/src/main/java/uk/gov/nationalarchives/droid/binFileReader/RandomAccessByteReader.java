@@ -1,11 +1,22 @@
 package uk.gov.nationalarchives.droid.binFileReader;
 
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 import com.gc.iotools.fmt.base.ResettableInputStream;
 
 /**
+ * <p>
+ * ByteReader on a {@link ResettableInputStream}. It keeps a window of
+ * {@value #BUFFER_MAX_SIZE} bytes of the stream in memory.
+ * </p>
+ * <p>
+ * The length of the stream is computed lazily: the stream is read only as
+ * far as the signatures require. It is read to the end only when
+ * {@link #getNumBytes()} is called (for instance to evaluate an EOF anchored
+ * sequence) and the length was not supplied in the constructor.
+ * </p>
+ *
  * @author dvd.smt
  */
 public final class RandomAccessByteReader extends AbstractByteReader {
@@ -14,58 +25,90 @@ public final class RandomAccessByteReader extends AbstractByteReader {
 
 	private final byte[] buffer = new byte[BUFFER_MAX_SIZE];
 
+	/**
+	 * Number of valid bytes in the buffer.
+	 */
+	private int bufferLength = 0;
+
 	private long bufferStartOffset = 0;
 	private long fileMarker = 0;
 
-	private final long len;
+	/**
+	 * Length of the stream, -1 if not yet known.
+	 */
+	private long len;
+	/**
+	 * Position of the underlying stream.
+	 */
 	private long position = 0;
 	private final ResettableInputStream ras;
 
 	public RandomAccessByteReader(final IdentificationFile theIDFile,
 			final ResettableInputStream stream) throws IOException {
+		this(theIDFile, stream, -1);
+	}
+
+	/**
+	 * @param theIDFile
+	 *            the identification file that collects the hits.
+	 * @param stream
+	 *            the stream to identify.
+	 * @param length
+	 *            length of the stream if known in advance (file size,
+	 *            Content-Length), -1 otherwise.
+	 * @throws IOException
+	 *             if the stream can't be reset.
+	 */
+	public RandomAccessByteReader(final IdentificationFile theIDFile,
+			final ResettableInputStream stream, final long length)
+			throws IOException {
 		super(theIDFile);
 		this.ras = stream;
-		this.len = getSize(stream);
+		this.len = (length < 0 ? -1 : length);
 		this.ras.resetToBeginning();
 		this.position = 0;
 	}
 
+	/**
+	 * Loads in the buffer the window around <code>fileIndex</code>. If the
+	 * end of the stream is met the length becomes known.
+	 */
+	private void fillBuffer(final long fileIndex) throws IOException {
+		final long startIndex = Math.max(0, fileIndex - (BUFFER_MAX_SIZE / 2));
+		int copyLen = 0;
+		if ((this.position == this.bufferStartOffset + this.bufferLength)
+				&& (this.bufferStartOffset <= startIndex)
+				&& (this.position > startIndex)) {
+			// some part of the buffer was already read.
+			copyLen = (int) (this.position - startIndex);
+			System.arraycopy(this.buffer,
+					(int) (startIndex - this.bufferStartOffset), this.buffer,
+					0, copyLen);
+		} else {
+			seek(startIndex);
+		}
+		this.bufferStartOffset = startIndex;
+		this.bufferLength = copyLen;
+		if (this.position == startIndex + copyLen) {
+			final int read = readLenBytes(copyLen);
+			this.position += read;
+			this.bufferLength += read;
+			if ((this.len < 0) && (this.bufferLength < BUFFER_MAX_SIZE)) {
+				this.len = this.position;
+			}
+		}
+	}
+
 	@Override
 	public byte getByte(final long fileIndex) {
-		if (fileIndex >= this.len) {
-			throw new ArrayIndexOutOfBoundsException("Read position["
-					+ fileIndex + "] is above EOF");
-		}
-		byte result;
-		if (this.bufferStartOffset <= fileIndex
-				&& fileIndex < (this.bufferStartOffset + this.buffer.length)) {
-			result = this.buffer[(int) (fileIndex - this.bufferStartOffset)];
-		} else {
-			try {
-				final long startIndex = Math.max(0, fileIndex
-						- (BUFFER_MAX_SIZE / 2));
-				if (this.position > startIndex
-						&& this.position < (startIndex + BUFFER_MAX_SIZE)) {
-					// some part of the buffer was already read.
-					final int copyLen = (int) (this.position - startIndex);
-					System.arraycopy(this.buffer,
-							(int) (startIndex - this.bufferStartOffset),
-							this.buffer, 0, copyLen);
-					final int read = readLenBytes(copyLen);
-					this.position += read;
-				} else {
-					seek(startIndex);
-					final int read = readLenBytes(0);
-					this.position = startIndex + read;
-				}
-				this.bufferStartOffset = startIndex;
-				result = this.buffer[(int) (fileIndex - this.bufferStartOffset)];
-			} catch (final IOException e) {
-				throw new IllegalStateException("Read position[" + fileIndex
-						+ "] had exception.", e);
+		if ((this.bufferStartOffset > fileIndex)
+				|| (fileIndex >= this.bufferStartOffset + this.bufferLength)) {
+			if (!hasByte(fileIndex)) {
+				throw new ArrayIndexOutOfBoundsException("Read position["
+						+ fileIndex + "] is above EOF");
 			}
 		}
-		return result;
+		return this.buffer[(int) (fileIndex - this.bufferStartOffset)];
 	}
 
 	@Override
@@ -73,26 +116,89 @@ public final class RandomAccessByteReader extends AbstractByteReader {
 		return this.fileMarker;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * If the length was not supplied and the end of the stream was not met
+	 * yet, the stream is read to the end.
+	 * </p>
+	 */
 	@Override
 	public long getNumBytes() {
+		if (this.len < 0) {
+			try {
+				this.position += skipFully(Long.MAX_VALUE);
+			} catch (final IOException e) {
+				throw new IllegalStateException("Can't compute length.", e);
+			}
+			this.len = this.position;
+		}
 		return this.len;
 	}
 
-	private long getSize(final InputStream stream) throws IOException {
-		long curPos = 0;
-		int readLen = 0;
-		final byte[] buf = new byte[8192];
-		while (readLen >= 0) {
-			readLen = stream.read(buf, 0, buf.length);
-			if (curPos < this.buffer.length && readLen >= 0) {
-				System.arraycopy(buf, 0, this.buffer, (int) curPos,
-						Math.min(readLen, this.buffer.length - (int) curPos));
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The window is the internal buffer, it is overwritten when the reader
+	 * moves: <code>minLength</code> is capped to half of its size.
+	 * </p>
+	 */
+	@Override
+	public ByteBuffer getWindow(final long fileIndex, final int minLength) {
+		final int length = Math.min(Math.max(minLength, 1),
+				BUFFER_MAX_SIZE / 2);
+		final boolean inFile = (fileIndex >= 0)
+				&& ((this.len < 0) || (fileIndex < this.len));
+		final long bufferEnd = this.bufferStartOffset + this.bufferLength;
+		if (inFile
+				&& ((fileIndex < this.bufferStartOffset) || ((fileIndex
+						+ length > bufferEnd) && (bufferEnd != this.len)))) {
+			try {
+				fillBuffer(fileIndex);
+			} catch (final IOException e) {
+				throw new IllegalStateException("Read position[" + fileIndex
+						+ "] had exception.", e);
 			}
-			if (readLen > 0) {
-				curPos += readLen;
+		}
+		ByteBuffer result;
+		if (inFile && (this.bufferStartOffset <= fileIndex)
+				&& (fileIndex < this.bufferStartOffset + this.bufferLength)) {
+			result = ByteBuffer.wrap(this.buffer, 0, this.bufferLength);
+			result.position((int) (fileIndex - this.bufferStartOffset));
+		} else {
+			result = ByteBuffer.wrap(new byte[0]);
+		}
+		return result;
+	}
+
+	@Override
+	public boolean hasByte(final long fileIndex) {
+		boolean result;
+		if (fileIndex < 0) {
+			result = false;
+		} else if ((this.bufferStartOffset <= fileIndex)
+				&& (fileIndex < this.bufferStartOffset + this.bufferLength)) {
+			result = true;
+		} else if (this.len >= 0 && fileIndex >= this.len) {
+			result = false;
+		} else {
+			try {
+				fillBuffer(fileIndex);
+			} catch (final IOException e) {
+				throw new IllegalStateException("Read position[" + fileIndex
+						+ "] had exception.", e);
 			}
+			result = (fileIndex < this.bufferStartOffset + this.bufferLength);
 		}
-		return curPos;
+		return result;
+	}
+
+	/**
+	 * @return <code>true</code> if the length of the stream is known without
+	 *         further reading.
+	 */
+	public boolean isLengthKnown() {
+		return this.len >= 0;
 	}
 
 	public int readLenBytes(final int copyLen) throws IOException {
@@ -110,19 +216,21 @@ public final class RandomAccessByteReader extends AbstractByteReader {
 		return read;
 	}
 
+	/**
+	 * Moves the stream to <code>fileIndex</code> or to EOF if the stream is
+	 * shorter.
+	 */
 	private void seek(final long fileIndex) throws IOException {
-		if (fileIndex > this.position) {
-			final long skip = this.ras.skip(fileIndex - this.position);
-			if (skip != fileIndex - this.position) {
-				throw new ArrayIndexOutOfBoundsException();
-			}
-		} else if (fileIndex < this.position) {
+		if (fileIndex < this.position) {
 			this.ras.resetToBeginning();
-			if (fileIndex > 0) {
-				final long l = this.ras.skip(fileIndex);
-				if (l != fileIndex) {
-					throw new IOException();
-				}
+			this.position = 0;
+		}
+		if (fileIndex > this.position) {
+			final long toSkip = fileIndex - this.position;
+			final long skipped = skipFully(toSkip);
+			this.position += skipped;
+			if ((skipped < toSkip) && (this.len < 0)) {
+				this.len = this.position;
 			}
 		}
 	}
@@ -131,4 +239,43 @@ public final class RandomAccessByteReader extends AbstractByteReader {
 	public void setFileMarker(final long markerPosition) {
 		this.fileMarker = markerPosition;
 	}
+
+	/**
+	 * Skips <code>n</code> bytes or up to EOF. Returns the bytes skipped.
+	 * <p>
+	 * {@link java.io.InputStream#skip(long)} is used only when the length is
+	 * known: some streams (<code>FileInputStream</code>) skip past EOF without
+	 * notice, so an unknown length is found reading the stream.
+	 * </p>
+	 */
+	private long skipFully(final long n) throws IOException {
+		long skipped = 0;
+		boolean eof = false;
+		if (this.len >= 0) {
+			final long toSkip = Math.min(n, this.len - this.position);
+			while ((skipped < toSkip) && !eof) {
+				final long s = this.ras.skip(toSkip - skipped);
+				if (s > 0) {
+					skipped += s;
+				} else if (this.ras.read() >= 0) {
+					// skip() can return 0 before EOF.
+					skipped++;
+				} else {
+					eof = true;
+				}
+			}
+		} else {
+			final byte[] buf = new byte[BUFFER_MAX_SIZE];
+			while ((skipped < n) && !eof) {
+				final int r = this.ras.read(buf, 0,
+						(int) Math.min(buf.length, n - skipped));
+				if (r >= 0) {
+					skipped += r;
+				} else {
+					eof = true;
+				}
+			}
+		}
+		return skipped;
+	}
 }
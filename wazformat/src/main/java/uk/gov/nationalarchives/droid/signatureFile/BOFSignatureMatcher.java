@@ -0,0 +1,290 @@
+package uk.gov.nationalarchives.droid.signatureFile;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import uk.gov.nationalarchives.droid.binFileReader.ByteReader;
+
+/**
+ * <p>
+ * Aho-Corasick automaton built on the main sequences of the BOF anchored
+ * subsequences of a list of internal signatures.
+ * </p>
+ * <p>
+ * One pass on the beginning of the file finds the signatures that can be
+ * compliant: when the first subsequence of a <code>BOFoffset</code> byte
+ * sequence doesn't occur before its maximum offset the signature is
+ * discarded without running the fragment logic. Signatures that can't be
+ * filtered this way (no BOF sequence, indirect offsets, offsets larger than
+ * {@value #MAX_SCAN_OFFSET}) are always candidates.
+ * </p>
+ * <p>
+ * Instances are immutable and can be shared by many threads.
+ * </p>
+ *
+ * @author dvd.smnt
+ */
+final class BOFSignatureMatcher {
+
+	/**
+	 * Signatures whose BOF sequence can start after this offset are not
+	 * filtered: the scan would read too much of the file.
+	 */
+	static final int MAX_SCAN_OFFSET = 4096;
+
+	private static final int[] NO_OUTPUT = new int[0];
+
+	/**
+	 * Signatures not filtered by the automaton.
+	 */
+	private final boolean[] alwaysCandidate;
+
+	private final byte[][] childBytes;
+	private final int[][] childStates;
+	private final int[] fail;
+
+	/**
+	 * Signatures filtered by the automaton, in decreasing order of
+	 * {@link #scanEnd}.
+	 */
+	private final int[] filtered;
+	/**
+	 * For each state the signatures whose sequence ends in the state.
+	 */
+	private final int[][] output;
+
+	/**
+	 * Transitions of the root state.
+	 */
+	private final int[] rootNext = new int[256];
+	/**
+	 * For each signature the last position where its sequence can start.
+	 */
+	private final long[] startBound;
+	/**
+	 * For each signature the position where the scan can stop.
+	 */
+	private final long[] scanEnd;
+	private final int[] sequenceLength;
+
+	BOFSignatureMatcher(final List<InternalSignature> signatures) {
+		final int n = signatures.size();
+		this.alwaysCandidate = new boolean[n];
+		this.startBound = new long[n];
+		this.scanEnd = new long[n];
+		this.sequenceLength = new int[n];
+		final List<byte[]> childBytesList = new ArrayList<byte[]>();
+		final List<int[]> childStatesList = new ArrayList<int[]>();
+		final List<int[]> outputList = new ArrayList<int[]>();
+		// root
+		childBytesList.add(new byte[0]);
+		childStatesList.add(new int[0]);
+		outputList.add(NO_OUTPUT);
+		final List<Integer> filteredList = new ArrayList<Integer>();
+		for (int i = 0; i < n; i++) {
+			final SubSequence bof = getBOFSubSequence(signatures.get(i));
+			final long bound = (bof == null ? Long.MAX_VALUE
+					: getStartBound(bof));
+			if (bound > MAX_SCAN_OFFSET) {
+				this.alwaysCandidate[i] = true;
+			} else {
+				this.startBound[i] = bound;
+				this.sequenceLength[i] = bof.getNumBytes();
+				this.scanEnd[i] = bound + bof.getNumBytes();
+				filteredList.add(Integer.valueOf(i));
+				addSequence(bof, i, childBytesList, childStatesList,
+						outputList);
+			}
+		}
+		this.childBytes = childBytesList.toArray(new byte[childBytesList
+				.size()][]);
+		this.childStates = childStatesList.toArray(new int[childStatesList
+				.size()][]);
+		this.fail = new int[this.childBytes.length];
+		this.output = outputList.toArray(new int[outputList.size()][]);
+		buildFailureLinks();
+		Collections.sort(filteredList, new Comparator<Integer>() {
+			@Override
+			public int compare(final Integer o1, final Integer o2) {
+				final long e1 = BOFSignatureMatcher.this.scanEnd[o1
+						.intValue()];
+				final long e2 = BOFSignatureMatcher.this.scanEnd[o2
+						.intValue()];
+				return (e1 > e2 ? -1 : (e1 == e2 ? 0 : 1));
+			}
+		});
+		this.filtered = new int[filteredList.size()];
+		for (int i = 0; i < this.filtered.length; i++) {
+			this.filtered[i] = filteredList.get(i).intValue();
+		}
+	}
+
+	/**
+	 * Returns the first subsequence of the <code>BOFoffset</code> byte
+	 * sequence of the signature or <code>null</code> if there is none.
+	 */
+	private static SubSequence getBOFSubSequence(final InternalSignature sig) {
+		SubSequence result = null;
+		for (int i = 0; (i < sig.getNumByteSequences()) && (result == null); i++) {
+			final ByteSequence seq = sig.getByteSequence(i);
+			if ("BOFoffset".equals(seq.getReference())
+					&& (seq.getNumSubSequences() > 0)) {
+				final SubSequence sub = seq.getSubSequence(0);
+				if ((sub.getSequence() != null) && (sub.getNumBytes() > 0)) {
+					result = sub;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Upper bound of the position where the main sequence of a BOF
+	 * subsequence can start: the maximum offset of the subsequence plus
+	 * offsets and lengths of all its left fragments.
+	 */
+	private static long getStartBound(final SubSequence bof) {
+		long bound = Math.max(bof.getMinSeqOffset(), bof.getMaxSeqOffset());
+		for (int pos = 1; pos <= bof.getNumFragmentPositions(true); pos++) {
+			for (int alt = 0; alt < bof.getNumAlternativeFragments(true, pos); alt++) {
+				final SideFragment frag = bof.getFragment(true, pos, alt);
+				bound += Math.max(0,
+						Math.max(frag.getMinOffset(), frag.getMaxOffset()))
+						+ frag.getNumBytes();
+			}
+		}
+		return bound;
+	}
+
+	private static int indexOf(final byte[] bytes, final byte b) {
+		int result = -1;
+		for (int i = 0; (i < bytes.length) && (result < 0); i++) {
+			if (bytes[i] == b) {
+				result = i;
+			}
+		}
+		return result;
+	}
+
+	private static int[] union(final int[] a, final int[] b) {
+		int[] result;
+		if (b.length == 0) {
+			result = a;
+		} else if (a.length == 0) {
+			result = b;
+		} else {
+			result = Arrays.copyOf(a, a.length + b.length);
+			System.arraycopy(b, 0, result, a.length, b.length);
+		}
+		return result;
+	}
+
+	private void addSequence(final SubSequence bof, final int signature,
+			final List<byte[]> childBytesList,
+			final List<int[]> childStatesList, final List<int[]> outputList) {
+		int state = 0;
+		for (int i = 0; i < bof.getNumBytes(); i++) {
+			final byte b = bof.getByte(i);
+			int next = (state == 0 ? this.rootNext[b & 0xff] : 0);
+			if (state != 0) {
+				final int idx = indexOf(childBytesList.get(state), b);
+				next = (idx < 0 ? 0 : childStatesList.get(state)[idx]);
+			}
+			if (next == 0) {
+				next = childBytesList.size();
+				childBytesList.add(new byte[0]);
+				childStatesList.add(new int[0]);
+				outputList.add(NO_OUTPUT);
+				final byte[] bytes = childBytesList.get(state);
+				final byte[] newBytes = Arrays.copyOf(bytes, bytes.length + 1);
+				newBytes[bytes.length] = b;
+				childBytesList.set(state, newBytes);
+				final int[] states = childStatesList.get(state);
+				final int[] newStates = Arrays.copyOf(states, states.length + 1);
+				newStates[states.length] = next;
+				childStatesList.set(state, newStates);
+				if (state == 0) {
+					this.rootNext[b & 0xff] = next;
+				}
+			}
+			state = next;
+		}
+		outputList.set(state,
+				union(outputList.get(state), new int[] { signature }));
+	}
+
+	private void buildFailureLinks() {
+		final int[] queue = new int[this.childBytes.length];
+		int head = 0;
+		int tail = 0;
+		for (final int child : this.childStates[0]) {
+			this.fail[child] = 0;
+			queue[tail++] = child;
+		}
+		while (head < tail) {
+			final int state = queue[head++];
+			for (int i = 0; i < this.childBytes[state].length; i++) {
+				final int child = this.childStates[state][i];
+				this.fail[child] = next(this.fail[state],
+						this.childBytes[state][i]);
+				this.output[child] = union(this.output[child],
+						this.output[this.fail[child]]);
+				queue[tail++] = child;
+			}
+		}
+	}
+
+	/**
+	 * Finds the signatures that can be compliant with the file. The file is
+	 * read only as far as the filtered signatures need.
+	 *
+	 * @param targetFile
+	 *            the file to be identified.
+	 * @return for each signature <code>true</code> if it must be verified.
+	 */
+	boolean[] getCandidates(final ByteReader targetFile) {
+		final boolean[] result = this.alwaysCandidate.clone();
+		// filtered[top] is the not yet found signature that needs the
+		// longest scan.
+		int top = 0;
+		int state = 0;
+		for (long pos = 0; (top < this.filtered.length)
+				&& (pos < this.scanEnd[this.filtered[top]])
+				&& targetFile.hasByte(pos); pos++) {
+			state = next(state, targetFile.getByte(pos));
+			final int[] found = this.output[state];
+			for (int i = 0; i < found.length; i++) {
+				final int sig = found[i];
+				if (!result[sig]
+						&& ((pos - this.sequenceLength[sig] + 1) <= this.startBound[sig])) {
+					result[sig] = true;
+				}
+			}
+			while ((top < this.filtered.length) && result[this.filtered[top]]) {
+				top++;
+			}
+		}
+		return result;
+	}
+
+	private int next(final int from, final byte b) {
+		int state = from;
+		int result = -1;
+		while (result < 0) {
+			if (state == 0) {
+				result = this.rootNext[b & 0xff];
+			} else {
+				final int idx = indexOf(this.childBytes[state], b);
+				if (idx >= 0) {
+					result = this.childStates[state][idx];
+				} else {
+					state = this.fail[state];
+				}
+			}
+		}
+		return result;
+	}
+}
@@ -50,6 +50,10 @@ import uk.gov.nationalarchives.droid.binFileReader.ByteReader;
 public class FFSignatureFile extends SimpleElement {
 	private static final Logger LOG = LoggerFactory
 			.getLogger(FFSignatureFile.class);
+	/**
+	 * Built on first identification, when the signatures are prepared.
+	 */
+	private volatile BOFSignatureMatcher bofMatcher;
 	private String dateCreated = "";
 	private FileFormatCollection fFcollection;
 	private InternalSignatureCollection intSigs;
@@ -67,6 +71,16 @@ public class FFSignatureFile extends SimpleElement {
 		this.intSigs.intSigs.addAll(intSigs);
 	}
 
+	private BOFSignatureMatcher getBOFMatcher() {
+		BOFSignatureMatcher result = this.bofMatcher;
+		if (result == null) {
+			// concurrent initializations build equivalent matchers.
+			result = new BOFSignatureMatcher(getSignatures());
+			this.bofMatcher = result;
+		}
+		return result;
+	}
+
 	public String getDateCreated() {
 		return this.dateCreated;
 	}
@@ -185,8 +199,9 @@ public class FFSignatureFile extends SimpleElement {
 	}
 
 	/**
-	 * Ensure that the BOFs and EOFs are searched for before the variable
-	 * position byte sequences
+	 * Ensure that the BOFs are searched for before the variable position byte
+	 * sequences, and that the EOFs are searched for last: they are the only
+	 * ones that need the length of the file.
 	 */
 	private void reorderByteSequences() {
 		for (int iSig = 0; iSig < getNumInternalSignatures(); iSig++) {
@@ -198,8 +213,7 @@ public class FFSignatureFile extends SimpleElement {
 				final ByteSequence seq = sig.getByteSequence(iBS);
 				if (seq.getReference().startsWith("BOF")) {
 					BOFoffsetByteSequences.add(seq);
-				}
-				if (seq.getReference().startsWith("EOF")) {
+				} else if (seq.getReference().startsWith("EOF")) {
 					EOFoffsetByteSequences.add(seq);
 				} else {
 					variableByteSequences.add(seq);
@@ -207,24 +221,30 @@ public class FFSignatureFile extends SimpleElement {
 			}
 			final List<ByteSequence> byteSequences = new ArrayList<ByteSequence>();
 			byteSequences.addAll(BOFoffsetByteSequences);
-			byteSequences.addAll(EOFoffsetByteSequences);
 			byteSequences.addAll(variableByteSequences);
+			byteSequences.addAll(EOFoffsetByteSequences);
 			sig.resetByteSequences(byteSequences);
 		}
 	}
 
 	/**
-	 * Identify the current file
+	 * Identify the current file. The state of the identification (file
+	 * marker, hits) is kept in <code>targetFile</code>: the signatures are
+	 * only read, so after {@link #prepareForUse()} this method can be called
+	 * concurrently by many threads.
 	 * 
 	 * @param targetFile
 	 *            The binary file to be identified
 	 */
-	public synchronized void runFileIdentification(final ByteReader targetFile) {
+	public void runFileIdentification(final ByteReader targetFile) {
 
 		final List<InternalSignature> signatureList = getSignatures();
+		// signatures whose BOF sequence is missing are not verified
+		final boolean[] candidates = getBOFMatcher().getCandidates(targetFile);
 		// record all positive identifications
-		for (final InternalSignature internalSig : signatureList) {
-			if (internalSig.isFileCompliant(targetFile)) {
+		for (int iSig = 0; iSig < signatureList.size(); iSig++) {
+			final InternalSignature internalSig = signatureList.get(iSig);
+			if (candidates[iSig] && internalSig.isFileCompliant(targetFile)) {
 				// File matches this internal signature
 				targetFile.setPositiveIdent();
 				for (int i = 0; i < internalSig.getNumFileFormats(); i++) {
@@ -109,8 +109,8 @@ public class InternalSignature extends SimpleElement {
 	}
 
 	/**
-	 * Reset the bytesequences after reordering (to ensure BOF and EOF
-	 * sequences are checked first
+	 * Reset the bytesequences after reordering (to ensure BOF sequences are
+	 * checked first and EOF sequences last)
 	 * 
 	 * @param byteSequences
 	 */
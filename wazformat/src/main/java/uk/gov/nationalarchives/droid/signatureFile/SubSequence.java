@@ -25,6 +25,7 @@
  */
 package uk.gov.nationalarchives.droid.signatureFile;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -43,6 +44,73 @@ import uk.gov.nationalarchives.droid.binFileReader.ByteReader;
  * @version 4.0.0
  */
 public class SubSequence extends SimpleElement {
+	/**
+	 * Bytes of the file obtained from
+	 * {@link ByteReader#getWindow(long, int)}, compared directly with the
+	 * sequence. The window is invalidated whenever the reader is called
+	 * directly, since the reader can then reuse its array.
+	 */
+	private static final class FileWindow {
+		private byte[] array = new byte[0];
+		/**
+		 * File position of <code>array[0]</code>.
+		 */
+		private long base = 0;
+		private long high = 0;
+		private long low = 0;
+
+		private boolean covers(final long from, final int length) {
+			return (from >= this.low) && (from + length <= this.high);
+		}
+
+		private byte getByte(final ByteReader targetFile, final long fileIndex) {
+			invalidate();
+			return targetFile.getByte(fileIndex);
+		}
+
+		private boolean hasByte(final ByteReader targetFile,
+				final long fileIndex) {
+			boolean result = covers(fileIndex, 1);
+			if (!result) {
+				invalidate();
+				result = targetFile.hasByte(fileIndex);
+			}
+			return result;
+		}
+
+		private int index(final long fileIndex) {
+			return (int) (fileIndex - this.base);
+		}
+
+		private void invalidate() {
+			this.low = 0;
+			this.high = 0;
+		}
+
+		/**
+		 * Returns <code>true</code> if the bytes of the file from
+		 * <code>from</code> to <code>from + length</code> are in the window,
+		 * asking them to the reader if needed.
+		 */
+		private boolean load(final ByteReader targetFile, final long from,
+				final int length) {
+			if ((from >= 0) && !covers(from, length)) {
+				final ByteBuffer bytes = targetFile.getWindow(from, length);
+				this.array = bytes.array();
+				this.low = from - bytes.position();
+				this.base = this.low - bytes.arrayOffset();
+				this.high = this.low + bytes.limit();
+			}
+			return covers(from, length);
+		}
+	}
+
+	/**
+	 * Right boundary of a forward search when the length of the file is not
+	 * needed: the search stops at the first byte the file doesn't have.
+	 */
+	private static final long UNKNOWN_EOF = Long.MAX_VALUE / 2;
+
 	private static final Logger LOG = LoggerFactory
 			.getLogger(SubSequence.class);
 	static boolean showProgress = false;
@@ -452,10 +520,12 @@ public class SubSequence extends SimpleElement {
 		while ((!subSeqFound)
 				&& ((searchDirectionL)
 						* (lastStartPosInFile - startPosInFile) >= 0L)) {
-			boolean missMatchFound = false;
-			if (searchDirection == -1) {
-			} else {
+			if ((searchDirection == 1)
+					&& !targetFile.hasByte(startPosInFile + numBytes - 1L)) {
+				// the end of the file was reached.
+				break;
 			}
+			boolean missMatchFound = false;
 			final SideFragment fragment = getFragment(leftFrag, fragPos,
 					fragIndex);
 			long tempFileMarker = startPosInFile;
@@ -668,7 +738,6 @@ public class SubSequence extends SimpleElement {
 			final boolean reverseOrder, final boolean bigEndian) {
 		boolean subSeqFound = false;
 		try {
-			final long fileSize = targetFile.getNumBytes() - 1;
 			final int searchDirection = reverseOrder ? -1 : 1;
 			// get the current file marker
 			long startPosInFile = targetFile.getFileMarker();
@@ -677,7 +746,8 @@ public class SubSequence extends SimpleElement {
 			// marker accordingly
 			startPosInFile = startPosInFile
 					+ (searchDirection * getMinSeqOffset());
-			if (fileSize < startPosInFile - 1) {
+			if ((startPosInFile > 0L)
+					&& !targetFile.hasByte(startPosInFile - 1)) {
 				// We're looking for a sequence of bytes at an offset which is
 				// longer than the file itself
 				return false;
@@ -694,6 +764,7 @@ public class SubSequence extends SimpleElement {
 			final int byteLoopStart = reverseOrder ? numSeqBytes - 1 : 0;
 			final int byteLoopEnd = reverseOrder ? 0 : numSeqBytes - 1;
 
+			final FileWindow window = new FileWindow();
 			try {
 				while (!subSeqFound) {
 
@@ -701,6 +772,13 @@ public class SubSequence extends SimpleElement {
 					// fileMarker
 					// position
 					missMatchFound = false;
+					// file position of byteSequence[0]. When the compared
+					// bytes and the one used for the shift are in the window
+					// they are read from its array.
+					final long first = startPosInFile - byteLoopStart;
+					final boolean inWindow = window.load(targetFile,
+							reverseOrder ? first - 1 : first, numSeqBytes + 1);
+					final int firstIndex = window.index(first);
 
 					// Start by checking the last byte in the window on the
 					// file.
@@ -712,21 +790,31 @@ public class SubSequence extends SimpleElement {
 					// In practice, this saves us from unnecessarily checking
 					// file
 					// bytes to calculate the shift.
-					final byte lastByte = targetFile.getByte(startPosInFile
-							+ byteLoopEnd);
+					final byte lastByte = inWindow ? window.array[firstIndex
+							+ numSeqBytes - 1] : window.getByte(targetFile,
+							startPosInFile + byteLoopEnd);
 					if (this.byteSequence[byteLoopEnd] != lastByte) {
 						startPosInFile += (this.shiftFunction[128 + lastByte] - 1);
-						if ((startPosInFile < 0L)
-								|| (startPosInFile > fileSize)) {
+						if (!window.hasByte(targetFile, startPosInFile)) {
 							break;
 						}
 					} else {
 						// If the last bytes don't match, then check the rest.
-						for (int iByte = byteLoopStart; (!missMatchFound)
-								&& (iByte <= numSeqBytes - 1) && (iByte >= 0); iByte += searchDirection) {
-							missMatchFound = (this.byteSequence[iByte] != targetFile
-									.getByte(startPosInFile + iByte
-											- byteLoopStart));
+						if (inWindow) {
+							final byte[] fileBytes = window.array;
+							for (int iByte = 0; (!missMatchFound)
+									&& (iByte < numSeqBytes); iByte++) {
+								missMatchFound = (this.byteSequence[iByte] != fileBytes[firstIndex
+										+ iByte]);
+							}
+						} else {
+							for (int iByte = byteLoopStart; (!missMatchFound)
+									&& (iByte <= numSeqBytes - 1)
+									&& (iByte >= 0); iByte += searchDirection) {
+								missMatchFound = (this.byteSequence[iByte] != window
+										.getByte(targetFile, startPosInFile
+												+ iByte - byteLoopStart));
+							}
 						}
 						if (!missMatchFound) { // subsequence was found at
 												// position
@@ -734,6 +822,7 @@ public class SubSequence extends SimpleElement {
 							// Now search for fragments between original
 							// fileMarker
 							// and startPosInFile
+							window.invalidate();
 							if (reverseOrder) {
 								final long[] rightFragEndArray = bytePosForRightFragments(
 										targetFile, startPosInFile + 1,
@@ -768,9 +857,8 @@ public class SubSequence extends SimpleElement {
 									long rightFragEnd;
 									final long[] rightFragEndArray = bytePosForRightFragments(
 											targetFile, startPosInFile
-													+ numSeqBytes,
-											targetFile.getNumBytes() - 1L, 1,
-											0, bigEndian);
+													+ numSeqBytes, UNKNOWN_EOF,
+											1, 0, bigEndian);
 									if (rightFragEndArray.length == 0) {
 										missMatchFound = true;
 									} else {
@@ -790,11 +878,17 @@ public class SubSequence extends SimpleElement {
 							// of the file byte occuring one place after the
 							// window
 							// position.
-							startPosInFile += this.shiftFunction[128 + targetFile
-									.getByte(startPosInFile
-											+ (searchDirection * numSeqBytes))];
-							if ((startPosInFile < 0L)
-									|| (startPosInFile > fileSize)) {
+							final byte nextByte;
+							if (inWindow) {
+								nextByte = window.array[reverseOrder ? firstIndex - 1
+										: firstIndex + numSeqBytes];
+							} else {
+								nextByte = window.getByte(targetFile,
+										startPosInFile
+												+ (searchDirection * numSeqBytes));
+							}
+							startPosInFile += this.shiftFunction[128 + nextByte];
+							if (!window.hasByte(targetFile, startPosInFile)) {
 								break;
 							}
 						}
@@ -866,7 +960,7 @@ public class SubSequence extends SimpleElement {
 						bigEndian);
 			} else {
 				startPosInFile = bytePosForLeftFragments(targetFile,
-						startPosInFile[0], targetFile.getNumBytes() - 1, 1,
+						startPosInFile[0], UNKNOWN_EOF, 1,
 						(maxSeqOffset - minSeqOffset), bigEndian);
 			}
 			int numOptions = startPosInFile.length;
@@ -932,7 +1026,6 @@ public class SubSequence extends SimpleElement {
 
 				// check that the end of the file is not going to be reached
 				final int numSeqBytes = getNumBytes();
-				final long numBytesInFile = targetFile.getNumBytes();
 				if (reverseOrder) {
 					// cutoff if startPosInFile is too close to start of file
 					for (int i = 0; i < numOptions; i++) {
@@ -943,12 +1036,14 @@ public class SubSequence extends SimpleElement {
 				} else {
 					// cutoff if startPosInFile is too close to end of file
 					for (int i = 0; i < numOptions; i++) {
-						if (startPosInFile[i] > (numBytesInFile - numSeqBytes)) {
+						if (!targetFile.hasByte(startPosInFile[i] + numSeqBytes
+								- 1L)) {
 							numOptions = i;
 						}
 					}
 				}
 
+				final FileWindow window = new FileWindow();
 				for (int iOption = 0; iOption < numOptions; iOption++) {
 					// compare sequence with file contents directly at
 					// fileMarker position
@@ -958,11 +1053,23 @@ public class SubSequence extends SimpleElement {
 					boolean provSeqMatch = true;
 
 					// check whether the file and signature sequences match
-					for (int iByte = byteLoopStart; (provSeqMatch)
-							&& (iByte <= numSeqBytes - 1) && (iByte >= 0); iByte += searchDirection) {
-						provSeqMatch = (this.byteSequence[iByte] == targetFile
-								.getByte(tempFileMarker));
-						tempFileMarker += searchDirection;
+					final long first = tempFileMarker - byteLoopStart;
+					if (window.load(targetFile, first, numSeqBytes)) {
+						final byte[] fileBytes = window.array;
+						final int firstIndex = window.index(first);
+						for (int iByte = 0; provSeqMatch
+								&& (iByte < numSeqBytes); iByte++) {
+							provSeqMatch = (this.byteSequence[iByte] == fileBytes[firstIndex
+									+ iByte]);
+						}
+						tempFileMarker += searchDirection * numSeqBytes;
+					} else {
+						for (int iByte = byteLoopStart; (provSeqMatch)
+								&& (iByte <= numSeqBytes - 1) && (iByte >= 0); iByte += searchDirection) {
+							provSeqMatch = (this.byteSequence[iByte] == window
+									.getByte(targetFile, tempFileMarker));
+							tempFileMarker += searchDirection;
+						}
 					}
 
 					if (!provSeqMatch) {
@@ -1040,9 +1147,8 @@ public class SubSequence extends SimpleElement {
 					subseqFound = false;
 					while ((i < numOptions) && !subseqFound) {
 						newArrayStartPosInFile = bytePosForRightFragments(
-								targetFile, startPosInFile[i],
-								targetFile.getNumBytes() - 1L, 1, 0,
-								bigEndian);
+								targetFile, startPosInFile[i], UNKNOWN_EOF, 1,
+								0, bigEndian);
 						if (newArrayStartPosInFile.length == 0) {
 							subseqFound = false;
 						} else {
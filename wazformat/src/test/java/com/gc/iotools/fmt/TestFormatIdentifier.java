@@ -0,0 +1,144 @@
+package com.gc.iotools.fmt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import com.gc.iotools.fmt.FormatIdentifier.IdentificationListener;
+import com.gc.iotools.fmt.FormatIdentifier.StreamSource;
+import com.gc.iotools.fmt.base.DetectionLibrary;
+import com.gc.iotools.fmt.base.FormatEnum;
+import com.gc.iotools.fmt.base.FormatId;
+import com.gc.iotools.fmt.detect.droid.DroidDetectorImpl;
+import com.gc.iotools.fmt.detect.wzf.StreamDetectorImpl;
+
+public class TestFormatIdentifier {
+
+	private static final class CollectingListener<T> implements
+			IdentificationListener<T> {
+		private final Map<T, IOException> failed = new ConcurrentHashMap<T, IOException>();
+		private final Map<T, FormatId[]> identified = new ConcurrentHashMap<T, FormatId[]>();
+
+		@Override
+		public void failed(final T source, final IOException e) {
+			this.failed.put(source, e);
+		}
+
+		@Override
+		public void identified(final T source, final FormatId[] formats) {
+			this.identified.put(source, formats);
+		}
+	}
+
+	private static final class NamedSource implements StreamSource {
+		private final byte[] content;
+
+		NamedSource(final String content) {
+			this.content = content.getBytes();
+		}
+
+		@Override
+		public InputStream openStream() throws IOException {
+			return new ByteArrayInputStream(this.content);
+		}
+	}
+
+	private static List<File> getTestFiles() {
+		final File dir = new File(TestFormatIdentifier.class.getResource(
+				"/testFiles").getPath());
+		final List<File> result = new ArrayList<File>();
+		for (final File file : dir.listFiles()) {
+			if (file.isFile()) {
+				result.add(file);
+			}
+		}
+		return result;
+	}
+
+	@Test
+	public void testIdentifyFiles() throws Exception {
+		final List<File> files = getTestFiles();
+		final File missing = new File(files.get(0).getParentFile(),
+				"missing.file");
+		final Collection<File> batch = new ArrayList<File>(files);
+		batch.add(missing);
+		final CollectingListener<File> listener = new CollectingListener<File>();
+		new FormatIdentifier().identifyFiles(batch, listener);
+		assertEquals("identified", files.size(), listener.identified.size());
+		assertEquals("failed", 1, listener.failed.size());
+		assertTrue("missing file",
+				listener.failed.get(missing) instanceof FileNotFoundException);
+		for (final File file : files) {
+			final GuessInputStream gis = GuessInputStream
+					.getInstance(new FileInputStream(file));
+			assertEquals("format of [" + file.getName() + "]",
+					gis.getFormat(), listener.identified.get(file)[0].format);
+			gis.close();
+		}
+	}
+
+	@Test
+	public void testIdentifyPaths() throws Exception {
+		final List<Path> paths = new ArrayList<Path>();
+		for (final File file : getTestFiles()) {
+			paths.add(file.toPath());
+		}
+		final Path missing = paths.get(0).resolveSibling("missing.file");
+		final Collection<Path> batch = new ArrayList<Path>(paths);
+		batch.add(missing);
+		final CollectingListener<Path> listener = new CollectingListener<Path>();
+		final FormatIdentifier identifier = new FormatIdentifier();
+		identifier.identifyPaths(batch, listener);
+		assertEquals("identified", paths.size(), listener.identified.size());
+		assertEquals("failed", 1, listener.failed.size());
+		assertTrue("missing file",
+				listener.failed.get(missing) instanceof NoSuchFileException);
+		for (final Path path : paths) {
+			assertEquals("format of [" + path.getFileName() + "]",
+					identifier.identify(path.toFile())[0].format,
+					listener.identified.get(path)[0].format);
+		}
+	}
+
+	@Test
+	public void testIdentifyStreams() throws Exception {
+		final ExecutorService executor = Executors.newFixedThreadPool(3);
+		final FormatIdentifier identifier = new FormatIdentifier(
+				new FormatEnum[] { FormatEnum.BASE64, FormatEnum.XML },
+				new DetectionLibrary[] { new StreamDetectorImpl(),
+						new DroidDetectorImpl() }, null, 2, executor);
+		final NamedSource xml = new NamedSource("<?xml version=\"1.0\"?><a/>");
+		final NamedSource b64 = new NamedSource(
+				"PD94bWwgdmVyc2lvbj0iMS4wIj8+PGEvPg==");
+		final NamedSource text = new NamedSource("plain text, not encoded!");
+		final CollectingListener<NamedSource> listener = new CollectingListener<NamedSource>();
+		identifier.identifyStreams(Arrays.asList(xml, b64, text), listener);
+		executor.shutdown();
+		assertEquals("xml", FormatEnum.XML,
+				listener.identified.get(xml)[0].format);
+		final FormatId[] b64Formats = listener.identified.get(b64);
+		assertEquals("base64 depth", 2, b64Formats.length);
+		assertEquals("base64", FormatEnum.BASE64, b64Formats[0].format);
+		assertEquals("base64 content", FormatEnum.XML, b64Formats[1].format);
+		assertEquals("text", FormatEnum.UNKNOWN,
+				listener.identified.get(text)[0].format);
+	}
+}
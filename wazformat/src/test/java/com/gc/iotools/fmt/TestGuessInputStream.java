@@ -6,23 +6,169 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Arrays;
+import java.util.Random;
 
 import net.iharder.Base64;
 
 import org.apache.commons.io.IOUtils;
 import org.jmock.Expectations;
 import org.jmock.integration.junit4.JUnit4Mockery;
+import org.junit.Assume;
 
+import com.gc.iotools.fmt.base.Decoder;
 import com.gc.iotools.fmt.base.DetectionLibrary;
 import com.gc.iotools.fmt.base.FormatEnum;
 import com.gc.iotools.fmt.base.FormatId;
 import com.gc.iotools.fmt.base.ResettableInputStream;
+import com.gc.iotools.fmt.base.TestUtils;
+import com.gc.iotools.fmt.decoders.Base64Decoder;
+import com.gc.iotools.fmt.detect.droid.DroidDetectorImpl;
+import com.gc.iotools.fmt.detect.wzf.StreamDetectorImpl;
+import com.gc.iotools.stream.store.SeekableStore;
+import com.gc.iotools.stream.store.ThresholdStore;
 
 public class TestGuessInputStream extends JUnit4Mockery {
 
+	/**
+	 * Base64 decoder that counts the decoded bytes.
+	 */
+	private static final class CountingDecoder implements Decoder {
+		private final Decoder decoder = new Base64Decoder();
+		private long decoded = 0;
+
+		@Override
+		public InputStream decode(final InputStream istream)
+				throws IOException {
+			return new FilterInputStream(this.decoder.decode(istream)) {
+				@Override
+				public int read() throws IOException {
+					final int result = super.read();
+					if (result >= 0) {
+						CountingDecoder.this.decoded++;
+					}
+					return result;
+				}
+
+				@Override
+				public int read(final byte[] b, final int off, final int len)
+						throws IOException {
+					final int result = super.read(b, off, len);
+					if (result > 0) {
+						CountingDecoder.this.decoded += result;
+					}
+					return result;
+				}
+			};
+		}
+
+		@Override
+		public FormatEnum getFormat() {
+			return FormatEnum.BASE64;
+		}
+	}
+
+	/**
+	 * Store that counts the bytes copied in it. Its temporary files are
+	 * created in a private directory.
+	 */
+	private static final class CountingStore implements SeekableStore {
+		private long copied = 0;
+		private final File directory;
+		private final ThresholdStore store;
+
+		CountingStore(final int threshold) throws IOException {
+			this.directory = File.createTempFile("guess-test", "");
+			this.directory.delete();
+			this.directory.mkdir();
+			this.store = new ThresholdStore(threshold, new File(
+					this.directory, "store.tmp"));
+		}
+
+		@Override
+		public void cleanup() {
+			this.store.cleanup();
+		}
+
+		@Override
+		public int get(final byte[] bytes, final int offset,
+				final int length) throws IOException {
+			return this.store.get(bytes, offset, length);
+		}
+
+		@Override
+		public void put(final byte[] bytes, final int offset,
+				final int length) throws IOException {
+			this.copied += length;
+			this.store.put(bytes, offset, length);
+		}
+
+		@Override
+		public void seek(final long position) throws IOException {
+			this.store.seek(position);
+		}
+	}
+
+	/**
+	 * Reads a random stream of <code>length</code> bytes through a
+	 * GuessInputStream. Returns the bytes copied in the store, the temporary
+	 * files existing after the detection and after reading the content.
+	 */
+	private static long[] readBuffered(final int length,
+			final DetectionLibrary[] detectors) throws IOException {
+		final byte[] reference = new byte[length];
+		new Random().nextBytes(reference);
+		final CountingStore store = new CountingStore(64 * 1024);
+		final GuessInputStream gis = GuessInputStream.getInstance(
+				new FilterInputStream(new ByteArrayInputStream(reference)) {
+					// not a file: it must be buffered.
+				}, null, detectors, null, store);
+		assertEquals("format", FormatEnum.UNKNOWN, gis.getFormat());
+		final int detectionFiles = store.directory.list().length;
+		assertArrayEquals("content", reference, IOUtils.toByteArray(gis));
+		final long[] result = new long[] { store.copied, detectionFiles,
+				store.directory.list().length };
+		gis.close();
+		store.directory.delete();
+		return result;
+	}
+
+	/**
+	 * Identifies a document encoded 4 times in base64. Returns the bytes
+	 * decoded during the identification.
+	 */
+	private static long identifyNested(final byte[] reference,
+			final boolean singlePass) throws IOException {
+		byte[] encoded = reference;
+		for (int i = 0; i < 4; i++) {
+			encoded = Base64.encodeBytes(encoded, Base64.DO_BREAK_LINES)
+					.getBytes("ASCII");
+		}
+		final CountingDecoder decoder = new CountingDecoder();
+		final GuessInputStream gis = GuessInputStream.getInstance(
+				new ByteArrayInputStream(encoded), new FormatEnum[] {
+						FormatEnum.BASE64, FormatEnum.PDF },
+				new DetectionLibrary[] { new StreamDetectorImpl() },
+				new Decoder[] { decoder });
+		gis.setIdentificationDepth(6);
+		gis.setSinglePassDetection(singlePass);
+		gis.decode(true);
+		assertArrayEquals("formats single pass [" + singlePass + "]",
+				new FormatEnum[] { FormatEnum.BASE64, FormatEnum.BASE64,
+						FormatEnum.BASE64, FormatEnum.BASE64, FormatEnum.PDF },
+				gis.getFormats());
+		final long result = decoder.decoded;
+		assertArrayEquals("content single pass [" + singlePass + "]",
+				reference, IOUtils.toByteArray(gis));
+		gis.close();
+		return result;
+	}
+
 	@org.junit.Test
 	public void testRecursion() throws IOException {
 		final InputStream istream = TestGuessInputStream.class
@@ -128,6 +274,30 @@ public class TestGuessInputStream extends JUnit4Mockery {
 		gis.close();
 	}
 
+	/**
+	 * Special files have size 0 but they have content.
+	 */
+	@org.junit.Test
+	public void testSpecialFile() throws IOException {
+		final File file = new File("/proc/self/status");
+		Assume.assumeTrue(file.exists() && (file.length() == 0));
+		final GuessInputStream fromFile = GuessInputStream.getInstance(file);
+		final String content = IOUtils.toString(fromFile, "US-ASCII");
+		fromFile.close();
+		assertTrue("content read [" + content + "]",
+				content.startsWith("Name:"));
+		final GuessInputStream fromStream = GuessInputStream
+				.getInstance(new FileInputStream(file));
+		assertTrue("content read from stream", IOUtils.toString(fromStream,
+				"US-ASCII").startsWith("Name:"));
+		fromStream.close();
+		final GuessInputStream fromPath = GuessInputStream.getInstance(file
+				.toPath());
+		assertTrue("content read from path", IOUtils.toString(fromPath,
+				"US-ASCII").startsWith("Name:"));
+		fromPath.close();
+	}
+
 	@org.junit.Test
 	public void testDecode() throws IOException {
 		final byte[] reference = "<xml>this is xml</xml>".getBytes();
@@ -177,6 +347,69 @@ public class TestGuessInputStream extends JUnit4Mockery {
 		gis.close();
 	}
 
+	@org.junit.Test
+	public void testPipelinedDecoding() throws Exception {
+		final byte[] reference = TestUtils.getXml(1024 * 1024);
+		final GuessInputStream gis = GuessInputStream
+				.getInstance(new ByteArrayInputStream(
+						TestUtils.getSample(reference)));
+		gis.setIdentificationDepth(4);
+		gis.setPipelinedDecoding(true);
+		gis.decode(true);
+		assertArrayEquals("formats", new FormatEnum[] { FormatEnum.BASE64,
+				FormatEnum.PKCS7, FormatEnum.GZ, FormatEnum.XML },
+				gis.getFormats());
+		final byte[] header = new byte[1000];
+		IOUtils.readFully(gis, header);
+		assertArrayEquals("header", Arrays.copyOf(reference, header.length),
+				header);
+		try {
+			gis.setPipelinedDecoding(false);
+			fail("Illegal State exception must be thrown here");
+		} catch (final IllegalStateException e) {
+			// EVERYTHING OK
+		}
+		final byte[] rest = IOUtils.toByteArray(gis);
+		assertArrayEquals("content", Arrays.copyOfRange(reference,
+				header.length, reference.length), rest);
+		gis.close();
+	}
+
+	/**
+	 * The original stream is copied only once, and only while the format
+	 * is detected.
+	 */
+	@org.junit.Test
+	public void testSingleBufferingStage() throws IOException {
+		final int length = 1024 * 1024;
+		// only the header is needed by the detection.
+		final long[] header = readBuffered(length,
+				new DetectionLibrary[] { new StreamDetectorImpl() });
+		assertTrue("bytes copied [" + header[0] + "]",
+				header[0] < 64 * 1024);
+		assertEquals("temp files", 0, header[1]);
+		// droid reads the end of the stream: it is copied once.
+		final long[] whole = readBuffered(length, new DetectionLibrary[] {
+				new StreamDetectorImpl(), new DroidDetectorImpl() });
+		assertEquals("bytes copied", length, whole[0]);
+		assertEquals("temp files", 1, whole[1]);
+		// released once read, before close()
+		assertEquals("temp files after read", 0, whole[2]);
+	}
+
+	@org.junit.Test
+	public void testSinglePassDetection() throws IOException {
+		final StringBuilder document = new StringBuilder("%PDF-1.4\n");
+		for (int i = 0; document.length() < 100000; i++) {
+			document.append("line " + i + " of the document\n");
+		}
+		final byte[] reference = document.toString().getBytes("ASCII");
+		final long layered = identifyNested(reference, false);
+		final long singlePass = identifyNested(reference, true);
+		assertTrue("decoded bytes single pass [" + singlePass
+				+ "] layered [" + layered + "]", singlePass < layered);
+	}
+
 	@org.junit.Test
 	public void testRecursiveDecode() {
 		//TODO
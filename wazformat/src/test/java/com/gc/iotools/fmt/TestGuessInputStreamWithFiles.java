@@ -3,6 +3,7 @@ package com.gc.iotools.fmt;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -70,6 +71,44 @@ public class TestGuessInputStreamWithFiles {
 	public void testTsdDetector() throws Exception {
 		checkDetector(FormatEnum.TSD, new String[] { "tsd" });
 	}
+	/**
+	 * Files read through their channel give the same result as files
+	 * copied by the stream.
+	 */
+	@org.junit.Test
+	public void testFileInstance() throws Exception {
+		final File dir = new File(TestDroidDetector.class.getResource(
+				"/testFiles").getPath());
+		for (final File file : dir.listFiles()) {
+			if (file.isFile()) {
+				final GuessInputStream copied = GuessInputStream
+						.getInstance(new BufferedInputStream(
+								new FileInputStream(file)));
+				final GuessInputStream channel = GuessInputStream
+						.getInstance(file);
+				final GuessInputStream path = GuessInputStream.getInstance(file
+						.toPath());
+				copied.setIdentificationDepth(3);
+				channel.setIdentificationDepth(3);
+				path.setIdentificationDepth(3);
+				assertEquals("formats [" + file.getName() + "]",
+						Arrays.asList(copied.getFormats()),
+						Arrays.asList(channel.getFormats()));
+				assertEquals("path formats [" + file.getName() + "]",
+						Arrays.asList(copied.getFormats()),
+						Arrays.asList(path.getFormats()));
+				final byte[] reference = IOUtils.toByteArray(copied);
+				assertTrue("content [" + file.getName() + "]", Arrays.equals(
+						reference, IOUtils.toByteArray(channel)));
+				assertTrue("path content [" + file.getName() + "]", Arrays
+						.equals(reference, IOUtils.toByteArray(path)));
+				copied.close();
+				channel.close();
+				path.close();
+			}
+		}
+	}
+
 	@org.junit.Test
 	public void testGifDetectorModule() throws Exception {
 		checkDetector(FormatEnum.GIF, new String[] { "gif" });
@@ -0,0 +1,183 @@
+package com.gc.iotools.fmt;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+public class TestResettableFileChannelAdapter {
+
+	/**
+	 * A channel that is not a <code>FileChannel</code>: it can only be read
+	 * at its position.
+	 */
+	private static final class SeekableWrapper implements
+			SeekableByteChannel {
+		private final FileChannel channel;
+
+		SeekableWrapper(final FileChannel channel) {
+			this.channel = channel;
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.channel.close();
+		}
+
+		@Override
+		public boolean isOpen() {
+			return this.channel.isOpen();
+		}
+
+		@Override
+		public long position() throws IOException {
+			return this.channel.position();
+		}
+
+		@Override
+		public SeekableByteChannel position(final long newPosition)
+				throws IOException {
+			this.channel.position(newPosition);
+			return this;
+		}
+
+		@Override
+		public int read(final ByteBuffer dst) throws IOException {
+			return this.channel.read(dst);
+		}
+
+		@Override
+		public long size() throws IOException {
+			return this.channel.size();
+		}
+
+		@Override
+		public SeekableByteChannel truncate(final long size)
+				throws IOException {
+			throw new IOException("read only");
+		}
+
+		@Override
+		public int write(final ByteBuffer src) throws IOException {
+			throw new IOException("read only");
+		}
+	}
+
+	private static File createFile(final byte[] data) throws IOException {
+		final File file = File.createTempFile("iotools-channel", ".bin");
+		file.deleteOnExit();
+		FileUtils.writeByteArrayToFile(file, data);
+		return file;
+	}
+
+	/**
+	 * The bytes appended after the adapter is created are read.
+	 */
+	@Test
+	public void testAppendAfterConstruction() throws IOException {
+		final byte[] data = new byte[20000];
+		new Random().nextBytes(data);
+		final File file = createFile(new byte[0]);
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		final ResettableFileChannelAdapter stream = new ResettableFileChannelAdapter(
+				raf.getChannel());
+		final FileOutputStream fos = new FileOutputStream(file, true);
+		fos.write(data, 0, 5000);
+		fos.flush();
+		assertEquals("first read", data[0], (byte) stream.read());
+		fos.write(data, 5000, data.length - 5000);
+		fos.close();
+		assertEquals("skip", 9999, stream.skip(9999));
+		stream.resetToBeginning();
+		assertArrayEquals("content", data, IOUtils.toByteArray(stream));
+		stream.close();
+		file.delete();
+	}
+
+	@Test
+	public void testRandomAccess() throws IOException {
+		final Random r = new Random();
+		final byte[] data = new byte[100000];
+		r.nextBytes(data);
+		final File file = createFile(data);
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		final int start = 1000;
+		raf.seek(start);
+		final FileChannel channel = raf.getChannel();
+		final ResettableFileChannelAdapter stream = new ResettableFileChannelAdapter(
+				channel);
+		checkRandomAccess(r, data, start, stream);
+		assertEquals("channel position not changed", start,
+				channel.position());
+		stream.close();
+		assertEquals("channel closed", false, channel.isOpen());
+		file.delete();
+	}
+
+	@Test
+	public void testRandomAccessSeekable() throws IOException {
+		final Random r = new Random();
+		final byte[] data = new byte[100000];
+		r.nextBytes(data);
+		final File file = createFile(data);
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		final int start = 1000;
+		raf.seek(start);
+		final FileChannel channel = raf.getChannel();
+		final ResettableFileChannelAdapter stream = new ResettableFileChannelAdapter(
+				new SeekableWrapper(channel));
+		checkRandomAccess(r, data, start, stream);
+		stream.close();
+		assertEquals("channel closed", false, channel.isOpen());
+		file.delete();
+	}
+
+	private static void checkRandomAccess(final Random r, final byte[] data,
+			final int start, final ResettableFileChannelAdapter stream)
+			throws IOException {
+		assertEquals("length", data.length - start, stream.getLength());
+		long position = start;
+		for (int i = 0; i < 3000; i++) {
+			final int op = r.nextInt(4);
+			if (op == 0) {
+				stream.resetToBeginning();
+				position = start;
+			} else if (op == 1) {
+				final long toSkip = r.nextInt(30000);
+				final long skipped = stream.skip(toSkip);
+				assertEquals("skipped at [" + position + "]",
+						Math.min(toSkip, data.length - position), skipped);
+				position += skipped;
+			} else if (op == 2) {
+				final int expected = (position < data.length ? data[(int) position] & 0xff
+						: -1);
+				assertEquals("read() at [" + position + "]", expected,
+						stream.read());
+				position = Math.min(data.length, position + 1);
+			} else {
+				final byte[] b = new byte[r.nextInt(20000) + 1];
+				final int n = stream.read(b);
+				if (position >= data.length) {
+					assertEquals("EOF at [" + position + "]", -1, n);
+				} else {
+					for (int j = 0; j < n; j++) {
+						assertEquals("byte [" + (position + j) + "]",
+								data[(int) position + j], b[j]);
+					}
+					position += n;
+				}
+			}
+		}
+	}
+}
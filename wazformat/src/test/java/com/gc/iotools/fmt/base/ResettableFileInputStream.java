@@ -22,6 +22,11 @@ public class ResettableFileInputStream extends ResettableInputStream {
 		this.currentStream = new FileInputStream(this.file);
 	}
 
+	@Override
+	public long getLength() {
+		return this.file.length();
+	}
+
 	@Override
 	public int available() throws IOException {
 		return this.currentStream.available();
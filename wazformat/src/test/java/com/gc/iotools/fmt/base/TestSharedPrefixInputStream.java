@@ -0,0 +1,120 @@
+package com.gc.iotools.fmt.base;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestSharedPrefixInputStream {
+
+	private static final class CountingStream extends ResettableInputStream {
+		private final byte[] data;
+		private long bytesRead = 0;
+		private int resets = 0;
+		private ByteArrayInputStream stream;
+
+		CountingStream(final byte[] data) {
+			this.data = data;
+			this.stream = new ByteArrayInputStream(data);
+		}
+
+		@Override
+		public int read() throws IOException {
+			final int result = this.stream.read();
+			if (result >= 0) {
+				this.bytesRead++;
+			}
+			return result;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len)
+				throws IOException {
+			final int result = this.stream.read(b, off, len);
+			if (result > 0) {
+				this.bytesRead += result;
+			}
+			return result;
+		}
+
+		@Override
+		public void resetToBeginning() throws IOException {
+			this.resets++;
+			this.stream = new ByteArrayInputStream(this.data);
+		}
+
+		@Override
+		public long skip(final long n) throws IOException {
+			return this.stream.skip(n);
+		}
+	}
+
+	@Test
+	public void testHeaderReadOnce() throws IOException {
+		final byte[] data = new byte[100000];
+		new Random().nextBytes(data);
+		final CountingStream source = new CountingStream(data);
+		final SharedPrefixInputStream stream = new SharedPrefixInputStream(
+				source);
+		for (int i = 0; i < 5; i++) {
+			final byte[] header = new byte[1000];
+			assertEquals("read", header.length, stream.read(header));
+			assertArrayEquals("header", Arrays.copyOf(data, header.length),
+					header);
+			final ByteBuffer prefix = stream.getPrefix(2000);
+			assertEquals("prefix length", 2000, prefix.remaining());
+			assertEquals("prefix content", data[1999],
+					prefix.array()[prefix.arrayOffset() + 1999]);
+			stream.resetToBeginning();
+		}
+		assertEquals("source never reset", 0, source.resets);
+		assertEquals("source read once", 4096, source.bytesRead);
+	}
+
+	@Test
+	public void testRandomAccess() throws IOException {
+		final Random r = new Random();
+		final byte[] data = new byte[200000];
+		r.nextBytes(data);
+		final SharedPrefixInputStream stream = new SharedPrefixInputStream(
+				new CountingStream(data), 10000);
+		long position = 0;
+		for (int i = 0; i < 2000; i++) {
+			final int op = r.nextInt(4);
+			if (op == 0) {
+				stream.resetToBeginning();
+				position = 0;
+			} else if (op == 1) {
+				final long skipped = stream.skip(r.nextInt(30000));
+				position += skipped;
+			} else if (op == 2) {
+				final int expected = (position < data.length ? data[(int) position] & 0xff
+						: -1);
+				assertEquals("read() at [" + position + "]", expected,
+						stream.read());
+				position = Math.min(data.length, position + 1);
+			} else {
+				final byte[] b = new byte[r.nextInt(5000) + 1];
+				final int n = stream.read(b);
+				if (position >= data.length) {
+					assertEquals("EOF at [" + position + "]", -1, n);
+				} else {
+					for (int j = 0; j < n; j++) {
+						assertEquals("byte [" + (position + j) + "]",
+								data[(int) position + j], b[j]);
+					}
+					position += n;
+				}
+			}
+		}
+		assertEquals("short prefix", 100,
+				new SharedPrefixInputStream(new CountingStream(
+						Arrays.copyOf(data, 100))).getPrefix(1000).remaining());
+	}
+}
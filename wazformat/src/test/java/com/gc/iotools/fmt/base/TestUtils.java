@@ -4,6 +4,7 @@ package com.gc.iotools.fmt.base;
  * Copyright (c) 2008,2009 Gabriele Contini. This source code is released
  * under the BSD License.
  */
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -14,8 +15,13 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Vector;
+import java.util.zip.GZIPOutputStream;
+
+import net.iharder.Base64;
 
 import org.apache.commons.io.IOUtils;
+import org.bouncycastle.cms.CMSProcessableByteArray;
+import org.bouncycastle.cms.CMSSignedDataGenerator;
 
 import com.gc.iotools.stream.is.SizeLimitInputStream;
 
@@ -37,6 +43,36 @@ public final class TestUtils {
 		return result;
 	}
 
+	/**
+	 * Encodes <code>content</code> as base64(pkcs7(gzip(content))).
+	 */
+	public static byte[] getSample(final byte[] content) throws Exception {
+		final ByteArrayOutputStream gz = new ByteArrayOutputStream();
+		final GZIPOutputStream gzos = new GZIPOutputStream(gz);
+		gzos.write(content);
+		gzos.close();
+		final byte[] pkcs7 = new CMSSignedDataGenerator().generate(
+				new CMSProcessableByteArray(gz.toByteArray()), true)
+				.getEncoded();
+		return Base64.encodeBytes(pkcs7, Base64.DO_BREAK_LINES).getBytes(
+				"ASCII");
+	}
+
+	/**
+	 * Returns an xml document of about <code>size</code> bytes.
+	 */
+	public static byte[] getXml(final int size) throws IOException {
+		final StringBuilder xml = new StringBuilder(
+				"<?xml version=\"1.0\"?>\n<items>\n");
+		for (int i = 0; xml.length() < size; i++) {
+			xml.append("  <item id=\"" + i + "\"><name>item " + i
+					+ "</name><value>" + (i * 7919 % 10007)
+					+ "</value></item>\n");
+		}
+		xml.append("</items>\n");
+		return xml.toString().getBytes("UTF-8");
+	}
+
 	public static String[] listFilesExcludingExtension(
 			final String[] forbidden) throws IOException {
 		final URL fileURL = TestUtils.class.getResource("/testFiles");
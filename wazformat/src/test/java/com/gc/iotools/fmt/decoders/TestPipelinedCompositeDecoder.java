@@ -0,0 +1,128 @@
+package com.gc.iotools.fmt.decoders;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import net.iharder.Base64;
+
+import org.apache.commons.io.IOUtils;
+import org.bouncycastle.cms.CMSProcessableByteArray;
+import org.bouncycastle.cms.CMSSignedDataGenerator;
+import org.junit.Test;
+
+import com.gc.iotools.fmt.base.Decoder;
+import com.gc.iotools.fmt.base.TestUtils;
+import com.gc.iotools.stream.base.ExecutionModel;
+
+public class TestPipelinedCompositeDecoder {
+
+	private static final class CloseTrackingStream extends
+			ByteArrayInputStream {
+		private boolean closed = false;
+
+		CloseTrackingStream(final byte[] buf) {
+			super(buf);
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.closed = true;
+			super.close();
+		}
+	}
+
+	private static Decoder[] getDecoders() {
+		return new Decoder[] { new Base64Decoder(), new Pkcs7Decoder(),
+				new GzipDecoder() };
+	}
+
+	private static long time(final Decoder decoder, final byte[] sample)
+			throws IOException {
+		final byte[] buffer = new byte[8192];
+		final long start = System.nanoTime();
+		final InputStream decoded = decoder.decode(new ByteArrayInputStream(
+				sample));
+		while (decoded.read(buffer) >= 0) {
+			// consume
+		}
+		decoded.close();
+		return (System.nanoTime() - start) / 1000000;
+	}
+
+	/**
+	 * Throughput of the pipelined decoder against the sequential one on a
+	 * base64(pkcs7(gzip(xml))) document.
+	 *
+	 * @param args
+	 */
+	public static void main(final String[] args) throws Exception {
+		final byte[] sample = TestUtils.getSample(TestUtils
+				.getXml(64 * 1024 * 1024));
+		final Decoder sequential = new CompositeDecoder(getDecoders());
+		final Decoder virtual = new PipelinedCompositeDecoder(getDecoders());
+		final Decoder threads = new PipelinedCompositeDecoder(getDecoders(),
+				ExecutionModel.THREAD_PER_INSTANCE,
+				PipelinedCompositeDecoder.DEFAULT_BUFFER_SIZE);
+		System.out.println("cores:"
+				+ Runtime.getRuntime().availableProcessors() + " encoded:"
+				+ sample.length);
+		for (int i = 0; i < 5; i++) {
+			System.out.println("sequential:" + time(sequential, sample)
+					+ "ms pipelined(virtual):" + time(virtual, sample)
+					+ "ms pipelined(threads):" + time(threads, sample)
+					+ "ms");
+		}
+	}
+
+	@Test
+	public void testCloseBeforeEnd() throws Exception {
+		final CloseTrackingStream source = new CloseTrackingStream(
+				TestUtils.getSample(TestUtils.getXml(2 * 1024 * 1024)));
+		final InputStream decoded = new PipelinedCompositeDecoder(
+				getDecoders(), ExecutionModel.THREAD_PER_INSTANCE, 4096)
+				.decode(source);
+		final byte[] header = new byte[100];
+		assertEquals("read", header.length, decoded.read(header));
+		decoded.close();
+		assertFalse("source closed", source.closed);
+		// the stages stopped: the source can be decoded again.
+		source.reset();
+		assertArrayEquals("decoded again", TestUtils.getXml(2 * 1024 * 1024),
+				IOUtils.toByteArray(new CompositeDecoder(getDecoders())
+						.decode(source)));
+	}
+
+	@Test
+	public void testDecode() throws Exception {
+		final byte[] xml = TestUtils.getXml(1024 * 1024);
+		final byte[] sample = TestUtils.getSample(xml);
+		final InputStream decoded = new PipelinedCompositeDecoder(
+				getDecoders()).decode(new ByteArrayInputStream(sample));
+		assertArrayEquals("content", xml, IOUtils.toByteArray(decoded));
+		decoded.close();
+	}
+
+	@Test
+	public void testError() throws Exception {
+		// truncated gzip stream
+		final byte[] truncated = Base64.encodeBytes(
+				new CMSSignedDataGenerator().generate(
+						new CMSProcessableByteArray(new byte[] { 0x1f,
+								(byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, 0, 1 }),
+						true).getEncoded()).getBytes("ASCII");
+		final InputStream decoded = new PipelinedCompositeDecoder(
+				getDecoders()).decode(new ByteArrayInputStream(truncated));
+		try {
+			IOUtils.toByteArray(decoded);
+			fail("exception expected");
+		} catch (final IOException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,153 @@
+package com.gc.iotools.fmt.decoders;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Enumeration;
+
+import org.apache.commons.io.IOUtils;
+import org.bouncycastle.tsp.cms.CMSTimeStampedData;
+import org.junit.Assume;
+import org.junit.Test;
+
+public class TestTSDDecoder {
+
+	private static final int CHUNK_SIZE = 64 * 1024;
+
+	/**
+	 * An octet string of {@link #CHUNK_SIZE} bytes, shared by all the chunks
+	 * so that generating the document doesn't allocate.
+	 */
+	private static final byte[] CHUNK = new byte[CHUNK_SIZE + 5];
+
+	/**
+	 * Header of a ContentInfo with a TimeStampedData, indefinite length
+	 * encoding, up to the constructed content octets.
+	 */
+	private static final byte[] TSD_HEADER = new byte[] { 0x30,
+			(byte) 0x80, 0x06, 0x0b, 0x2a, (byte) 0x86, 0x48, (byte) 0x86,
+			(byte) 0xf7, 0x0d, 0x01, 0x09, 0x10, 0x01, 0x1f, (byte) 0xa0,
+			(byte) 0x80, 0x30, (byte) 0x80, 0x02, 0x01, 0x01, 0x24,
+			(byte) 0x80 };
+
+	static {
+		CHUNK[0] = 0x04;
+		CHUNK[1] = (byte) 0x83;
+		CHUNK[2] = (byte) (CHUNK_SIZE >> 16);
+		CHUNK[3] = (byte) (CHUNK_SIZE >> 8);
+		CHUNK[4] = (byte) CHUNK_SIZE;
+		for (int i = 0; i < CHUNK_SIZE; i++) {
+			CHUNK[i + 5] = (byte) (i * 31);
+		}
+	}
+
+	/**
+	 * Bytes allocated by the current thread, -1 if the JVM can't tell.
+	 */
+	private static long allocatedBytes() {
+		final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		long result = -1;
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			result = ((com.sun.management.ThreadMXBean) bean)
+					.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return result;
+	}
+
+	/**
+	 * Generates on the fly a TSD whose content is <code>chunks</code>
+	 * octet strings of {@link #CHUNK_SIZE} bytes.
+	 */
+	private static InputStream getBigTSD(final int chunks) {
+		return new SequenceInputStream(new Enumeration<InputStream>() {
+			private int part = 0;
+
+			@Override
+			public boolean hasMoreElements() {
+				return this.part <= chunks + 1;
+			}
+
+			@Override
+			public InputStream nextElement() {
+				final InputStream result;
+				if (this.part == 0) {
+					result = new ByteArrayInputStream(TSD_HEADER);
+				} else if (this.part <= chunks) {
+					result = new ByteArrayInputStream(CHUNK);
+				} else {
+					// end of content, TimeStampedData and ContentInfo
+					result = new ByteArrayInputStream(new byte[8]);
+				}
+				this.part++;
+				return result;
+			}
+		});
+	}
+
+	@Test
+	public void testDecode() throws Exception {
+		final byte[] tsd = IOUtils.toByteArray(TestTSDDecoder.class
+				.getResourceAsStream("/testFiles/hello.doc.p7m.tsd"));
+		final byte[] reference = new CMSTimeStampedData(tsd).getContent();
+		final byte[] decoded = IOUtils.toByteArray(new TSDDecoder()
+				.decode(new ByteArrayInputStream(tsd)));
+		assertArrayEquals("content", reference, decoded);
+	}
+
+	@Test
+	public void testNotTSD() throws Exception {
+		try {
+			new TSDDecoder().decode(TestTSDDecoder.class
+					.getResourceAsStream("/testFiles/head.zip.p7m"));
+			fail("PKCS7 decoded as TSD");
+		} catch (final IOException e) {
+			assertTrue("message [" + e.getMessage() + "]", e.getMessage()
+					.startsWith("Error parsing TSD content"));
+		}
+	}
+
+	/**
+	 * A 128Mb TSD is decoded keeping in memory only a few buffers. The
+	 * decoding runs in the calling thread: the bytes it allocates are an
+	 * upper bound of the heap it can hold, and unlike the heap usage they
+	 * are not affected by the other tests running in parallel.
+	 */
+	@Test
+	public void testPeakMemory() throws IOException {
+		final int chunks = 2048;
+		final InputStream source = getBigTSD(chunks);
+		final byte[] buffer = new byte[8192];
+		final long before = allocatedBytes();
+		Assume.assumeTrue(before >= 0);
+		final InputStream content = new TSDDecoder().decode(source);
+		long total = 0;
+		long checksum = 0;
+		int n;
+		while ((n = content.read(buffer)) > 0) {
+			for (int i = 0; i < n; i++) {
+				checksum += buffer[i];
+			}
+			total += n;
+		}
+		content.close();
+		final long allocated = allocatedBytes() - before;
+		long expectedChecksum = 0;
+		for (int i = 0; i < CHUNK_SIZE; i++) {
+			expectedChecksum += (byte) (i * 31);
+		}
+		assertEquals("content length", (long) chunks * CHUNK_SIZE, total);
+		assertEquals("content checksum", expectedChecksum * chunks, checksum);
+		// a few Kb for each chunk (parser objects), reading the document in
+		// memory would allocate more than its whole size.
+		assertTrue("allocated memory [" + allocated + "]",
+				allocated < total / 8);
+	}
+}
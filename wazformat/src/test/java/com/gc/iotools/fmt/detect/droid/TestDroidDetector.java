@@ -2,12 +2,14 @@ package com.gc.iotools.fmt.detect.droid;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.io.FileUtils;
 
@@ -15,11 +17,147 @@ import com.gc.iotools.fmt.base.DetectionLibrary;
 import com.gc.iotools.fmt.base.FormatEnum;
 import com.gc.iotools.fmt.base.FormatId;
 import com.gc.iotools.fmt.base.ResettableFileInputStream;
+import com.gc.iotools.fmt.base.ResettableInputStream;
 import com.gc.iotools.fmt.base.TestUtils;
 
 public class TestDroidDetector {
+	/**
+	 * Remembers how far the stream was read.
+	 */
+	private static final class CountingResettableStream extends
+			ResettableInputStream {
+		private final byte[] data;
+		private final long length;
+		private long maxPosition = 0;
+		private ByteArrayInputStream stream;
+
+		CountingResettableStream(final byte[] data, final long length) {
+			this.data = data;
+			this.length = length;
+			this.stream = new ByteArrayInputStream(data);
+		}
+
+		private int count(final long n) {
+			this.maxPosition = Math.max(this.maxPosition, this.data.length
+					- this.stream.available());
+			return (int) n;
+		}
+
+		@Override
+		public long getLength() {
+			return this.length;
+		}
+
+		@Override
+		public int read() throws IOException {
+			final int result = this.stream.read();
+			count(0);
+			return result;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len)
+				throws IOException {
+			return count(this.stream.read(b, off, len));
+		}
+
+		@Override
+		public void resetToBeginning() throws IOException {
+			this.stream = new ByteArrayInputStream(this.data);
+		}
+
+		@Override
+		public long skip(final long n) throws IOException {
+			return count(this.stream.skip(n));
+		}
+	}
+
 	private static final Map<FormatEnum, String> enabledFormats = new HashMap<FormatEnum, String>();
 
+	/**
+	 * Identifies the samples <code>iterations</code> times in each of
+	 * <code>threads</code> threads, sharing one detector.
+	 *
+	 * @return elapsed time in milliseconds.
+	 */
+	private static long identifyConcurrently(final int threads,
+			final int iterations, final Map<FormatEnum, byte[]> samples,
+			final AtomicInteger errors) throws InterruptedException {
+		final DetectionLibrary stDetect = new DroidDetectorImpl();
+		final FormatEnum[] enabled = samples.keySet().toArray(
+				new FormatEnum[samples.size()]);
+		final Thread[] workers = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < iterations; j++) {
+						for (final Map.Entry<FormatEnum, byte[]> sample : samples
+								.entrySet()) {
+							final byte[] data = sample.getValue();
+							try {
+								final FormatId format = stDetect.detect(
+										enabled,
+										new CountingResettableStream(data,
+												data.length));
+								if (!sample.getKey().equals(format.format)) {
+									errors.incrementAndGet();
+								}
+							} catch (final Exception e) {
+								e.printStackTrace();
+								errors.incrementAndGet();
+							}
+						}
+					}
+				}
+			};
+		}
+		final long start = System.currentTimeMillis();
+		for (final Thread worker : workers) {
+			worker.start();
+		}
+		for (final Thread worker : workers) {
+			worker.join();
+		}
+		return System.currentTimeMillis() - start;
+	}
+
+	private static Map<FormatEnum, byte[]> loadSamples() throws IOException {
+		final URL url = TestDroidDetector.class.getResource("/testFiles");
+		final Map<FormatEnum, byte[]> samples = new HashMap<FormatEnum, byte[]>();
+		for (final FormatEnum formatEnum : enabledFormats.keySet()) {
+			final File file = (File) FileUtils.listFiles(
+					new File(url.getPath()),
+					new String[] { enabledFormats.get(formatEnum) }, false)
+					.iterator().next();
+			samples.put(formatEnum, FileUtils.readFileToByteArray(file));
+		}
+		return samples;
+	}
+
+	/**
+	 * Throughput of the identification with an increasing number of
+	 * threads.
+	 *
+	 * @param args
+	 */
+	public static void main(final String[] args) throws Exception {
+		final Map<FormatEnum, byte[]> samples = loadSamples();
+		final int iterations = 200;
+		// warm up
+		identifyConcurrently(1, iterations, samples, new AtomicInteger());
+		final int cpus = Runtime.getRuntime().availableProcessors();
+		for (int threads = 1; threads <= cpus; threads *= 2) {
+			final AtomicInteger errors = new AtomicInteger();
+			final long time = identifyConcurrently(threads, iterations,
+					samples, errors);
+			final long files = (long) threads * iterations * samples.size();
+			System.out.println("threads:" + threads + " files:" + files
+					+ " time:" + time + " files/s:" + (files * 1000 / time)
+					+ " errors:" + errors);
+		}
+	}
+
 	static {
 		// enabledFormats.put(FormatEnum.M7M, "m7m");
 		// enabledFormats.put(FormatEnum.PDF, "pdf");
@@ -105,4 +243,48 @@ public class TestDroidDetector {
 			checkFormat(formatEnum, enabledFormats.get(formatEnum));
 		}
 	}
+
+	@org.junit.Test
+	public void testConcurrentIdentification() throws Exception {
+		final AtomicInteger errors = new AtomicInteger();
+		identifyConcurrently(8, 5, loadSamples(), errors);
+		assertEquals("wrong identifications", 0, errors.get());
+	}
+
+	@org.junit.Test
+	public void testLazyLength() throws IOException {
+		final URL url = TestDroidDetector.class.getResource("/testFiles");
+		for (final FormatEnum formatEnum : enabledFormats.keySet()) {
+			final String ext = enabledFormats.get(formatEnum);
+			final File file = (File) FileUtils.listFiles(
+					new File(url.getPath()), new String[] { ext }, false)
+					.iterator().next();
+			final byte[] content = FileUtils.readFileToByteArray(file);
+			final DetectionLibrary stDetect = new DroidDetectorImpl();
+			final FormatEnum[] enabled = new FormatEnum[] { formatEnum };
+			// length unknown: EOF sequences force the stream to be read.
+			final CountingResettableStream stream = new CountingResettableStream(
+					content, -1);
+			assertEquals("format [" + file.getName() + "]", formatEnum,
+					stDetect.detect(enabled, stream).format);
+		}
+		// formats identified by BOF sequences only: a long tail is not read.
+		for (final FormatEnum formatEnum : new FormatEnum[] { FormatEnum.BMP,
+				FormatEnum.PCX, FormatEnum.RTF, FormatEnum.ZIP }) {
+			final String ext = enabledFormats.get(formatEnum);
+			final File file = (File) FileUtils.listFiles(
+					new File(url.getPath()), new String[] { ext }, false)
+					.iterator().next();
+			final byte[] content = FileUtils.readFileToByteArray(file);
+			final byte[] data = new byte[content.length + 1024 * 1024];
+			System.arraycopy(content, 0, data, 0, content.length);
+			final DetectionLibrary stDetect = new DroidDetectorImpl();
+			final CountingResettableStream stream = new CountingResettableStream(
+					data, -1);
+			assertEquals("format [" + file.getName() + "]", formatEnum,
+					stDetect.detect(new FormatEnum[] { formatEnum }, stream).format);
+			assertTrue("tail not read [" + stream.maxPosition + "]",
+					stream.maxPosition < content.length + 8192);
+		}
+	}
 }
@@ -0,0 +1,119 @@
+package com.gc.iotools.fmt.detect.wzf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import com.gc.iotools.fmt.base.FormatEnum;
+import com.gc.iotools.fmt.base.FormatId;
+
+public class TestBase64DetectorModule {
+	/**
+	 * The regular expression used before.
+	 */
+	private static final Pattern REGEXP = Pattern
+			.compile("[\\p{Alnum}\\p{Space}/+\\n\\r]*[=]{0,3}[\\p{Space}\\n\\r]*");
+
+	private static Base64DetectorModule getModule(final String param) {
+		final Base64DetectorModule module = new Base64DetectorModule();
+		module.init(new FormatId(FormatEnum.BASE64, null), param);
+		return module;
+	}
+
+	private static byte[] getPrefix(final String file, final int length)
+			throws Exception {
+		final InputStream is = TestBase64DetectorModule.class
+				.getResourceAsStream("/testFiles/" + file);
+		final byte[] bytes = IOUtils.toByteArray(is);
+		is.close();
+		final byte[] result = new byte[Math.min(length, bytes.length)];
+		System.arraycopy(bytes, 0, result, 0, result.length);
+		return result;
+	}
+
+	/**
+	 * Time of the detection on 200 bytes of base64, with the regular
+	 * expression and with the module.
+	 *
+	 * @param args
+	 */
+	public static void main(final String[] args) throws Exception {
+		final byte[] bytes = getPrefix("test_pdf.pdf.b64", 200);
+		final Base64DetectorModule module = getModule("200");
+		final int iterations = 200000;
+		for (int round = 0; round < 5; round++) {
+			boolean found = true;
+			long start = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				found &= REGEXP.matcher(new String(bytes)).matches();
+			}
+			final long regexpTime = (System.nanoTime() - start) / iterations;
+			start = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				found &= module.detect(bytes);
+			}
+			final long moduleTime = (System.nanoTime() - start) / iterations;
+			System.out.println("regexp:" + regexpTime + "ns/call module:"
+					+ moduleTime + "ns/call found:" + found);
+		}
+	}
+
+	@Test
+	public void testFiles() throws Exception {
+		final Base64DetectorModule module = getModule("200");
+		assertEquals("sample size", 200, module.getDetectLength());
+		assertTrue("pdf", module.detect(getPrefix("test_pdf.pdf.b64", 200)));
+		assertTrue("p7m",
+				module.detect(getPrefix("documento.pdf.p7m.b64", 200)));
+		assertTrue("doc", module.detect(getPrefix("canto_8parte.doc.b64", 200)));
+		assertFalse("xml", module.detect(getPrefix("bigXml.xml", 200)));
+		assertFalse("pdf", module.detect(getPrefix("test_pdf.pdf", 200)));
+		assertTrue("whole file", getModule("100000").detect(
+				getPrefix("test_pdf.pdf.b64", 100000)));
+	}
+
+	@Test
+	public void testPadding() {
+		final Base64DetectorModule module = getModule("");
+		assertEquals("default sample size", 200, module.getDetectLength());
+		assertTrue("one", module.detect("QUI=\r\n".getBytes()));
+		assertTrue("two", module.detect("QQ==".getBytes()));
+		assertTrue("line breaks", module.detect("QU\nJD\r\nQQ==\n".getBytes()));
+		assertFalse("three", module.detect("QQ===".getBytes()));
+		assertFalse("incomplete group", module.detect("QUJD=".getBytes()));
+		assertFalse("data after padding", module.detect("QQ==QUJD"
+				.getBytes()));
+		assertFalse("padding after space", module.detect("QUI= =".getBytes()));
+		assertFalse("only padding", module.detect("==".getBytes()));
+	}
+
+	@Test
+	public void testSameAsRegexp() throws IOException {
+		final Base64DetectorModule module = getModule("200");
+		final byte[] alphabet = "aZ09+/= \n\r\t\f#-".getBytes();
+		final Random random = new Random();
+		for (int i = 0; i < 20000; i++) {
+			final byte[] bytes = new byte[random.nextInt(12)];
+			for (int j = 0; j < bytes.length; j++) {
+				bytes[j] = (random.nextInt(40) == 0 ? (byte) random.nextInt()
+						: alphabet[random.nextInt(alphabet.length)]);
+			}
+			final String str = new String(bytes, "ISO-8859-1");
+			final boolean regexp = REGEXP.matcher(str).matches();
+			if (str.indexOf('=') < 0) {
+				assertEquals("[" + str + "]", regexp, module.detect(bytes));
+			} else if (!regexp) {
+				// the padding is checked more strictly.
+				assertFalse("[" + str + "]", module.detect(bytes));
+			}
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package com.gc.iotools.fmt.detect.wzf;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.gc.iotools.fmt.ResettableStreamRASAdapter;
+import com.gc.iotools.fmt.base.FormatEnum;
+import com.gc.iotools.fmt.base.FormatId;
+
+public class TestStringModuleIndex {
+	private static final FormatEnum[] FORMATS = new FormatEnum[] {
+			FormatEnum.PDF, FormatEnum.ZIP, FormatEnum.PEM };
+
+	private static final String[] RULES = new String[] { "string::%PDF-1.7",
+			"string::%PDF-", "stringnc:12:pk-", "string::P", "string:3:bab",
+			"stringnc:20:aB%", "string:10:abab", "stringnc::Ab" };
+
+	private static DefiniteLengthModule[] getModules() {
+		final DefiniteLengthModule[] result = new DefiniteLengthModule[RULES.length];
+		for (int i = 0; i < RULES.length; i++) {
+			final String mode = RULES[i].substring(0, RULES[i].indexOf(':'));
+			result[i] = (mode.equals("string") ? new StringDetectorModule()
+					: new StringncDetectorModule());
+			result[i].init(new FormatId(FORMATS[i % FORMATS.length], "rule"
+					+ i), RULES[i].substring(mode.length() + 1));
+		}
+		return result;
+	}
+
+	/**
+	 * The first module that matches, calling detect() on each.
+	 */
+	private static FormatId sequential(final DefiniteLengthModule[] modules,
+			final byte[] header) {
+		FormatId result = new FormatId(FormatEnum.UNKNOWN, null);
+		for (int i = 0; (i < modules.length) && (header.length > 0); i++) {
+			final byte[] bytes = new byte[Math.min(header.length,
+					modules[i].getDetectLength())];
+			System.arraycopy(header, 0, bytes, 0, bytes.length);
+			if (modules[i].detect(bytes)) {
+				result = modules[i].getDetectedFormat();
+				break;
+			}
+		}
+		return result;
+	}
+
+	@Test
+	public void testSameResultAsSequential() throws IOException {
+		final DefiniteLengthModule[] modules = getModules();
+		final StreamDetectorImpl detector = new StreamDetectorImpl(modules);
+		final byte[] alphabet = "aAbBkKpP%DF-17".getBytes();
+		final Random random = new Random();
+		for (int i = 0; i < 5000; i++) {
+			final byte[] header = new byte[random.nextInt(25)];
+			for (int j = 0; j < header.length; j++) {
+				header[j] = (random.nextInt(50) == 0 ? (byte) (0x80 + random
+						.nextInt(0x80)) : alphabet[random
+						.nextInt(alphabet.length)]);
+			}
+			if (random.nextInt(4) == 0) {
+				final byte[] prefix = "%PDF-1.7".getBytes();
+				System.arraycopy(prefix, 0, header, 0,
+						Math.min(prefix.length, header.length));
+			}
+			final FormatId expected = sequential(modules, header);
+			final FormatId detected = detector.detect(FORMATS,
+					new ResettableStreamRASAdapter(new ByteArrayInputStream(
+							header)));
+			assertEquals("format [" + new String(header) + "]",
+					expected.format, detected.format);
+			assertEquals("rule [" + new String(header) + "]",
+					expected.version, detected.version);
+		}
+	}
+
+	@Test
+	public void testSelectedFormats() throws IOException {
+		final StreamDetectorImpl detector = new StreamDetectorImpl(
+				getModules());
+		final byte[] pdf = "%PDF-1.7 rest".getBytes();
+		assertEquals("all formats", "rule0", detector.detect(FORMATS,
+				new ResettableStreamRASAdapter(new ByteArrayInputStream(pdf))).version);
+		// the first rule is not selected: the next matching one is used.
+		assertEquals("only zip", "rule1", detector.detect(
+				new FormatEnum[] { FormatEnum.ZIP },
+				new ResettableStreamRASAdapter(new ByteArrayInputStream(pdf))).version);
+		assertEquals("only pem", FormatEnum.UNKNOWN, detector.detect(
+				new FormatEnum[] { FormatEnum.PEM },
+				new ResettableStreamRASAdapter(new ByteArrayInputStream(pdf))).format);
+		assertEquals("pdf again", "rule0", detector.detect(FORMATS,
+				new ResettableStreamRASAdapter(new ByteArrayInputStream(pdf))).version);
+	}
+}
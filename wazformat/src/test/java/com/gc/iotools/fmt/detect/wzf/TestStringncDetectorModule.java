@@ -0,0 +1,118 @@
+package com.gc.iotools.fmt.detect.wzf;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import org.junit.Test;
+
+import com.gc.iotools.fmt.base.FormatEnum;
+import com.gc.iotools.fmt.base.FormatId;
+
+public class TestStringncDetectorModule {
+	private static final String M7M = "127:Content-Type: multipart/mixed; boundary=\"Dike\"";
+
+	/**
+	 * Bytes allocated by the current thread, -1 if the JVM can't tell.
+	 */
+	private static long allocatedBytes() {
+		final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		long result = -1;
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			result = ((com.sun.management.ThreadMXBean) bean)
+					.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return result;
+	}
+
+	/**
+	 * The detection done before, decoding the bytes in a String.
+	 */
+	private static boolean detectWithString(final byte[] readBytes,
+			final String upperCase) {
+		return new String(readBytes).toUpperCase().contains(upperCase);
+	}
+
+	private static StringncDetectorModule getModule(final String param) {
+		final StringncDetectorModule module = new StringncDetectorModule();
+		module.init(new FormatId(FormatEnum.M7M, null), param);
+		return module;
+	}
+
+	/**
+	 * Time and allocation of the detection of the M7M rule on a 127 bytes
+	 * header that doesn't match.
+	 *
+	 * @param args
+	 */
+	public static void main(final String[] args) {
+		final byte[] header = ("MIME-Version: 1.0\r\nContent-Type: "
+				+ "multipart/mixed; boundary=\"----=_Part_0_123456789."
+				+ "1234567890123\"\r\nX-Mailer: test\r\nSubject: a "
+				+ "message with a long subject\r\n\r\n").substring(0,
+				127).getBytes();
+		final StringncDetectorModule module = getModule(M7M);
+		final String upperCase = M7M.substring(4).toUpperCase();
+		final int iterations = 1000000;
+		for (int round = 0; round < 5; round++) {
+			boolean found = false;
+			long start = System.nanoTime();
+			long allocated = allocatedBytes();
+			for (int i = 0; i < iterations; i++) {
+				found |= detectWithString(header, upperCase);
+			}
+			final long stringTime = (System.nanoTime() - start) / 1000000;
+			final long stringAllocated = (allocatedBytes() - allocated)
+					/ iterations;
+			start = System.nanoTime();
+			allocated = allocatedBytes();
+			for (int i = 0; i < iterations; i++) {
+				found |= module.detect(header);
+			}
+			final long bytesTime = (System.nanoTime() - start) / 1000000;
+			final long bytesAllocated = (allocatedBytes() - allocated)
+					/ iterations;
+			System.out.println("string:" + stringTime + "ms "
+					+ stringAllocated + "B/call bytes:" + bytesTime + "ms "
+					+ bytesAllocated + "B/call found:" + found);
+		}
+	}
+
+	@Test
+	public void testBeginning() {
+		final StringncDetectorModule module = getModule(":-----begin pkcs7");
+		assertTrue("exact", module.detect("-----BEGIN PKCS7".getBytes()));
+		assertTrue("lower case", module.detect("-----begin pkcs7".getBytes()));
+		assertFalse("short", module.detect("-----BEGIN".getBytes()));
+		assertFalse("different", module.detect("-----BEGIN PKCS8".getBytes()));
+	}
+
+	@Test
+	public void testSearch() {
+		final StringncDetectorModule module = getModule(M7M);
+		assertTrue("found", module.detect(("MIME-Version: 1.0\r\n"
+				+ "content-type: Multipart/Mixed; BOUNDARY=\"dike\"\r\n")
+				.getBytes()));
+		assertTrue("at the end", module.detect(("xx"
+				+ "CONTENT-TYPE: MULTIPART/MIXED; BOUNDARY=\"DIKE\"")
+				.getBytes()));
+		assertFalse("other boundary", module.detect(("MIME-Version: 1.0\r\n"
+				+ "Content-Type: multipart/mixed; boundary=\"Dik\"\r\n")
+				.getBytes()));
+		assertFalse("empty", module.detect(new byte[0]));
+	}
+
+	@Test
+	public void testSymbolsAndNonAscii() {
+		final StringncDetectorModule module = getModule("10:a[b");
+		assertTrue("symbols", module.detect("xxA[Bxx".getBytes()));
+		// '{' and '[' differ by 0x20 like the letters.
+		assertFalse("no symbol folding", module.detect("xxA{Bxx".getBytes()));
+		// UTF-8 long s: String.toUpperCase() makes it an 'S'.
+		final StringncDetectorModule s = getModule("4:s");
+		assertFalse("not decoded", s.detect(new byte[] { 'x', (byte) 0xc5,
+				(byte) 0xbf }));
+	}
+}
@@ -0,0 +1,130 @@
+package com.gc.iotools.fmt.detect.wzf.custom;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Random;
+
+import org.bouncycastle.asn1.ASN1InputStream;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.cms.CMSObjectIdentifiers;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.junit.Test;
+
+import com.gc.iotools.fmt.base.TestUtils;
+
+public class TestASN1Reader {
+
+	private static byte[] header(final ASN1ObjectIdentifier oid)
+			throws IOException {
+		final byte[] encoded = oid.getEncoded();
+		final byte[] result = new byte[encoded.length + 4];
+		result[0] = 0x30;
+		result[1] = (byte) 0x80;
+		System.arraycopy(encoded, 0, result, 2, encoded.length);
+		return result;
+	}
+
+	/**
+	 * The detection done before, reading the OID with BouncyCastle.
+	 */
+	private static int reference(final byte[] bytes) {
+		int result = ASN1Reader.NONE;
+		try {
+			final InputStream is = new ByteArrayInputStream(bytes);
+			final int tag = is.read();
+			if ((tag & ~0x20) == 0x10) {
+				int length = is.read();
+				if ((length < 0) || ((length > 0x80) && ((length & 0x7f) > 4))) {
+					throw new IOException("length");
+				}
+				if (length > 0x80) {
+					final int size = length & 0x7f;
+					length = 0;
+					for (int i = 0; i < size; i++) {
+						final int next = is.read();
+						if (next < 0) {
+							throw new IOException("EOF");
+						}
+						length = (length << 8) + next;
+					}
+					if (length < 0) {
+						throw new IOException("negative length");
+					}
+				}
+				final ASN1InputStream asn1 = new ASN1InputStream(is);
+				final ASN1Primitive oid = asn1.readObject();
+				asn1.close();
+				if (PKCSObjectIdentifiers.signedData.equals(oid)) {
+					result = ASN1Reader.SIGNED_DATA;
+				} else if (CMSObjectIdentifiers.timestampedData.equals(oid)) {
+					result = ASN1Reader.TIMESTAMPED_DATA;
+				}
+			}
+		} catch (final Exception e) {
+			result = ASN1Reader.NONE;
+		}
+		return result;
+	}
+
+	private static int sniff(final byte[] bytes) {
+		return ASN1Reader.getContentType(bytes, 0, bytes.length);
+	}
+
+	@Test
+	public void testContentTypes() throws IOException {
+		assertEquals("signed data", ASN1Reader.SIGNED_DATA,
+				sniff(header(PKCSObjectIdentifiers.signedData)));
+		assertEquals("timestamped data", ASN1Reader.TIMESTAMPED_DATA,
+				sniff(header(CMSObjectIdentifiers.timestampedData)));
+		assertEquals("other", ASN1Reader.NONE,
+				sniff(header(PKCSObjectIdentifiers.data)));
+		final byte[] offset = new byte[] { 0x01, 0x30, 0x03, 0x06, 0x01,
+				0x2a };
+		assertEquals("offset", ASN1Reader.NONE,
+				ASN1Reader.getContentType(offset, 1, offset.length - 1));
+	}
+
+	@Test
+	public void testFiles() throws IOException {
+		final Map<String, byte[]> files = TestUtils.getBytesForFiles(
+				new String[0], 4096, false);
+		for (final String file : files.keySet()) {
+			final byte[] bytes = files.get(file);
+			assertEquals(file, reference(bytes), ASN1Reader.getContentType(
+					bytes, 0, Math.min(bytes.length, ASN1Reader.HEADER_LENGTH)));
+		}
+	}
+
+	@Test
+	public void testRandomHeaders() throws IOException {
+		final byte[][] headers = new byte[][] {
+				header(PKCSObjectIdentifiers.signedData),
+				header(CMSObjectIdentifiers.timestampedData),
+				{ 0x30, (byte) 0x83, 0x01, 0x00, 0x00, 0x06, (byte) 0x81,
+						0x09, 0x2a, (byte) 0x86, 0x48, (byte) 0x86,
+						(byte) 0xf7, 0x0d, 0x01, 0x07, 0x02 } };
+		final byte[] special = new byte[] { 0x00, 0x06, 0x09, 0x0b, 0x10,
+				0x30, (byte) 0x80, (byte) 0x81, (byte) 0x84, (byte) 0x85,
+				(byte) 0xff };
+		final Random random = new Random();
+		for (int i = 0; i < 20000; i++) {
+			final byte[] header = headers[random.nextInt(headers.length)];
+			final byte[] bytes = new byte[random.nextInt(4) == 0 ? random
+					.nextInt(header.length) : header.length];
+			System.arraycopy(header, 0, bytes, 0, bytes.length);
+			final int changes = random.nextInt(3);
+			for (int j = 0; (j < changes) && (bytes.length > 0); j++) {
+				bytes[random.nextInt(Math.min(bytes.length, 8))] = (random
+						.nextBoolean() ? special[random.nextInt(special.length)]
+						: (byte) random.nextInt());
+			}
+			assertEquals(new java.math.BigInteger(1, bytes).toString(16),
+					reference(bytes), sniff(bytes));
+		}
+	}
+}
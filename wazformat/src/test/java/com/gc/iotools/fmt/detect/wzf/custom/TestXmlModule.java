@@ -7,6 +7,58 @@ import junit.framework.TestCase;
 import org.apache.commons.io.IOUtils;
 
 public class TestXmlModule extends TestCase {
+	private static byte[] getPrefix(final String file) throws Exception {
+		final InputStream is = TestXmlModule.class
+				.getResourceAsStream("/testFiles/" + file);
+		final byte[] bytes = IOUtils.toByteArray(is);
+		is.close();
+		final byte[] dest = new byte[Math.min(bytes.length,
+				new XmlModule().getDetectLength())];
+		System.arraycopy(bytes, 0, dest, 0, dest.length);
+		return dest;
+	}
+
+	/**
+	 * Time of the detection of the first 8192 bytes of an XML file.
+	 * 
+	 * @param args
+	 */
+	public static void main(final String[] args) throws Exception {
+		final byte[] bytes = getPrefix("bigXml.xml");
+		final XmlModule module = new XmlModule();
+		final int iterations = 20000;
+		for (int round = 0; round < 5; round++) {
+			boolean found = true;
+			final long start = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				found &= module.detect(bytes);
+			}
+			System.out.println("detect: "
+					+ (System.nanoTime() - start) / iterations + "ns/call found:"
+					+ found);
+		}
+	}
+
+	@org.junit.Test
+	public void testFiles() throws Exception {
+		final XmlModule module = new XmlModule();
+		assertTrue("truncated xml", module.detect(getPrefix("bigXml.xml")));
+		assertTrue("doctype", module.detect(getPrefix("xmlWithEntities.xml")));
+		assertFalse("broken xml", module.detect(getPrefix("brokenxml.txt")));
+		assertFalse("pdf", module.detect(getPrefix("test_pdf.pdf")));
+	}
+
+	@org.junit.Test
+	public void testShortDocuments() {
+		final XmlModule module = new XmlModule();
+		assertTrue("namespace", module.detect("<p:a xmlns:p='urn:p'/>"
+				.getBytes()));
+		assertFalse("wrong end tag", module.detect("<a>text</b>".getBytes()));
+		assertFalse("not closed", module.detect("<a>text".getBytes()));
+		assertFalse("empty", module.detect(new byte[0]));
+		assertFalse("text", module.detect("this is text".getBytes()));
+	}
+
 	@org.junit.Test
 	public void testXmlDetector() {
 		assertTrue("short xml detected", new XmlModule()
@@ -0,0 +1,118 @@
+package com.gc.iotools.fmt.detect.wzf.custom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.Random;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.junit.Test;
+
+public class TestXmlPrologSniffer {
+	private static final String[] DOCUMENTS = new String[] {
+			"<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<a b='c'>",
+			"<?xml version='1.0' standalone='yes' ?><!-- c --><?pi x?><r/>",
+			"  <p:r xmlns:p=\"urn:p\" p:x=\"&lt;&#65;&#x42;\" y='1'>",
+			"<?xml version=\"1.1\" encoding=\"iso-8859-15\"?><r a=\"&amp;\">" };
+
+	/**
+	 * Parses with StAX: returns true if the root element is reached.
+	 */
+	private static boolean reachesRoot(final byte[] bytes) {
+		boolean result = false;
+		try {
+			final XMLStreamReader reader = XMLInputFactory.newInstance()
+					.createXMLStreamReader(new ByteArrayInputStream(bytes));
+			while (!result && reader.hasNext()) {
+				result = (reader.next() == XMLStreamConstants.START_ELEMENT);
+			}
+		} catch (final XMLStreamException e) {
+			result = false;
+		}
+		return result;
+	}
+
+	private static int sniff(final String document) {
+		return XmlPrologSniffer.sniff(document.getBytes());
+	}
+
+	@Test
+	public void testNotXml() {
+		assertEquals("text", XmlPrologSniffer.NOT_XML, sniff("this is text"));
+		assertEquals("text after spaces", XmlPrologSniffer.NOT_XML,
+				sniff(" \r\n x<a>"));
+		assertEquals("bom and text", XmlPrologSniffer.NOT_XML,
+				XmlPrologSniffer.sniff(new byte[] { (byte) 0xef, (byte) 0xbb,
+						(byte) 0xbf, 'x' }));
+		assertEquals("text after the prolog", XmlPrologSniffer.NOT_XML,
+				sniff("<?xml version='1.0'?>\nnot an xml eh!"));
+	}
+
+	@Test
+	public void testRandomPrologs() {
+		final Random random = new Random();
+		final byte[] alphabet = "<>?!-=:'\"&#;/ a1xml\n".getBytes();
+		for (int i = 0; i < 3000; i++) {
+			final byte[] bytes = DOCUMENTS[random.nextInt(DOCUMENTS.length)]
+					.getBytes();
+			final int changes = random.nextInt(3);
+			for (int j = 0; j < changes; j++) {
+				bytes[random.nextInt(bytes.length)] = alphabet[random
+						.nextInt(alphabet.length)];
+			}
+			final byte[] cut = new byte[random.nextInt(4) == 0 ? random
+					.nextInt(bytes.length) : bytes.length];
+			System.arraycopy(bytes, 0, cut, 0, cut.length);
+			final int result = XmlPrologSniffer.sniff(cut);
+			if (result != XmlPrologSniffer.UNKNOWN) {
+				assertEquals("[" + new String(cut) + "]",
+						result == XmlPrologSniffer.ROOT, reachesRoot(cut));
+			}
+		}
+	}
+
+	@Test
+	public void testRoot() {
+		for (final String document : DOCUMENTS) {
+			assertEquals(document, XmlPrologSniffer.ROOT, sniff(document));
+			assertTrue(document, reachesRoot(document.getBytes()));
+		}
+		assertEquals("bom", XmlPrologSniffer.ROOT, XmlPrologSniffer
+				.sniff(new byte[] { (byte) 0xef, (byte) 0xbb, (byte) 0xbf,
+						'<', 'a', '>' }));
+	}
+
+	@Test
+	public void testTruncated() {
+		final String document = DOCUMENTS[1];
+		for (int i = 0; i < document.length() - 1; i++) {
+			assertEquals(document.substring(0, i), XmlPrologSniffer.TRUNCATED,
+					sniff(document.substring(0, i)));
+		}
+	}
+
+	@Test
+	public void testUnknown() {
+		assertEquals("doctype", XmlPrologSniffer.UNKNOWN,
+				sniff("<!DOCTYPE a><a>"));
+		assertEquals("utf-16", XmlPrologSniffer.UNKNOWN, XmlPrologSniffer
+				.sniff(new byte[] { (byte) 0xfe, (byte) 0xff, 0, '<' }));
+		assertEquals("other encoding", XmlPrologSniffer.UNKNOWN,
+				sniff("<?xml version='1.0' encoding='Shift_JIS'?><a>"));
+		assertEquals("non ascii name", XmlPrologSniffer.UNKNOWN,
+				XmlPrologSniffer.sniff(new byte[] { '<', 'a', (byte) 0xc3,
+						(byte) 0xa8, '>' }));
+		assertEquals("undeclared prefix", XmlPrologSniffer.UNKNOWN,
+				sniff("<p:a>"));
+		assertEquals("duplicate attribute", XmlPrologSniffer.UNKNOWN,
+				sniff("<a x='1' x='2'>"));
+		assertEquals("entity", XmlPrologSniffer.UNKNOWN, sniff("<a x='&e;'>"));
+		assertEquals("double hyphen", XmlPrologSniffer.UNKNOWN,
+				sniff("<!-- a -- b --><a>"));
+	}
+}
@@ -0,0 +1,136 @@
+package uk.gov.nationalarchives.droid.binFileReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.gc.iotools.fmt.base.ResettableInputStream;
+
+public class TestRandomAccessByteReader {
+
+	private static ResettableInputStream getStream(final byte[] data) {
+		return new ResettableInputStream() {
+			private ByteArrayInputStream stream = new ByteArrayInputStream(
+					data);
+
+			@Override
+			public int read() throws IOException {
+				return this.stream.read();
+			}
+
+			@Override
+			public int read(final byte[] b, final int off, final int len)
+					throws IOException {
+				return this.stream.read(b, off, len);
+			}
+
+			@Override
+			public void resetToBeginning() throws IOException {
+				this.stream = new ByteArrayInputStream(data);
+			}
+
+			@Override
+			public long skip(final long n) throws IOException {
+				return this.stream.skip(n);
+			}
+		};
+	}
+
+	/**
+	 * A stream whose skip() goes past EOF without notice, like
+	 * <code>FileInputStream</code>.
+	 */
+	private static ResettableInputStream getSkipPastEofStream(
+			final byte[] data) {
+		return new ResettableInputStream() {
+			private ByteArrayInputStream stream = new ByteArrayInputStream(
+					data);
+
+			@Override
+			public int read() throws IOException {
+				return this.stream.read();
+			}
+
+			@Override
+			public int read(final byte[] b, final int off, final int len)
+					throws IOException {
+				return this.stream.read(b, off, len);
+			}
+
+			@Override
+			public void resetToBeginning() throws IOException {
+				this.stream = new ByteArrayInputStream(data);
+			}
+
+			@Override
+			public long skip(final long n) throws IOException {
+				this.stream.skip(n);
+				return n;
+			}
+		};
+	}
+
+	@Test
+	public void testLazyLength() throws IOException {
+		final byte[] data = new byte[10000];
+		new Random().nextBytes(data);
+		final RandomAccessByteReader reader = new RandomAccessByteReader(
+				new IdentificationFile("-"), getStream(data));
+		assertTrue("first byte", reader.hasByte(0));
+		assertFalse("length not known", reader.isLengthKnown());
+		assertTrue("last byte", reader.hasByte(data.length - 1));
+		assertFalse("after last byte", reader.hasByte(data.length));
+		assertEquals("length", data.length, reader.getNumBytes());
+		assertEquals("byte", data[data.length - 1],
+				reader.getByte(data.length - 1));
+	}
+
+	@Test
+	public void testUnknownLengthSkipPastEof() throws IOException {
+		final byte[] data = new byte[10000];
+		new Random().nextBytes(data);
+		final RandomAccessByteReader reader = new RandomAccessByteReader(
+				new IdentificationFile("-"), getSkipPastEofStream(data));
+		assertFalse("after last byte", reader.hasByte(20000));
+		assertEquals("length", data.length, reader.getNumBytes());
+		assertTrue("last byte", reader.hasByte(data.length - 1));
+		assertEquals("byte", data[data.length - 1],
+				reader.getByte(data.length - 1));
+	}
+
+	@Test
+	public void testWindow() throws IOException {
+		final byte[] data = new byte[20000];
+		final Random r = new Random();
+		r.nextBytes(data);
+		final RandomAccessByteReader reader = new RandomAccessByteReader(
+				new IdentificationFile("-"), getStream(data));
+		for (int i = 0; i < 1000; i++) {
+			final int pos = r.nextInt(data.length + 10) - 5;
+			final int minLength = r.nextInt(3000);
+			final ByteBuffer window = reader.getWindow(pos, minLength);
+			if ((pos < 0) || (pos >= data.length)) {
+				assertEquals("empty window [" + pos + "]", 0,
+						window.remaining());
+			} else {
+				assertTrue("window length [" + pos + "," + minLength + "]",
+						window.remaining() >= Math.min(
+								Math.min(minLength, 2048), data.length - pos));
+				final long start = pos - window.position();
+				for (int j = 0; j < window.limit(); j++) {
+					assertEquals("byte [" + (start + j) + "]",
+							data[(int) start + j],
+							window.array()[window.arrayOffset() + j]);
+				}
+				reader.getByte(r.nextInt(data.length));
+			}
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package uk.gov.nationalarchives.droid.signatureFile;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.List;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import org.junit.Test;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+import uk.gov.nationalarchives.droid.binFileReader.IdentificationFile;
+import uk.gov.nationalarchives.droid.binFileReader.RandomAccessByteReader;
+import uk.gov.nationalarchives.droid.xmlReader.SAXModelBuilder;
+
+import com.gc.iotools.fmt.base.ResettableFileInputStream;
+import com.gc.iotools.fmt.base.TestUtils;
+import com.gc.iotools.fmt.detect.droid.DroidDetectorImpl;
+
+public class TestBOFSignatureMatcher {
+
+	static FFSignatureFile parseSignatureFile() throws Exception {
+		final SAXParserFactory factory = SAXParserFactory.newInstance();
+		factory.setNamespaceAware(true);
+		final XMLReader parser = factory.newSAXParser().getXMLReader();
+		final SAXModelBuilder mb = new SAXModelBuilder();
+		mb.setupNamespace(
+				"http://www.nationalarchives.gov.uk/pronom/SignatureFile",
+				true);
+		parser.setContentHandler(mb);
+		final InputStream is = DroidDetectorImpl.class
+				.getResourceAsStream("DROID_SignatureFile_V18.xml");
+		parser.parse(new InputSource(is));
+		is.close();
+		final FFSignatureFile result = (FFSignatureFile) mb.getModel();
+		result.prepareForUse();
+		return result;
+	}
+
+	@Test
+	public void testCompliantSignaturesAreCandidates() throws Exception {
+		final FFSignatureFile sigFile = parseSignatureFile();
+		final List<InternalSignature> signatures = sigFile.getSignatures();
+		final BOFSignatureMatcher matcher = new BOFSignatureMatcher(
+				signatures);
+		int discarded = 0;
+		for (final String fileName : TestUtils
+				.listFilesExcludingExtension(new String[0])) {
+			final File file = new File(fileName);
+			final RandomAccessByteReader reader = new RandomAccessByteReader(
+					new IdentificationFile(fileName),
+					new ResettableFileInputStream(file), file.length());
+			final boolean[] candidates = matcher.getCandidates(reader);
+			for (int i = 0; i < signatures.size(); i++) {
+				final InternalSignature sig = signatures.get(i);
+				if (!candidates[i]) {
+					discarded++;
+					assertTrue("signature [" + sig.getID() + "] file["
+							+ fileName + "] compliant but discarded",
+							!sig.isFileCompliant(reader));
+				}
+			}
+		}
+		assertTrue("signatures discarded", discarded > 0);
+	}
+}
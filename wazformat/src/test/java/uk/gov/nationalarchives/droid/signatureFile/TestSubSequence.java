@@ -0,0 +1,84 @@
+package uk.gov.nationalarchives.droid.signatureFile;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.junit.Test;
+
+import uk.gov.nationalarchives.droid.binFileReader.AbstractByteReader;
+import uk.gov.nationalarchives.droid.binFileReader.ByteReader;
+import uk.gov.nationalarchives.droid.binFileReader.IdentificationFile;
+import uk.gov.nationalarchives.droid.binFileReader.RandomAccessByteReader;
+
+import com.gc.iotools.fmt.base.ResettableFileInputStream;
+import com.gc.iotools.fmt.base.TestUtils;
+
+public class TestSubSequence {
+
+	/**
+	 * Reader without windows: the sequences are compared byte by byte.
+	 */
+	private static final class ByteByByteReader extends AbstractByteReader {
+		private final ByteReader reader;
+		private long fileMarker = 0;
+
+		ByteByByteReader(final ByteReader reader) {
+			super(new IdentificationFile("-"));
+			this.reader = reader;
+		}
+
+		@Override
+		public byte getByte(final long fileIndex) {
+			return this.reader.getByte(fileIndex);
+		}
+
+		@Override
+		public long getFileMarker() {
+			return this.fileMarker;
+		}
+
+		@Override
+		public long getNumBytes() {
+			return this.reader.getNumBytes();
+		}
+
+		@Override
+		public ByteBuffer getWindow(final long fileIndex, final int minLength) {
+			return ByteBuffer.wrap(new byte[0]);
+		}
+
+		@Override
+		public boolean hasByte(final long fileIndex) {
+			return this.reader.hasByte(fileIndex);
+		}
+
+		@Override
+		public void setFileMarker(final long markerPosition) {
+			this.fileMarker = markerPosition;
+		}
+	}
+
+	@Test
+	public void testWindowMatchesByteByByte() throws Exception {
+		final List<InternalSignature> signatures = TestBOFSignatureMatcher
+				.parseSignatureFile().getSignatures();
+		for (final String fileName : TestUtils
+				.listFilesExcludingExtension(new String[0])) {
+			final File file = new File(fileName);
+			final RandomAccessByteReader reader = new RandomAccessByteReader(
+					new IdentificationFile(fileName),
+					new ResettableFileInputStream(file));
+			final ByteReader byteByByte = new ByteByByteReader(
+					new RandomAccessByteReader(new IdentificationFile(
+							fileName), new ResettableFileInputStream(file)));
+			for (final InternalSignature sig : signatures) {
+				assertEquals("signature [" + sig.getID() + "] file["
+						+ fileName + "]", sig.isFileCompliant(byteByByte),
+						sig.isFileCompliant(reader));
+			}
+		}
+	}
+}